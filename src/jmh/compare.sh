@@ -0,0 +1,20 @@
+#!/bin/bash
+# Compares two JMH JSON result files (e.g. target/jmh-result.json saved from two commits).
+# Usage: src/jmh/compare.sh baseline.json candidate.json
+
+if [ $# -ne 2 ]; then
+  echo "Usage: $0 baseline.json candidate.json"
+  exit 1
+fi
+
+jq -r -n --slurpfile a "$1" --slurpfile b "$2" '
+  def key: .benchmark + (if .params then " " + (.params | to_entries | map("\(.key)=\(.value)") | join(",")) else "" end);
+  ($a[0] | map({key: key, value: .primaryMetric}) | from_entries) as $base
+  | $b[0][]
+  | key as $k
+  | select($base[$k] != null)
+  | [$k, .primaryMetric.scoreUnit,
+     ($base[$k].score | . * 100 | round / 100),
+     (.primaryMetric.score | . * 100 | round / 100),
+     (((.primaryMetric.score - $base[$k].score) / $base[$k].score * 100) | . * 10 | round / 10 | tostring + "%")]
+  | @tsv'
@@ -0,0 +1,36 @@
+package com.example.spring_boot_mongodb_redis.benchmark;
+
+import com.example.spring_boot_mongodb_redis.model.User;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+final class BenchmarkUsers {
+
+    private BenchmarkUsers() {
+    }
+
+    static User user(long id) {
+        return User.builder()
+                .id(id)
+                .firstName("Emily")
+                .lastName("Johnson")
+                .maidenName("Smith")
+                .gender("female")
+                .email("emily.johnson" + id + "@x.dummyjson.com")
+                .phone("+81 965-431-3024")
+                .username("emilys" + id)
+                .password("emilyspass")
+                .birthDate(LocalDate.of(1996, 5, 30))
+                .build();
+    }
+
+    static List<User> users(int count) {
+        List<User> users = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            users.add(user(i));
+        }
+        return users;
+    }
+}
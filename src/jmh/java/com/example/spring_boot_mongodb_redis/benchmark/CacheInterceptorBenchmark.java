@@ -0,0 +1,86 @@
+package com.example.spring_boot_mongodb_redis.benchmark;
+
+import com.example.spring_boot_mongodb_redis.interceptor.MetricsRecordingCacheInterceptor;
+import com.example.spring_boot_mongodb_redis.service.CacheMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.cache.annotation.AnnotationCacheOperationSource;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.cache.interceptor.CacheInterceptor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a cache hit through a proxy with the stock {@link CacheInterceptor} versus
+ * {@link MetricsRecordingCacheInterceptor}, against an in-memory cache so only interceptor
+ * overhead is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheInterceptorBenchmark {
+
+    private Lookup direct;
+    private Lookup stockProxy;
+    private Lookup metricsProxy;
+
+    @Setup
+    public void setUp() {
+        direct = new UserLookup();
+
+        CacheInterceptor stock = new CacheInterceptor();
+        stock.setCacheOperationSource(new AnnotationCacheOperationSource());
+        stockProxy = proxy(stock);
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MetricsRecordingCacheInterceptor metrics =
+                new MetricsRecordingCacheInterceptor(new CacheMetrics(registry), new AnnotationCacheOperationSource(), registry);
+        metricsProxy = proxy(metrics);
+
+        stockProxy.find(1L);
+        metricsProxy.find(1L);
+    }
+
+    private static Lookup proxy(CacheInterceptor interceptor) {
+        interceptor.setCacheManager(new ConcurrentMapCacheManager());
+        interceptor.afterPropertiesSet();
+        interceptor.afterSingletonsInstantiated();
+
+        ProxyFactory factory = new ProxyFactory(new UserLookup());
+        factory.addInterface(Lookup.class);
+        factory.addAdvice(interceptor);
+        return (Lookup) factory.getProxy();
+    }
+
+    @Benchmark
+    public String direct() {
+        return direct.find(1L);
+    }
+
+    @Benchmark
+    public String stockInterceptorHit() {
+        return stockProxy.find(1L);
+    }
+
+    @Benchmark
+    public String metricsInterceptorHit() {
+        return metricsProxy.find(1L);
+    }
+
+    public interface Lookup {
+        String find(Long id);
+    }
+
+    public static class UserLookup implements Lookup {
+        @Override
+        @Cacheable(value = "users", key = "#id")
+        public String find(Long id) {
+            return "user-" + id;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.spring_boot_mongodb_redis.benchmark;
+
+import com.example.spring_boot_mongodb_redis.service.CacheMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the metrics recording path with all threads hammering the same cache name,
+ * which is the contended case for a hot cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class CacheMetricsBenchmark {
+
+    private CacheMetrics metrics;
+    private CacheMetrics.Handle handle;
+
+    @Setup
+    public void setUp() {
+        metrics = new CacheMetrics(new SimpleMeterRegistry());
+        handle = metrics.handle("users");
+    }
+
+    @Benchmark
+    public void recordHit() {
+        metrics.recordCacheHit("users");
+    }
+
+    @Benchmark
+    public void recordMiss() {
+        metrics.recordCacheMiss("users");
+    }
+
+    @Benchmark
+    public void recordHitThroughHandle() {
+        handle.hit();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object snapshot() {
+        return metrics.getMetrics();
+    }
+}
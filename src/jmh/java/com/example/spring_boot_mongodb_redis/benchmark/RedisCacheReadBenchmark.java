@@ -0,0 +1,70 @@
+package com.example.spring_boot_mongodb_redis.benchmark;
+
+import com.example.spring_boot_mongodb_redis.cache.CacheSerializers;
+import com.example.spring_boot_mongodb_redis.config.CacheProperties;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.cache.Cache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.RedisPassword;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end cache hit latency (network + decode) against a local Redis, per serializer mode.
+ * Override the server with -Dbench.redis.host, -Dbench.redis.port and -Dbench.redis.password.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RedisCacheReadBenchmark {
+
+    @Param({"JSON", "BINARY"})
+    private CacheProperties.Serializer.Mode mode;
+
+    private LettuceConnectionFactory connectionFactory;
+    private Cache cache;
+
+    @Setup
+    public void setUp() {
+        RedisStandaloneConfiguration config = new RedisStandaloneConfiguration(
+                System.getProperty("bench.redis.host", "127.0.0.1"),
+                Integer.getInteger("bench.redis.port", 6379));
+        config.setPassword(RedisPassword.of(System.getProperty("bench.redis.password", "password")));
+        connectionFactory = new LettuceConnectionFactory(config);
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+
+        CacheProperties.Serializer settings = new CacheProperties.Serializer();
+        settings.setMode(mode);
+        RedisCacheManager cacheManager = RedisCacheManager.builder(connectionFactory)
+                .cacheDefaults(RedisCacheConfiguration.defaultCacheConfig()
+                        .prefixCacheNameWith("bench:" + mode + ":")
+                        .entryTtl(Duration.ofMinutes(5))
+                        .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(
+                                CacheSerializers.create(settings))))
+                .build();
+        cacheManager.afterPropertiesSet();
+
+        cache = cacheManager.getCache("users");
+        cache.put(42L, BenchmarkUsers.user(42));
+    }
+
+    @TearDown
+    public void tearDown() {
+        cache.clear();
+        connectionFactory.destroy();
+    }
+
+    @Benchmark
+    public Object getHit() {
+        return cache.get(42L);
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.spring_boot_mongodb_redis.benchmark;
+
+import com.example.spring_boot_mongodb_redis.cache.CacheSerializers;
+import com.example.spring_boot_mongodb_redis.config.CacheProperties;
+import com.example.spring_boot_mongodb_redis.model.User;
+import com.example.spring_boot_mongodb_redis.model.UserPage;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode/decode cost of a cached user and a cached page of 100 users per serializer mode.
+ * The encoded sizes are printed once per trial to compare Redis memory per entry.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserCacheSerializationBenchmark {
+
+    @Param({"JSON", "BINARY"})
+    private CacheProperties.Serializer.Mode mode;
+
+    private RedisSerializer<Object> serializer;
+    private User user;
+    private UserPage page;
+    private byte[] userBytes;
+    private byte[] pageBytes;
+
+    @Setup
+    public void setUp() {
+        CacheProperties.Serializer settings = new CacheProperties.Serializer();
+        settings.setMode(mode);
+        serializer = CacheSerializers.create(settings);
+
+        user = BenchmarkUsers.user(42);
+        page = UserPage.builder().users(BenchmarkUsers.users(100)).nextAfter(100L).build();
+        userBytes = serializer.serialize(user);
+        pageBytes = serializer.serialize(page);
+        System.out.printf("%n[%s] user: %d bytes, page of 100: %d bytes%n", mode, userBytes.length, pageBytes.length);
+    }
+
+    @Benchmark
+    public byte[] serializeUser() {
+        return serializer.serialize(user);
+    }
+
+    @Benchmark
+    public Object deserializeUser() {
+        return serializer.deserialize(userBytes);
+    }
+
+    @Benchmark
+    public byte[] serializePage() {
+        return serializer.serialize(page);
+    }
+
+    @Benchmark
+    public void deserializePage(Blackhole blackhole) {
+        blackhole.consume(serializer.deserialize(pageBytes));
+    }
+}
@@ -0,0 +1,38 @@
+#!/bin/bash
+# Compares throughput and latency of the servlet and reactive user APIs under the same load, using wrk.
+# Start one instance per stack against the same MongoDB and Redis, e.g.
+#   ./mvnw spring-boot:run
+#   ./mvnw -Preactive spring-boot:run -Dspring-boot.run.arguments="--spring.profiles.active=reactive --server.port=8082"
+# Usage: src/load/compare.sh [mvc-url] [reactive-url]
+# Tune with CONNECTIONS (default 1000), THREADS (8), DURATION (30s) and USER_ID (an existing ID, 1).
+
+MVC_URL=${1:-http://localhost:8080}
+REACTIVE_URL=${2:-http://localhost:8082}
+CONNECTIONS=${CONNECTIONS:-1000}
+THREADS=${THREADS:-8}
+DURATION=${DURATION:-30s}
+USER_ID=${USER_ID:-1}
+
+if ! command -v wrk > /dev/null; then
+  echo "wrk is required (https://github.com/wg/wrk)"
+  exit 1
+fi
+
+# Prints: requests/s, p50, p90, p99, socket errors
+run() {
+  wrk -t"$THREADS" -c"$CONNECTIONS" -d"$DURATION" --latency "$1" | awk '
+    /Requests\/sec/ { rps = $2 }
+    /^ +50%/ { p50 = $2 } /^ +90%/ { p90 = $2 } /^ +99%/ { p99 = $2 }
+    /Socket errors/ { errors = $0; sub(/.*Socket errors: /, "", errors) }
+    /Non-2xx/ { non2xx = $NF }
+    END { printf "%s\t%s\t%s\t%s\t%s\n", rps, p50, p90, p99, (errors ? errors : "-") (non2xx ? ", non-2xx " non2xx : "") }'
+}
+
+printf "endpoint\tstack\treq/s\tp50\tp90\tp99\terrors\n"
+for path in "/api/users/$USER_ID" "/api/users?limit=100"; do
+  # A short warm-up so JIT and connection pools are not part of the measurement
+  wrk -t"$THREADS" -c"$CONNECTIONS" -d5s "$MVC_URL$path" > /dev/null
+  wrk -t"$THREADS" -c"$CONNECTIONS" -d5s "$REACTIVE_URL$path" > /dev/null
+  printf "%s\tmvc\t%s\n" "$path" "$(run "$MVC_URL$path")"
+  printf "%s\treactive\t%s\n" "$path" "$(run "$REACTIVE_URL$path")"
+done
@@ -0,0 +1,121 @@
+package com.example.spring_boot_mongodb_redis.aspect;
+
+import com.example.spring_boot_mongodb_redis.config.AppProperties;
+import com.example.spring_boot_mongodb_redis.config.BackendLimiter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Applies the per-backend concurrency limits of app.limits.
+ * <p>
+ * Mongo calls are limited at MongoOperations, which the repositories also go through. Bulk
+ * operations hold their slot while they execute, not while they are assembled. Cursors
+ * returned by stream() are read outside the limit.
+ * <p>
+ * Redis calls are limited at the connection factory: a slot is taken when a connection is
+ * handed out and returned when it is closed, which covers the templates, the cache writer and
+ * pipelines alike. A connection that subscribes to a channel gives its slot back, since it
+ * stays open for the lifetime of the listener.
+ */
+@Aspect
+@Component
+@ConditionalOnProperty(name = "app.limits.enabled", havingValue = "true")
+public class BackendLimitingAspect {
+
+    private final BackendLimiter mongo;
+    private final BackendLimiter redis;
+
+    public BackendLimitingAspect(AppProperties appProperties, MeterRegistry meterRegistry) {
+        AppProperties.Limits limits = appProperties.getLimits();
+        this.mongo = new BackendLimiter("mongo", limits.getMongo(), meterRegistry);
+        this.redis = new BackendLimiter("redis", limits.getRedis(), meterRegistry);
+    }
+
+    @Around("execution(* org.springframework.data.mongodb.core.MongoOperations.*(..))")
+    public Object limitMongo(ProceedingJoinPoint joinPoint) throws Throwable {
+        mongo.acquire();
+        Object result;
+        try {
+            result = joinPoint.proceed();
+        } finally {
+            mongo.release();
+        }
+        return result instanceof BulkOperations bulk ? limitedBulk(bulk) : result;
+    }
+
+    @Around("execution(* org.springframework.data.redis.connection.RedisConnectionFactory.getConnection())"
+            + " || execution(* org.springframework.data.redis.connection.RedisConnectionFactory.getClusterConnection())")
+    public Object limitRedis(ProceedingJoinPoint joinPoint) throws Throwable {
+        redis.acquire();
+        Object connection;
+        try {
+            connection = joinPoint.proceed();
+        } catch (Throwable ex) {
+            redis.release();
+            throw ex;
+        }
+        return heldUntilClosed(connection, ((MethodSignature) joinPoint.getSignature()).getReturnType());
+    }
+
+    // Builder calls return the proxy so chained calls stay on it; only execute() takes a slot
+    private BulkOperations limitedBulk(BulkOperations bulk) {
+        return (BulkOperations) Proxy.newProxyInstance(BulkOperations.class.getClassLoader(),
+                new Class<?>[]{BulkOperations.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("execute")) {
+                        Object result = invoke(bulk, method, args);
+                        return result == bulk ? proxy : result;
+                    }
+                    mongo.acquire();
+                    try {
+                        return invoke(bulk, method, args);
+                    } finally {
+                        mongo.release();
+                    }
+                });
+    }
+
+    private Object heldUntilClosed(Object connection, Class<?> type) {
+        AtomicBoolean released = new AtomicBoolean();
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "close" -> {
+                    try {
+                        return invoke(connection, method, args);
+                    } finally {
+                        if (released.compareAndSet(false, true)) {
+                            redis.release();
+                        }
+                    }
+                }
+                case "subscribe", "pSubscribe" -> {
+                    if (released.compareAndSet(false, true)) {
+                        redis.release();
+                    }
+                    return invoke(connection, method, args);
+                }
+                default -> {
+                    return invoke(connection, method, args);
+                }
+            }
+        });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+}
@@ -1,40 +1,161 @@
 package com.example.spring_boot_mongodb_redis.aspect;
 
-import lombok.extern.slf4j.Slf4j;
+import com.example.spring_boot_mongodb_redis.config.AppProperties;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.reflect.MethodSignature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ResponseStatusException;
 
-@Slf4j
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * Traces service calls with one structured line per call, for a sample of requests only.
+ * <p>
+ * The sampling decision is taken once per outermost service call and inherited by the calls
+ * nested in it, so a sampled request is traced end to end. Calls slower than the threshold are
+ * always logged, and so are unexpected errors. Method names and redacted parameter positions
+ * are computed once per method; arguments are only rendered when a line is actually written,
+ * and their rendering is bounded in length. Output goes through the asynchronous appender
+ * configured in logback-spring.xml.
+ */
 @Aspect
 @Component
 public class TransactionLoggingAspect {
 
-    @Around("execution(* com.example.spring_boot_mongodb_redis.service..*(..))")
-    public Object logRedisTransaction(ProceedingJoinPoint joinPoint) throws Throwable {
-        MethodSignature methodSignature = (MethodSignature) joinPoint.getSignature();
-        String method = methodSignature.getDeclaringType().getSimpleName() + "." + methodSignature.getName();
+    private static final Logger traceLogger = LoggerFactory.getLogger("ServiceOperations");
+    private static final ThreadLocal<TraceContext> CONTEXT = ThreadLocal.withInitial(TraceContext::new);
 
-        Object[] args = joinPoint.getArgs();
+    private final AppProperties.Tracing settings;
+    private final long slowThresholdNanos;
+    private final Set<String> redactedParameters;
+    private final Map<Method, MethodTrace> traces = new ConcurrentHashMap<>();
 
-        log.info("Redis Cache Operation Start: {} with args: {}", method, args);
-        try {
-            long start = System.currentTimeMillis();
-            Object result = joinPoint.proceed();
-            long end = System.currentTimeMillis();
+    public TransactionLoggingAspect(AppProperties appProperties) {
+        this.settings = appProperties.getTracing();
+        this.slowThresholdNanos = settings.getSlowThreshold().toNanos();
+        this.redactedParameters = settings.getRedactedParameters().stream()
+                .map(name -> name.toLowerCase(Locale.ROOT))
+                .collect(Collectors.toSet());
+    }
+
+    // Scheduled jobs (metrics sampling, filter rebuilds) are not requests and stay untraced.
+    // Reactive methods only assemble a pipeline when called, so timing the call would measure nothing.
+    @Around("execution(* com.example.spring_boot_mongodb_redis.service..*(..))"
+            + " && !@annotation(org.springframework.scheduling.annotation.Scheduled)"
+            + " && !execution(org.reactivestreams.Publisher+ *(..))")
+    public Object trace(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (!settings.isEnabled()) {
+            return joinPoint.proceed();
+        }
+        MethodTrace trace = methodTrace(((MethodSignature) joinPoint.getSignature()).getMethod());
+
+        TraceContext context = CONTEXT.get();
+        if (context.depth++ == 0) {
+            context.sampled = traceLogger.isInfoEnabled()
+                    && ThreadLocalRandom.current().nextDouble() < settings.getSampleRate();
+        }
+        boolean sampled = context.sampled;
 
-            log.info("Redis Cache Operation End: {} - execution time: {} ms, cache hit/miss info: Cache operation completed", method, (end - start));
-            return result;
+        long start = System.nanoTime();
+        Throwable failure = null;
+        try {
+            return joinPoint.proceed();
         } catch (Throwable ex) {
-            if (ex instanceof ResponseStatusException rse) {
-                log.warn("Redis Cache Operation Error in {}: {} {}", method, rse.getStatusCode(), rse.getReason());
-            } else {
-                log.error("Redis Cache Operation Error in {}: {} {}", method, ex.getClass().getSimpleName(), ex.getMessage());
-            }
+            failure = ex;
             throw ex;
+        } finally {
+            context.depth--;
+            emit(trace, joinPoint.getArgs(), System.nanoTime() - start, failure, sampled);
+        }
+    }
+
+    private void emit(MethodTrace trace, Object[] args, long elapsedNanos, Throwable failure, boolean sampled) {
+        boolean unexpected = failure != null
+                && !(failure instanceof ResponseStatusException rse && rse.getStatusCode().is4xxClientError());
+        if (unexpected) {
+            traceLogger.error("trace method={} outcome={} durationUs={} args={} error=\"{}\"",
+                    trace.name, outcome(failure), elapsedNanos / 1_000, new RenderedArgs(trace, args), failure.getMessage());
+        } else if (elapsedNanos >= slowThresholdNanos) {
+            traceLogger.warn("trace method={} outcome={} durationUs={} slow=true args={}",
+                    trace.name, outcome(failure), elapsedNanos / 1_000, new RenderedArgs(trace, args));
+        } else if (sampled) {
+            traceLogger.info("trace method={} outcome={} durationUs={} args={}",
+                    trace.name, outcome(failure), elapsedNanos / 1_000, new RenderedArgs(trace, args));
+        }
+    }
+
+    private static String outcome(Throwable failure) {
+        if (failure == null) {
+            return "ok";
+        }
+        return failure instanceof ResponseStatusException rse
+                ? String.valueOf(rse.getStatusCode().value())
+                : failure.getClass().getSimpleName();
+    }
+
+    private MethodTrace methodTrace(Method method) {
+        MethodTrace trace = traces.get(method);
+        return trace != null ? trace : traces.computeIfAbsent(method, this::describe);
+    }
+
+    private MethodTrace describe(Method method) {
+        Parameter[] parameters = method.getParameters();
+        boolean[] redacted = new boolean[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            redacted[i] = redactedParameters.contains(parameters[i].getName().toLowerCase(Locale.ROOT));
+        }
+        return new MethodTrace(method.getDeclaringClass().getSimpleName() + "." + method.getName(), redacted);
+    }
+
+    private record MethodTrace(String name, boolean[] redacted) {
+    }
+
+    private static final class TraceContext {
+        private int depth;
+        private boolean sampled;
+    }
+
+    // Rendered by the logger only when the line is written; collections are summarized, not expanded
+    private final class RenderedArgs {
+
+        private final MethodTrace trace;
+        private final Object[] args;
+
+        private RenderedArgs(MethodTrace trace, Object[] args) {
+            this.trace = trace;
+            this.args = args;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder("[");
+            for (int i = 0; i < args.length; i++) {
+                if (i > 0) {
+                    out.append(", ");
+                }
+                if (i < trace.redacted.length && trace.redacted[i]) {
+                    out.append("***");
+                } else if (args[i] instanceof Collection<?> collection) {
+                    out.append(collection.getClass().getSimpleName()).append("(size=").append(collection.size()).append(')');
+                } else {
+                    String value = String.valueOf(args[i]);
+                    int limit = settings.getMaxArgumentLength();
+                    out.append(value.length() > limit ? value.substring(0, limit) + "..." : value);
+                }
+            }
+            return out.append(']').toString();
         }
     }
 }
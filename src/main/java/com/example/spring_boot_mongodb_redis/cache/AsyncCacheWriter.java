@@ -0,0 +1,207 @@
+package com.example.spring_boot_mongodb_redis.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.cache.RedisCache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Runs Redis cache writes off the request thread, so a slow Redis costs requests nothing even
+ * before the circuit breaker opens. Writes are spread by key over single-threaded lanes, which
+ * keeps the writes of one key in order, and each lane has a bounded queue.
+ * <p>
+ * A write that finds its lane full is dropped. Redis may then hold a value older than the
+ * dropped one, so the key is evicted once everything queued before it has run. Until then, and
+ * while a key has a write queued at all, {@link #isPending} tells readers to skip Redis for it
+ * instead of reading the value the write is about to replace. Invalidations for other nodes go
+ * through the same lanes, so they only go out once the write they announce is in Redis; one that
+ * finds its lane full goes out at once. When disabled, writes and invalidations run inline.
+ */
+@Slf4j
+public class AsyncCacheWriter {
+
+    private final boolean enabled;
+    private final RedisCircuitBreaker breaker;
+    private final Lane[] lanes;
+    private final Map<PendingKey, Integer> pending = new ConcurrentHashMap<>();
+    private final Counter dropped;
+
+    public AsyncCacheWriter(boolean enabled, int laneCount, int queueCapacity, RedisCircuitBreaker breaker,
+                            ThreadFactory threadFactory, MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.breaker = breaker;
+        this.lanes = new Lane[enabled ? laneCount : 0];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane(queueCapacity, threadFactory);
+        }
+        this.dropped = Counter.builder("app.cache.async-writes.dropped")
+                .description("Cache writes dropped because their write queue was full").register(meterRegistry);
+        Gauge.builder("app.cache.async-writes.pending", pending, Map::size)
+                .description("Cache keys with a write still queued").register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Finishes queued writes for a moment, so a clean shutdown does not lose them
+    public void shutdown() {
+        for (Lane lane : lanes) {
+            lane.shutdown();
+        }
+        try {
+            for (Lane lane : lanes) {
+                lane.awaitTermination(1, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // True while Redis may still hold a value that a queued or dropped write replaces
+    public boolean isPending(RedisCache cache, Object key) {
+        if (!enabled) {
+            return false;
+        }
+        PendingKey pendingKey = new PendingKey(cache.getName(), key);
+        return pending.containsKey(pendingKey) || lane(cache.getName(), key).droppedKeys.containsKey(pendingKey);
+    }
+
+    public void write(RedisCache cache, Object key, Runnable write) {
+        write(cache, List.of(key), keys -> write.run());
+    }
+
+    // The keys are split by lane, and the write runs once per lane with that lane's keys
+    public void write(RedisCache cache, Collection<?> keys, Consumer<List<Object>> write) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        if (!enabled) {
+            run(cache, new ArrayList<>(keys), write, true);
+            return;
+        }
+        Map<Lane, List<Object>> byLane = new LinkedHashMap<>();
+        for (Object key : keys) {
+            byLane.computeIfAbsent(lane(cache.getName(), key), lane -> new ArrayList<>()).add(key);
+        }
+        byLane.forEach((lane, laneKeys) -> submit(lane, cache, laneKeys, write));
+    }
+
+    // Runs the action after every write already queued for the keys, without holding up the caller
+    public void afterWrites(String cacheName, Collection<?> keys, Consumer<List<Object>> action) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        if (!enabled) {
+            action.accept(new ArrayList<>(keys));
+            return;
+        }
+        Map<Lane, List<Object>> byLane = new LinkedHashMap<>();
+        for (Object key : keys) {
+            byLane.computeIfAbsent(lane(cacheName, key), lane -> new ArrayList<>()).add(key);
+        }
+        byLane.forEach((lane, laneKeys) -> {
+            try {
+                lane.execute(() -> action.accept(laneKeys));
+            } catch (RejectedExecutionException ex) {
+                action.accept(laneKeys);
+            }
+        });
+    }
+
+    private void submit(Lane lane, RedisCache cache, List<Object> keys, Consumer<List<Object>> write) {
+        keys.forEach(key -> pending.merge(new PendingKey(cache.getName(), key), 1, Integer::sum));
+        try {
+            lane.execute(() -> {
+                try {
+                    run(cache, keys, write, false);
+                } finally {
+                    keys.forEach(key -> release(new PendingKey(cache.getName(), key)));
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            keys.forEach(key -> {
+                PendingKey pendingKey = new PendingKey(cache.getName(), key);
+                lane.droppedKeys.put(pendingKey, cache);
+                release(pendingKey);
+            });
+            dropped.increment(keys.size());
+            log.debug("Write queue full, dropped {} write(s) to cache '{}'", keys.size(), cache.getName());
+            // In case the lane drained meanwhile; an empty task is enough to run the eviction
+            try {
+                lane.execute(() -> { });
+            } catch (RejectedExecutionException stillFull) {
+                // Still full, so a queued write runs it once the lane drains
+            }
+        }
+    }
+
+    // Inline writes fail the caller on errors other than an outage, like a direct Redis call would
+    private void run(RedisCache cache, List<Object> keys, Consumer<List<Object>> write, boolean inline) {
+        if (!breaker.allowRequest()) {
+            keys.forEach(key -> breaker.markDirty(cache, key));
+            return;
+        }
+        try {
+            write.accept(keys);
+            breaker.onSuccess();
+        } catch (RuntimeException ex) {
+            if (!breaker.onFailure(ex)) {
+                if (inline) {
+                    throw ex;
+                }
+                log.warn("Write of {} key(s) to cache '{}' failed: {}", keys.size(), cache.getName(), ex.getMessage());
+            }
+            keys.forEach(key -> breaker.markDirty(cache, key));
+        }
+    }
+
+    private void release(PendingKey key) {
+        pending.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
+    }
+
+    // By the key's string form, which is also how invalidations name it
+    private Lane lane(String cacheName, Object key) {
+        return lanes[Math.floorMod(Objects.hash(cacheName, String.valueOf(key)), lanes.length)];
+    }
+
+    private record PendingKey(String cacheName, Object key) {
+    }
+
+    private final class Lane extends ThreadPoolExecutor {
+
+        private final Map<PendingKey, RedisCache> droppedKeys = new ConcurrentHashMap<>();
+
+        private Lane(int queueCapacity, ThreadFactory threadFactory) {
+            super(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), threadFactory);
+        }
+
+        // Once the queue is empty, every write that was ahead of a dropped one has run
+        @Override
+        protected void afterExecute(Runnable task, Throwable error) {
+            if (droppedKeys.isEmpty() || !getQueue().isEmpty()) {
+                return;
+            }
+            for (Map.Entry<PendingKey, RedisCache> entry : List.copyOf(droppedKeys.entrySet())) {
+                RedisCache cache = entry.getValue();
+                run(cache, List.of(entry.getKey().key()), keys -> cache.evict(entry.getKey().key()), false);
+                droppedKeys.remove(entry.getKey(), cache);
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.spring_boot_mongodb_redis.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Broadcasts key invalidations between application nodes over a Redis pub/sub channel.
+ * A message is the sender's node id, the cache name and zero or more keys, one per line;
+ * a message without keys clears the whole cache. Nodes ignore their own messages. Key
+ * invalidations wait for the node's queued writes to those keys, see {@link AsyncCacheWriter}.
+ */
+@Slf4j
+public class CacheInvalidationBus implements MessageListener {
+
+    private static final String SEPARATOR = "\n";
+
+    private final StringRedisTemplate redisTemplate;
+    private final String channel;
+    private final RedisCircuitBreaker breaker;
+    private final AsyncCacheWriter writer;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<String, Listener> listeners = new ConcurrentHashMap<>();
+
+    public CacheInvalidationBus(StringRedisTemplate redisTemplate, String channel, RedisCircuitBreaker breaker,
+                                AsyncCacheWriter writer) {
+        this.redisTemplate = redisTemplate;
+        this.channel = channel;
+        this.breaker = breaker;
+        this.writer = writer;
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    public void subscribe(String cacheName, Listener listener) {
+        listeners.put(cacheName, listener);
+    }
+
+    public void publish(String cacheName, Collection<String> keys) {
+        // Another node reading Redis before the write lands would cache the old value again
+        writer.afterWrites(cacheName, keys, laneKeys -> send(nodeId + SEPARATOR + cacheName + SEPARATOR
+                + String.join(SEPARATOR, laneKeys.stream().map(String::valueOf).toList())));
+    }
+
+    public void publishClear(String cacheName) {
+        send(nodeId + SEPARATOR + cacheName);
+    }
+
+    // Skipped while Redis is unavailable; other nodes' near caches then catch up by expiry
+    private void send(String message) {
+        if (!breaker.allowRequest()) {
+            return;
+        }
+        try {
+            redisTemplate.convertAndSend(channel, message);
+            breaker.onSuccess();
+        } catch (Exception e) {
+            breaker.onFailure(e);
+            log.warn("Failed to publish cache invalidation on channel '{}': {}", channel, e.getMessage());
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split(SEPARATOR);
+        if (parts.length < 2 || nodeId.equals(parts[0])) {
+            return;
+        }
+        Listener listener = listeners.get(parts[1]);
+        if (listener == null) {
+            return;
+        }
+        if (parts.length == 2) {
+            log.debug("Remote clear received for cache '{}'", parts[1]);
+            listener.onClear();
+        } else {
+            List<String> keys = Arrays.asList(parts).subList(2, parts.length);
+            log.debug("Remote invalidation received for cache '{}': {} key(s)", parts[1], keys.size());
+            listener.onInvalidate(keys);
+        }
+    }
+
+    public interface Listener {
+
+        void onInvalidate(Collection<String> keys);
+
+        void onClear();
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.spring_boot_mongodb_redis.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Owns the invalidation listener container and starts it in the background instead of during
+ * context startup. Subscribing needs Redis, and a container started by the context fails the
+ * whole startup when Redis is unreachable, so a node could never boot into the degraded mode
+ * the circuit breaker provides. Failed attempts are retried every retry interval; once
+ * subscribed, the container recovers lost connections itself.
+ */
+@Slf4j
+public class CacheInvalidationSubscription implements SmartLifecycle {
+
+    private final RedisMessageListenerContainer container;
+    private final Duration retryInterval;
+    private final ScheduledExecutorService subscriber;
+    private volatile boolean running;
+    private int failedAttempts;
+
+    public CacheInvalidationSubscription(RedisMessageListenerContainer container, Duration retryInterval,
+                                         ThreadFactory threadFactory) {
+        this.container = container;
+        this.retryInterval = retryInterval;
+        this.subscriber = Executors.newSingleThreadScheduledExecutor(threadFactory);
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        subscriber.execute(this::subscribe);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        subscriber.shutdownNow();
+        try {
+            container.destroy();
+        } catch (Exception ex) {
+            log.debug("Stopping the cache invalidation listener failed: {}", ex.getMessage());
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    public boolean isSubscribed() {
+        return container.isListening();
+    }
+
+    // Runs on the subscriber thread only
+    private void subscribe() {
+        if (!running) {
+            return;
+        }
+        try {
+            container.start();
+            if (failedAttempts > 0) {
+                log.info("Subscribed to cache invalidations after {} failed attempt(s)", failedAttempts);
+            }
+        } catch (RuntimeException ex) {
+            // A failed start leaves the container marked as started; stopping resets it for the next attempt
+            container.stop();
+            if (failedAttempts++ == 0) {
+                log.warn("Could not subscribe to cache invalidations, retrying every {} ms: {}",
+                        retryInterval.toMillis(), ex.getMessage());
+            } else {
+                log.debug("Subscribing to cache invalidations still failing: {}", ex.getMessage());
+            }
+            if (running) {
+                subscriber.schedule(this::subscribe, retryInterval.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+}
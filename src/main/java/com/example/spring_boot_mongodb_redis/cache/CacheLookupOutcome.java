@@ -0,0 +1,47 @@
+package com.example.spring_boot_mongodb_redis.cache;
+
+/**
+ * Per-thread result of the last cache lookup made through an {@link InstrumentedCache}, so the
+ * cache interceptor can tell whether an invocation was served from the cache without allocating.
+ * Callers bracket an invocation with {@link #reset()} and {@link #restore(int)} so that nested
+ * cached calls keep their own result.
+ */
+public final class CacheLookupOutcome {
+
+    public static final int NONE = 0;
+    public static final int HIT = 1;
+    public static final int MISS = 2;
+
+    private static final ThreadLocal<CacheLookupOutcome> CURRENT = ThreadLocal.withInitial(CacheLookupOutcome::new);
+
+    private int result = NONE;
+
+    private CacheLookupOutcome() {
+    }
+
+    public static CacheLookupOutcome current() {
+        return CURRENT.get();
+    }
+
+    // Clears the result and returns the previous one for restore()
+    public int reset() {
+        int previous = result;
+        result = NONE;
+        return previous;
+    }
+
+    // Returns the result recorded since reset() and puts the previous one back
+    public int restore(int previous) {
+        int current = result;
+        result = previous;
+        return current;
+    }
+
+    void hit() {
+        result = HIT;
+    }
+
+    void miss() {
+        result = MISS;
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.spring_boot_mongodb_redis.cache;
+
+import com.example.spring_boot_mongodb_redis.config.CacheProperties;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.jsontype.BasicPolymorphicTypeValidator;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+public final class CacheSerializers {
+
+    private CacheSerializers() {
+    }
+
+    public static RedisSerializer<Object> json() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+        objectMapper.activateDefaultTyping(
+                BasicPolymorphicTypeValidator.builder().allowIfBaseType(Object.class).build(),
+                ObjectMapper.DefaultTyping.NON_FINAL,
+                JsonTypeInfo.As.PROPERTY
+        );
+        return new GenericJackson2JsonRedisSerializer(objectMapper);
+    }
+
+    // The binary format still reads entries written by the JSON serializer, so modes can be switched live
+    public static RedisSerializer<Object> create(CacheProperties.Serializer settings) {
+        return settings.getMode() == CacheProperties.Serializer.Mode.BINARY
+                ? new UserBinaryRedisSerializer(json(), settings.getCompressionThreshold())
+                : json();
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.spring_boot_mongodb_redis.cache;
+
+import com.example.spring_boot_mongodb_redis.service.CacheMetrics;
+import org.springframework.cache.Cache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Outermost decorator: counts gets (hit/miss), puts and evictions per cache as they happen
+ * and publishes the lookup result through {@link CacheLookupOutcome}.
+ */
+public class InstrumentedCache extends DelegatingCache {
+
+    private static final ThreadLocal<TrackingLoader> LOADER = ThreadLocal.withInitial(TrackingLoader::new);
+
+    private final CacheMetrics.Handle metrics;
+
+    public InstrumentedCache(Cache delegate, CacheMetrics metrics) {
+        super(delegate);
+        this.metrics = metrics.handle(delegate.getName());
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        ValueWrapper wrapper = delegate.get(key);
+        recordLookup(wrapper != null);
+        return wrapper;
+    }
+
+    @Override
+    public <T> T get(Object key, Class<T> type) {
+        T value = delegate.get(key, type);
+        recordLookup(value != null);
+        return value;
+    }
+
+    @Override
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        TrackingLoader loader = LOADER.get();
+        try {
+            T value = delegate.get(key, loader.enter(valueLoader));
+            recordLookup(!loader.loaded());
+            return value;
+        } finally {
+            loader.exit();
+        }
+    }
+
+    @Override
+    public CompletableFuture<?> retrieve(Object key) {
+        CompletableFuture<?> future = delegate.retrieve(key);
+        if (future == null) {
+            metrics.miss();
+            return null;
+        }
+        return future.whenComplete((value, ex) -> {
+            if (ex == null) {
+                recordCount(value != null);
+            }
+        });
+    }
+
+    @Override
+    public <T> CompletableFuture<T> retrieve(Object key, Supplier<CompletableFuture<T>> valueLoader) {
+        AtomicBoolean loaded = new AtomicBoolean();
+        return delegate.retrieve(key, () -> {
+            loaded.set(true);
+            return valueLoader.get();
+        }).whenComplete((value, ex) -> {
+            if (ex == null) {
+                recordCount(!loaded.get());
+            }
+        });
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        delegate.put(key, value);
+        metrics.put();
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = delegate.putIfAbsent(key, value);
+        metrics.put();
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        delegate.evict(key);
+        metrics.evict();
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        boolean evicted = delegate.evictIfPresent(key);
+        metrics.evict();
+        return evicted;
+    }
+
+    private void recordLookup(boolean hit) {
+        recordCount(hit);
+        if (hit) {
+            CacheLookupOutcome.current().hit();
+        } else {
+            CacheLookupOutcome.current().miss();
+        }
+    }
+
+    private void recordCount(boolean hit) {
+        if (hit) {
+            metrics.hit();
+        } else {
+            metrics.miss();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.spring_boot_mongodb_redis.cache;
+
+import com.example.spring_boot_mongodb_redis.service.CacheMetrics;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * View of a {@link CacheManager} whose caches are wrapped in an {@link InstrumentedCache}.
+ * Used by the cache interceptor only; other beans keep talking to the underlying manager.
+ */
+public class InstrumentedCacheManager implements CacheManager {
+
+    private final CacheManager delegate;
+    private final CacheMetrics metrics;
+    private final Map<String, Cache> caches = new ConcurrentHashMap<>();
+
+    public InstrumentedCacheManager(CacheManager delegate, CacheMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        Cache cache = caches.get(name);
+        if (cache != null) {
+            return cache;
+        }
+        Cache target = delegate.getCache(name);
+        return target != null ? caches.computeIfAbsent(name, n -> new InstrumentedCache(target, metrics)) : null;
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return delegate.getCacheNames();
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.spring_boot_mongodb_redis.cache;
+
+import org.springframework.data.redis.cache.RedisCacheWriter;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Spreads expirations of entries written together (cold start, list rebuilds) so that they
+ * do not all expire in the same second.
+ */
+public class JitteredTtlFunction implements RedisCacheWriter.TtlFunction {
+
+    private final long ttlMillis;
+    private final double jitter;
+
+    public JitteredTtlFunction(Duration ttl, double jitter) {
+        this.ttlMillis = ttl.toMillis();
+        this.jitter = Math.max(0, Math.min(jitter, 1));
+    }
+
+    @Override
+    public Duration getTimeToLive(Object key, Object value) {
+        if (jitter == 0) {
+            return Duration.ofMillis(ttlMillis);
+        }
+        double factor = 1 + jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        return Duration.ofMillis(Math.max(1, (long) (ttlMillis * factor)));
+    }
+
+    public Duration getMaximumTimeToLive() {
+        return Duration.ofMillis((long) (ttlMillis * (1 + jitter)) + 1);
+    }
+}
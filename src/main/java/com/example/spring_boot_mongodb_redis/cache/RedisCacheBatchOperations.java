@@ -0,0 +1,301 @@
+package com.example.spring_boot_mongodb_redis.cache;
+
+import com.example.spring_boot_mongodb_redis.service.CacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Multi-key cache reads and writes that go to Redis in a single MGET or pipeline instead of
+ * one round trip per key. Falls back to per-key operations for caches that are not Redis backed.
+ * Lookups and writes follow the Redis circuit breaker like the caches do: while Redis is
+ * unavailable, lookups only see the near cache and writes only reach it. Writes go through the
+ * {@link AsyncCacheWriter} like single-key ones, which keeps both in order per key.
+ */
+@Slf4j
+@Component
+public class RedisCacheBatchOperations {
+
+    private final CacheManager cacheManager;
+    private final StringRedisTemplate redisTemplate;
+    private final StringRedisTemplate readTemplate;
+    private final RedisCircuitBreaker breaker;
+    private final AsyncCacheWriter writer;
+    private final CacheMetrics metrics;
+
+    public RedisCacheBatchOperations(CacheManager cacheManager,
+                                     StringRedisTemplate redisTemplate,
+                                     @Qualifier("cacheReadConnectionFactory") ObjectProvider<RedisConnectionFactory> cacheReadConnectionFactory,
+                                     RedisCircuitBreaker breaker,
+                                     AsyncCacheWriter writer,
+                                     CacheMetrics metrics) {
+        this.cacheManager = cacheManager;
+        this.redisTemplate = redisTemplate;
+        // MGETs are cache lookups and follow cache.redis.read-from like the cache itself
+        RedisConnectionFactory readConnections = cacheReadConnectionFactory.getIfAvailable();
+        this.readTemplate = readConnections != null ? new StringRedisTemplate(readConnections) : redisTemplate;
+        this.breaker = breaker;
+        this.writer = writer;
+        this.metrics = metrics;
+    }
+
+    // Returns the cached entries among the given keys; absent keys are simply not in the map
+    public Map<Object, Object> getAll(String cacheName, Collection<?> keys) {
+        Map<Object, Object> found = new HashMap<>();
+        Cache cache = cacheManager.getCache(cacheName);
+        if (cache == null || keys.isEmpty()) {
+            return found;
+        }
+        RedisCache redisCache = DelegatingCache.unwrap(cache, RedisCache.class);
+        if (redisCache == null) {
+            keys.forEach(key -> {
+                Cache.ValueWrapper wrapper = cache.get(key);
+                if (wrapper != null && wrapper.get() != null) {
+                    found.put(key, wrapper.get());
+                }
+            });
+            recordLookups(cacheName, found.size(), keys.size());
+            return found;
+        }
+
+        TwoLevelCache nearCache = DelegatingCache.unwrap(cache, TwoLevelCache.class);
+        List<Object> remoteKeys = new ArrayList<>(keys.size());
+        for (Object key : keys) {
+            Cache.ValueWrapper wrapper = nearCache != null ? nearCache.getLocal(key) : null;
+            if (wrapper != null && wrapper.get() != null) {
+                found.put(key, wrapper.get());
+            } else if (!writer.isPending(redisCache, key)) {
+                // A key with a queued write is a miss, like in ResilientCache
+                remoteKeys.add(key);
+            }
+        }
+
+        if (!remoteKeys.isEmpty() && breaker.allowRequest()) {
+            Map<Object, Object> remote;
+            try {
+                remote = mget(readTemplate, redisCache, remoteKeys);
+                breaker.onSuccess();
+            } catch (RuntimeException ex) {
+                if (!breaker.onFailure(ex)) {
+                    throw ex;
+                }
+                remote = Map.of();
+            }
+            log.debug("MGET {} key(s) from cache '{}': {} hit(s)", remoteKeys.size(), cacheName, remote.size());
+
+            found.putAll(remote);
+            if (nearCache != null) {
+                nearCache.afterRemoteGet(remote);
+            }
+        }
+
+        recordLookups(cacheName, found.size(), keys.size());
+        return found;
+    }
+
+    // Entries as stored in Redis, read from the master; skips the near cache and is not counted as lookups.
+    // Null while Redis is unavailable, since then nothing is known about the keys.
+    public Map<Object, Object> peekAll(String cacheName, Collection<?> keys) {
+        Cache cache = cacheManager.getCache(cacheName);
+        if (cache == null || keys.isEmpty()) {
+            return new HashMap<>();
+        }
+        RedisCache redisCache = DelegatingCache.unwrap(cache, RedisCache.class);
+        if (redisCache == null) {
+            Map<Object, Object> found = new HashMap<>();
+            keys.forEach(key -> {
+                Cache.ValueWrapper wrapper = cache.get(key);
+                if (wrapper != null && wrapper.get() != null) {
+                    found.put(key, wrapper.get());
+                }
+            });
+            return found;
+        }
+        if (!breaker.allowRequest()) {
+            return null;
+        }
+        try {
+            Map<Object, Object> found = mget(redisTemplate, redisCache, new ArrayList<>(keys));
+            breaker.onSuccess();
+            return found;
+        } catch (RuntimeException ex) {
+            if (!breaker.onFailure(ex)) {
+                throw ex;
+            }
+            return null;
+        }
+    }
+
+    // Keys without an entry, checked with pipelined EXISTS so nothing is deserialized or counted as a lookup.
+    // Empty while Redis is unavailable: nothing could be added for them anyway.
+    public List<Object> missingKeys(String cacheName, Collection<?> keys) {
+        Cache cache = cacheManager.getCache(cacheName);
+        if (cache == null || keys.isEmpty()) {
+            return new ArrayList<>(keys);
+        }
+        RedisCache redisCache = DelegatingCache.unwrap(cache, RedisCache.class);
+        if (redisCache == null) {
+            return keys.stream().filter(key -> cache.get(key) == null).collect(Collectors.toList());
+        }
+
+        if (!breaker.allowRequest()) {
+            return new ArrayList<>();
+        }
+        List<Object> ordered = new ArrayList<>(keys);
+        List<Object> exists;
+        try {
+            exists = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                ordered.forEach(key -> connection.keyCommands().exists(RedisCacheKeys.serializeKey(redisCache, key)));
+                return null;
+            });
+            breaker.onSuccess();
+        } catch (RuntimeException ex) {
+            if (!breaker.onFailure(ex)) {
+                throw ex;
+            }
+            return new ArrayList<>();
+        }
+        List<Object> missing = new ArrayList<>();
+        for (int i = 0; i < ordered.size(); i++) {
+            // A queued write fills the key anyway
+            if (!Boolean.TRUE.equals(exists.get(i)) && !writer.isPending(redisCache, ordered.get(i))) {
+                missing.add(ordered.get(i));
+            }
+        }
+        return missing;
+    }
+
+    public void putAll(String cacheName, Map<?, ?> entries) {
+        Cache cache = cacheManager.getCache(cacheName);
+        if (cache == null || entries.isEmpty()) {
+            return;
+        }
+        RedisCache redisCache = DelegatingCache.unwrap(cache, RedisCache.class);
+        if (redisCache == null) {
+            entries.forEach(cache::put);
+            return;
+        }
+
+        Map<Object, Object> snapshot = new LinkedHashMap<>(entries);
+        writer.write(redisCache, snapshot.keySet(), keys -> {
+            pipelineSets(redisCache, subset(snapshot, keys), RedisStringCommands.SetOption.upsert());
+            log.debug("Pipelined {} put(s) into cache '{}'", keys.size(), cacheName);
+        });
+
+        TwoLevelCache nearCache = DelegatingCache.unwrap(cache, TwoLevelCache.class);
+        if (nearCache != null) {
+            nearCache.afterRemotePut(entries);
+        }
+    }
+
+    // SET NX: a value written concurrently by a regular put is never replaced by an older preload.
+    // The near cache is left alone, since this node cannot tell which writes were skipped.
+    public void putAllIfAbsent(String cacheName, Map<?, ?> entries) {
+        Cache cache = cacheManager.getCache(cacheName);
+        if (cache == null || entries.isEmpty()) {
+            return;
+        }
+        RedisCache redisCache = DelegatingCache.unwrap(cache, RedisCache.class);
+        if (redisCache == null) {
+            entries.forEach(cache::putIfAbsent);
+            return;
+        }
+
+        Map<Object, Object> snapshot = new LinkedHashMap<>(entries);
+        writer.write(redisCache, snapshot.keySet(), keys -> {
+            pipelineSets(redisCache, subset(snapshot, keys), RedisStringCommands.SetOption.ifAbsent());
+            log.debug("Pipelined {} put-if-absent(s) into cache '{}'", keys.size(), cacheName);
+        });
+    }
+
+    public void evictAll(String cacheName, Collection<?> keys) {
+        Cache cache = cacheManager.getCache(cacheName);
+        if (cache == null || keys.isEmpty()) {
+            return;
+        }
+        RedisCache redisCache = DelegatingCache.unwrap(cache, RedisCache.class);
+        if (redisCache == null) {
+            keys.forEach(cache::evict);
+            return;
+        }
+
+        writer.write(redisCache, keys, laneKeys -> {
+            byte[][] rawKeys = laneKeys.stream().map(key -> RedisCacheKeys.serializeKey(redisCache, key)).toArray(byte[][]::new);
+            redisTemplate.execute((RedisCallback<Long>) connection -> connection.keyCommands().del(rawKeys));
+            log.debug("Evicted {} key(s) from cache '{}' in one call", laneKeys.size(), cacheName);
+        });
+
+        TwoLevelCache nearCache = DelegatingCache.unwrap(cache, TwoLevelCache.class);
+        if (nearCache != null) {
+            nearCache.afterRemoteEvict(keys);
+        }
+    }
+
+    private static Map<Object, Object> subset(Map<Object, Object> entries, List<Object> keys) {
+        Map<Object, Object> subset = new LinkedHashMap<>();
+        keys.forEach(key -> subset.put(key, entries.get(key)));
+        return subset;
+    }
+
+    private static Map<Object, Object> mget(StringRedisTemplate template, RedisCache redisCache, List<Object> keys) {
+        byte[][] rawKeys = keys.stream().map(key -> RedisCacheKeys.serializeKey(redisCache, key)).toArray(byte[][]::new);
+        List<byte[]> values = template.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.stringCommands().mGet(rawKeys));
+
+        Map<Object, Object> found = new HashMap<>();
+        for (int i = 0; values != null && i < values.size(); i++) {
+            byte[] raw = values.get(i);
+            Object value = raw != null ? RedisCacheKeys.deserializeValue(redisCache, raw) : null;
+            if (value != null) {
+                found.put(keys.get(i), value);
+            }
+        }
+        return found;
+    }
+
+    private void pipelineSets(RedisCache redisCache, Map<?, ?> entries, RedisStringCommands.SetOption option) {
+        RedisCacheConfiguration config = redisCache.getCacheConfiguration();
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            entries.forEach((key, value) -> connection.stringCommands().set(
+                    RedisCacheKeys.serializeKey(redisCache, key),
+                    RedisCacheKeys.serializeValue(redisCache, value),
+                    expiration(config.getTtlFunction().getTimeToLive(key, value)),
+                    option));
+            return null;
+        });
+    }
+
+    private void recordLookups(String cacheName, int hits, int total) {
+        CacheMetrics.Handle handle = metrics.handle(cacheName);
+        for (int i = 0; i < total; i++) {
+            if (i < hits) {
+                handle.hit();
+            } else {
+                handle.miss();
+            }
+        }
+    }
+
+    private static Expiration expiration(Duration ttl) {
+        return ttl == null || ttl.isZero() || ttl.isNegative() ? Expiration.persistent() : Expiration.from(ttl);
+    }
+}
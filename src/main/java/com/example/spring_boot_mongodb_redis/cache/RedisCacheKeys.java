@@ -0,0 +1,47 @@
+package com.example.spring_boot_mongodb_redis.cache;
+
+import org.springframework.core.convert.ConversionService;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.util.ByteUtils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Builds raw Redis keys and values exactly the way {@link RedisCache} does, so that code
+ * talking to Redis directly (pipelines, MGET) stays compatible with the cache abstraction.
+ */
+public final class RedisCacheKeys {
+
+    private RedisCacheKeys() {
+    }
+
+    public static String cacheKey(RedisCache cache, Object key) {
+        RedisCacheConfiguration config = cache.getCacheConfiguration();
+        String convertedKey = convertKey(config, key);
+        return config.usePrefix() ? config.getKeyPrefixFor(cache.getName()) + convertedKey : convertedKey;
+    }
+
+    public static byte[] serializeKey(RedisCache cache, Object key) {
+        return ByteUtils.getBytes(cache.getCacheConfiguration().getKeySerializationPair().write(cacheKey(cache, key)));
+    }
+
+    public static byte[] serializeValue(RedisCache cache, Object value) {
+        return ByteUtils.getBytes(cache.getCacheConfiguration().getValueSerializationPair().write(value));
+    }
+
+    public static Object deserializeValue(RedisCache cache, byte[] value) {
+        return cache.getCacheConfiguration().getValueSerializationPair().read(ByteBuffer.wrap(value));
+    }
+
+    private static String convertKey(RedisCacheConfiguration config, Object key) {
+        if (key instanceof String stringKey) {
+            return stringKey;
+        }
+        ConversionService conversionService = config.getConversionService();
+        if (conversionService.canConvert(key.getClass(), String.class)) {
+            return conversionService.convert(key, String.class);
+        }
+        return key.toString();
+    }
+}
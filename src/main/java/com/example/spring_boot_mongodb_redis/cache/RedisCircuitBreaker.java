@@ -0,0 +1,229 @@
+package com.example.spring_boot_mongodb_redis.cache;
+
+import com.example.spring_boot_mongodb_redis.config.CacheProperties;
+import io.lettuce.core.RedisCommandTimeoutException;
+import io.lettuce.core.RedisConnectionException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Circuit breaker shared by every request-path use of Redis. Timeouts and connection failures
+ * count towards opening it; any other error is the caller's to handle. While it is open, callers
+ * skip Redis entirely: reads are misses and writes are dropped, and the keys of dropped writes are
+ * remembered as dirty. No request ever probes. A background PING closes the breaker after enough
+ * consecutive successes, and the dirty keys are deleted first, so entries that missed an update
+ * are never served once it closes.
+ */
+@Slf4j
+public class RedisCircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final int REPAIR_BATCH = 1_000;
+
+    private final StringRedisTemplate redisTemplate;
+    private final CacheProperties.Breaker settings;
+    private final boolean enabled;
+    private final ScheduledExecutorService prober;
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final Set<ByteBuffer> dirtyKeys = ConcurrentHashMap.newKeySet();
+    // Caches that overflowed the dirty key limit or were cleared while open; cleared in full on recovery
+    private final Map<String, RedisCache> dirtyCaches = new ConcurrentHashMap<>();
+    private final Counter opened;
+    private final Counter shortCircuited;
+    private final Counter failures;
+    private final Counter droppedWrites;
+    private volatile Instant openedAt;
+    private int probeSuccesses;
+
+    public RedisCircuitBreaker(StringRedisTemplate redisTemplate,
+                               CacheProperties cacheProperties,
+                               MeterRegistry meterRegistry,
+                               ThreadFactory probeThreads) {
+        this.redisTemplate = redisTemplate;
+        this.settings = cacheProperties.getBreaker();
+        this.enabled = cacheProperties.isEnabled() && settings.isEnabled();
+        this.prober = Executors.newSingleThreadScheduledExecutor(probeThreads);
+        this.opened = Counter.builder("app.cache.breaker.opened")
+                .description("Times the Redis circuit breaker opened").register(meterRegistry);
+        this.shortCircuited = Counter.builder("app.cache.breaker.short-circuited")
+                .description("Redis calls skipped while the breaker was open").register(meterRegistry);
+        this.failures = Counter.builder("app.cache.breaker.failures")
+                .description("Redis timeouts and connection failures").register(meterRegistry);
+        this.droppedWrites = Counter.builder("app.cache.breaker.dropped-writes")
+                .description("Cache writes dropped because Redis was unavailable").register(meterRegistry);
+        Gauge.builder("app.cache.breaker.state", state, current -> current.get().ordinal())
+                .description("0 closed, 1 open, 2 half-open").register(meterRegistry);
+        Gauge.builder("app.cache.breaker.dirty-keys", dirtyKeys, Set::size)
+                .description("Keys to delete from Redis before the breaker closes").register(meterRegistry);
+    }
+
+    public void shutdown() {
+        prober.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // True when the caller may use Redis; counts the call as skipped otherwise
+    public boolean allowRequest() {
+        if (state.get() == State.CLOSED) {
+            return true;
+        }
+        shortCircuited.increment();
+        return false;
+    }
+
+    public void onSuccess() {
+        if (consecutiveFailures.get() != 0) {
+            consecutiveFailures.set(0);
+        }
+    }
+
+    // True when the error means Redis is unavailable, so the caller should degrade instead of failing
+    public boolean onFailure(Throwable error) {
+        if (!enabled || !isOutage(error)) {
+            return false;
+        }
+        failures.increment();
+        if (consecutiveFailures.incrementAndGet() >= settings.getFailureThreshold()) {
+            open(error);
+        }
+        return true;
+    }
+
+    public void markDirty(RedisCache cache, Object key) {
+        droppedWrites.increment();
+        if (dirtyCaches.containsKey(cache.getName())) {
+            return;
+        }
+        if (dirtyKeys.size() >= settings.getMaxDirtyKeys()) {
+            dirtyCaches.putIfAbsent(cache.getName(), cache);
+            return;
+        }
+        dirtyKeys.add(ByteBuffer.wrap(RedisCacheKeys.serializeKey(cache, key)));
+    }
+
+    // A key outside the cache abstraction that must not survive the outage, such as a ready marker
+    public void markDirty(String redisKey) {
+        droppedWrites.increment();
+        dirtyKeys.add(ByteBuffer.wrap(redisKey.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public void markCleared(RedisCache cache) {
+        droppedWrites.increment();
+        dirtyCaches.putIfAbsent(cache.getName(), cache);
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        status.put("state", state.get());
+        status.put("consecutiveFailures", consecutiveFailures.get());
+        status.put("openedAt", openedAt);
+        status.put("dirtyKeys", dirtyKeys.size());
+        status.put("dirtyCaches", dirtyCaches.keySet());
+        return status;
+    }
+
+    static boolean isOutage(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RedisConnectionFailureException || cause instanceof QueryTimeoutException
+                    || cause instanceof RedisConnectionException || cause instanceof RedisCommandTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void open(Throwable error) {
+        if (!state.compareAndSet(State.CLOSED, State.OPEN)) {
+            return;
+        }
+        openedAt = Instant.now();
+        opened.increment();
+        log.warn("Redis circuit breaker opened after {} consecutive failure(s), serving without Redis: {}",
+                consecutiveFailures.get(), error.getMessage());
+        probeSuccesses = 0;
+        prober.schedule(this::probe, settings.getProbeInterval().toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    // Runs on the probe thread only, until the breaker closes
+    private void probe() {
+        try {
+            redisTemplate.execute((RedisCallback<String>) connection -> connection.ping());
+            if (++probeSuccesses >= settings.getSuccessThreshold()) {
+                state.set(State.HALF_OPEN);
+                repair();
+                consecutiveFailures.set(0);
+                state.set(State.CLOSED);
+                // Writes dropped while the first pass ran
+                repair();
+                log.info("Redis circuit breaker closed after {} ms", Duration.between(openedAt, Instant.now()).toMillis());
+                return;
+            }
+        } catch (RuntimeException ex) {
+            probeSuccesses = 0;
+            if (!state.compareAndSet(State.HALF_OPEN, State.OPEN) && state.get() == State.CLOSED) {
+                // The second repair pass failed after closing; the next failures reopen the breaker
+                log.warn("Could not delete keys dropped while Redis was unavailable: {}", ex.getMessage());
+                return;
+            }
+            log.debug("Redis probe failed: {}", ex.getMessage());
+        }
+        prober.schedule(this::probe, settings.getProbeInterval().toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    // Keys dropped while open may hold values older than Mongo; they are unlinked in batches, outside the DEL budget
+    private void repair() {
+        for (Iterator<Map.Entry<String, RedisCache>> it = dirtyCaches.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, RedisCache> entry = it.next();
+            entry.getValue().clear();
+            it.remove();
+            log.info("Cleared cache '{}' after Redis recovered", entry.getKey());
+        }
+        List<ByteBuffer> batch = new ArrayList<>(REPAIR_BATCH);
+        for (Iterator<ByteBuffer> it = dirtyKeys.iterator(); it.hasNext(); ) {
+            batch.add(it.next());
+            if (batch.size() == REPAIR_BATCH || !it.hasNext()) {
+                delete(batch);
+                batch.forEach(dirtyKeys::remove);
+                batch.clear();
+            }
+        }
+    }
+
+    private void delete(List<ByteBuffer> keys) {
+        byte[][] rawKeys = keys.stream().map(ByteBuffer::array).toArray(byte[][]::new);
+        redisTemplate.execute((RedisCallback<Long>) connection -> connection.keyCommands().unlink(rawKeys));
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.spring_boot_mongodb_redis.cache;
+
+import com.example.spring_boot_mongodb_redis.config.CacheProperties;
+import com.example.spring_boot_mongodb_redis.model.User;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Refreshes entries in the background before they expire, using XFetch probabilistic early
+ * expiration: a read at time {@code now} triggers a refresh when
+ * {@code now - delta * beta * ln(rand) >= expiry}, where {@code delta} is how long the value
+ * takes to recompute. Keys that are expensive to rebuild start refreshing earlier, and
+ * concurrent readers spread out instead of all refreshing at the TTL boundary. Callers keep
+ * getting the current value while the refresh runs.
+ * <p>
+ * Only {@code get(key, loader)} lookups take part, since the loader is what gets re-run.
+ * Expiry times come from Redis PTTL, looked up in the background the first time a key is
+ * read on this node.
+ */
+@Slf4j
+public class RefreshAheadCache extends DelegatingCache {
+
+    private static final ThreadLocal<TrackingLoader> LOADER = ThreadLocal.withInitial(TrackingLoader::new);
+    private static final double EWMA_WEIGHT = 0.2;
+
+    private final RedisCache redisCache;
+    private final StringRedisTemplate redisTemplate;
+    private final Executor executor;
+    private final double beta;
+    private final com.github.benmanes.caffeine.cache.Cache<Object, Long> expiresAt;
+    private final Map<Object, Boolean> pending = new ConcurrentHashMap<>();
+
+    // Smoothed recompute time of this cache's loader, in milliseconds
+    private volatile double recomputeMillis = -1;
+
+    public RefreshAheadCache(Cache delegate,
+                             StringRedisTemplate redisTemplate,
+                             Executor executor,
+                             CacheProperties.RefreshAhead settings,
+                             Duration maximumTtl) {
+        super(delegate);
+        this.redisCache = unwrap(delegate, RedisCache.class);
+        this.redisTemplate = redisTemplate;
+        this.executor = executor;
+        this.beta = settings.getBeta();
+        this.expiresAt = Caffeine.newBuilder()
+                .maximumSize(settings.getMaximumTracked())
+                .expireAfterWrite(maximumTtl)
+                .build();
+    }
+
+    @Override
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        TrackingLoader loader = LOADER.get();
+        try {
+            T value = delegate.get(key, loader.enter(valueLoader));
+            if (loader.loaded()) {
+                recordRecompute(loader.loadNanos());
+                expiresAt.invalidate(key);
+            } else if (value != null) {
+                maybeRefresh(key, valueLoader);
+            }
+            return value;
+        } finally {
+            loader.exit();
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        super.put(key, value);
+        expiresAt.invalidate(key);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = super.putIfAbsent(key, value);
+        expiresAt.invalidate(key);
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        super.evict(key);
+        expiresAt.invalidate(key);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        boolean evicted = super.evictIfPresent(key);
+        expiresAt.invalidate(key);
+        return evicted;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        expiresAt.invalidateAll();
+    }
+
+    @Override
+    public boolean invalidate() {
+        boolean invalidated = super.invalidate();
+        expiresAt.invalidateAll();
+        return invalidated;
+    }
+
+    private void maybeRefresh(Object key, Callable<?> valueLoader) {
+        Long expiry = expiresAt.getIfPresent(key);
+        if (expiry == null) {
+            submit(key, () -> lookupExpiry(key));
+            return;
+        }
+        double delta = recomputeMillis;
+        if (delta < 0) {
+            return;
+        }
+        double lead = delta * beta * -Math.log(1.0 - ThreadLocalRandom.current().nextDouble());
+        if (System.currentTimeMillis() + lead >= expiry) {
+            Callable<?> target = TrackingLoader.unwrap(valueLoader);
+            submit(key, () -> refresh(key, target));
+        }
+    }
+
+    private void submit(Object key, Runnable task) {
+        if (pending.putIfAbsent(key, Boolean.TRUE) != null) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    pending.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            // Refresh queue is full: the entry just expires normally
+            pending.remove(key);
+        }
+    }
+
+    private void lookupExpiry(Object key) {
+        if (redisCache == null) {
+            return;
+        }
+        byte[] redisKey = RedisCacheKeys.serializeKey(redisCache, key);
+        try {
+            Long ttl = redisTemplate.execute((RedisCallback<Long>) connection -> connection.keyCommands().pTtl(redisKey));
+            if (ttl != null && ttl >= 0) {
+                expiresAt.put(key, System.currentTimeMillis() + ttl);
+            } else if (ttl != null && ttl == -1) {
+                expiresAt.put(key, Long.MAX_VALUE);
+            }
+        } catch (DataAccessException ex) {
+            log.debug("PTTL failed for {}: {}", getName(), ex.getMessage());
+        }
+    }
+
+    // The reload reads the source without holding anything, so a write can land while it runs. Every write
+    // on this node drops the key's expiry, and a write on another node shows as a newer version in the
+    // entry; either way the reloaded value is older and is discarded.
+    private void refresh(Object key, Callable<?> valueLoader) {
+        long start = System.nanoTime();
+        try {
+            Object value = valueLoader.call();
+            recordRecompute(System.nanoTime() - start);
+            if (value == null) {
+                return;
+            }
+            if (expiresAt.getIfPresent(key) == null || isNewer(delegate.get(key), value)) {
+                log.debug("Dropped the refresh of {}::{}, it was written meanwhile", getName(), key);
+                return;
+            }
+            put(key, value);
+            log.debug("Refreshed {}::{} ahead of expiry", getName(), key);
+        } catch (Exception ex) {
+            // Leave the current entry in place; the next reader after expiry reloads it
+            log.debug("Refresh of {}::{} failed: {}", getName(), key, ex.toString());
+        }
+    }
+
+    private static boolean isNewer(ValueWrapper current, Object loaded) {
+        return current != null && current.get() instanceof User cached && loaded instanceof User user
+                && cached.getVersion() != null && (user.getVersion() == null || cached.getVersion() > user.getVersion());
+    }
+
+    private void recordRecompute(long nanos) {
+        double sample = nanos / 1_000_000.0;
+        double current = recomputeMillis;
+        recomputeMillis = current < 0 ? sample : current + EWMA_WEIGHT * (sample - current);
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.spring_boot_mongodb_redis.cache;
+
+import org.springframework.cache.Cache;
+import org.springframework.data.redis.cache.RedisCache;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Keeps a Redis outage out of the request path. Calls go through the shared circuit breaker:
+ * while it is open, or when a call times out, reads are misses that load from the source and
+ * writes are dropped with their keys marked dirty. Puts and evictions are handed to the
+ * {@link AsyncCacheWriter}, so they cost the request nothing even while Redis is slow but the
+ * breaker is still closed; a key with a write still queued reads as a miss. Sits below the
+ * near cache, which keeps serving and filling its local copies in the meantime.
+ */
+public class ResilientCache extends DelegatingCache {
+
+    private final RedisCircuitBreaker breaker;
+    private final AsyncCacheWriter writer;
+    private final RedisCache redisCache;
+
+    public ResilientCache(Cache delegate, RedisCircuitBreaker breaker, AsyncCacheWriter writer) {
+        super(delegate);
+        this.breaker = breaker;
+        this.writer = writer;
+        this.redisCache = unwrap(delegate, RedisCache.class);
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        if (!breaker.allowRequest() || isPending(key)) {
+            return null;
+        }
+        try {
+            ValueWrapper wrapper = delegate.get(key);
+            breaker.onSuccess();
+            return wrapper;
+        } catch (RuntimeException ex) {
+            if (breaker.onFailure(ex)) {
+                return null;
+            }
+            throw ex;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    // The loader runs at most once: a failure after it ran (storing the value) returns what it loaded.
+    // A key with a queued write is loaded without storing; the queued write stores the newer value.
+    @Override
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        if (!breaker.allowRequest() || isPending(key)) {
+            return load(key, valueLoader);
+        }
+        Attempt<T> attempt = new Attempt<>(valueLoader);
+        try {
+            T value = delegate.get(key, attempt);
+            breaker.onSuccess();
+            return value;
+        } catch (RuntimeException ex) {
+            if (!breaker.onFailure(ex)) {
+                throw ex;
+            }
+            if (!attempt.started) {
+                return load(key, valueLoader);
+            }
+            if (!attempt.finished) {
+                throw ex;
+            }
+            markDirty(key);
+            return attempt.value;
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        if (!breaker.allowRequest()) {
+            markDirty(key);
+            return;
+        }
+        if (isAsync()) {
+            writer.write(redisCache, key, () -> delegate.put(key, value));
+            return;
+        }
+        try {
+            delegate.put(key, value);
+            breaker.onSuccess();
+        } catch (RuntimeException ex) {
+            if (!breaker.onFailure(ex)) {
+                throw ex;
+            }
+            markDirty(key);
+        }
+    }
+
+    // Synchronous, since the caller needs the existing value
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        if (!breaker.allowRequest()) {
+            markDirty(key);
+            return null;
+        }
+        try {
+            ValueWrapper existing = delegate.putIfAbsent(key, value);
+            breaker.onSuccess();
+            return existing;
+        } catch (RuntimeException ex) {
+            if (!breaker.onFailure(ex)) {
+                throw ex;
+            }
+            markDirty(key);
+            return null;
+        }
+    }
+
+    @Override
+    public void evict(Object key) {
+        evictIfPresent(key);
+    }
+
+    // False when queued, which the contract allows for an unknown prior presence
+    @Override
+    public boolean evictIfPresent(Object key) {
+        if (!breaker.allowRequest()) {
+            markDirty(key);
+            return false;
+        }
+        if (isAsync()) {
+            writer.write(redisCache, key, () -> delegate.evictIfPresent(key));
+            return false;
+        }
+        try {
+            boolean evicted = delegate.evictIfPresent(key);
+            breaker.onSuccess();
+            return evicted;
+        } catch (RuntimeException ex) {
+            if (!breaker.onFailure(ex)) {
+                throw ex;
+            }
+            markDirty(key);
+            return false;
+        }
+    }
+
+    @Override
+    public void clear() {
+        invalidate();
+    }
+
+    @Override
+    public boolean invalidate() {
+        if (!breaker.allowRequest()) {
+            markCleared();
+            return false;
+        }
+        try {
+            boolean invalidated = delegate.invalidate();
+            breaker.onSuccess();
+            return invalidated;
+        } catch (RuntimeException ex) {
+            if (!breaker.onFailure(ex)) {
+                throw ex;
+            }
+            markCleared();
+            return false;
+        }
+    }
+
+    // Failures are wrapped like a cache wraps them, so callers never mistake them for cache errors
+    private <T> T load(Object key, Callable<T> valueLoader) {
+        try {
+            return valueLoader.call();
+        } catch (Exception ex) {
+            throw new ValueRetrievalException(key, valueLoader, ex);
+        }
+    }
+
+    private boolean isAsync() {
+        return redisCache != null && writer.isEnabled();
+    }
+
+    private boolean isPending(Object key) {
+        return redisCache != null && writer.isPending(redisCache, key);
+    }
+
+    private void markDirty(Object key) {
+        if (redisCache != null) {
+            breaker.markDirty(redisCache, key);
+        }
+    }
+
+    private void markCleared() {
+        if (redisCache != null) {
+            breaker.markCleared(redisCache);
+        }
+    }
+
+    // Records whether the wrapped cache got as far as running the loader, and what it returned.
+    // Single-flight may run it on another thread, hence volatile.
+    private static final class Attempt<T> implements Callable<T> {
+
+        private final Callable<T> loader;
+        private volatile boolean started;
+        private volatile boolean finished;
+        private volatile T value;
+
+        private Attempt(Callable<T> loader) {
+            this.loader = loader;
+        }
+
+        @Override
+        public T call() throws Exception {
+            started = true;
+            value = loader.call();
+            finished = true;
+            return value;
+        }
+    }
+}
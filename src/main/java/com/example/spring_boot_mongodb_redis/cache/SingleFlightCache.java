@@ -0,0 +1,164 @@
+package com.example.spring_boot_mongodb_redis.cache;
+
+import com.example.spring_boot_mongodb_redis.config.CacheProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Coalesces concurrent misses on the same key into one load. Inside a node, callers share
+ * the leader's in-flight future; across nodes, the leader takes a short Redis lock and the
+ * other nodes poll the shared cache for the value instead of loading it themselves.
+ */
+@Slf4j
+public class SingleFlightCache extends DelegatingCache {
+
+    private static final RedisScript<Long> RELEASE_LOCK = RedisScript.of(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final CacheProperties.SingleFlight settings;
+    private final Map<Object, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    public SingleFlightCache(Cache delegate, StringRedisTemplate redisTemplate, CacheProperties.SingleFlight settings) {
+        super(delegate);
+        this.redisTemplate = redisTemplate;
+        this.settings = settings;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper wrapper = delegate.get(key);
+        if (wrapper != null) {
+            return (T) wrapper.get();
+        }
+
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> leader = inFlight.putIfAbsent(key, flight);
+        if (leader != null) {
+            return (T) await(key, leader, valueLoader);
+        }
+
+        try {
+            Object value = loadAcrossNodes(key, valueLoader);
+            flight.complete(value);
+            return (T) value;
+        } catch (RuntimeException ex) {
+            // Redis errors too, so followers fail with the leader instead of waiting on it
+            flight.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    // A leader polls for at most waitTimeout and then loads under a lock lasting lockTtl; past that it is stuck
+    private Object await(Object key, CompletableFuture<Object> leader, Callable<?> valueLoader) {
+        Duration timeout = settings.getWaitTimeout().plus(settings.getLockTtl());
+        try {
+            return leader.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof ValueRetrievalException retrieval) {
+                throw new ValueRetrievalException(key, valueLoader, retrieval.getCause());
+            }
+            if (ex.getCause() instanceof RuntimeException cacheError) {
+                // The leader's cache error is this caller's too, and is handled the same way above this layer
+                throw cacheError;
+            }
+            throw new ValueRetrievalException(key, valueLoader, ex.getCause());
+        } catch (TimeoutException ex) {
+            log.debug("Gave up waiting for the in-flight load of {} after {}, loading locally", key, timeout);
+            return load(key, valueLoader);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ValueRetrievalException(key, valueLoader, ex);
+        }
+    }
+
+    private Object loadAcrossNodes(Object key, Callable<?> valueLoader) {
+        String lockKey = lockKey(key);
+        String token = UUID.randomUUID().toString();
+        long deadline = System.nanoTime() + settings.getWaitTimeout().toNanos();
+
+        while (!tryLock(lockKey, token)) {
+            // Another node is loading: wait for its value rather than hitting the database too
+            ValueWrapper wrapper = delegate.get(key);
+            if (wrapper != null) {
+                return wrapper.get();
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                log.debug("Gave up waiting for {} after {}, loading locally", lockKey, settings.getWaitTimeout());
+                return load(key, valueLoader);
+            }
+            sleep(key, valueLoader);
+        }
+
+        try {
+            // The previous holder may have finished between our miss and taking the lock
+            ValueWrapper wrapper = delegate.get(key);
+            return wrapper != null ? wrapper.get() : load(key, valueLoader);
+        } finally {
+            unlock(lockKey, token);
+        }
+    }
+
+    private Object load(Object key, Callable<?> valueLoader) {
+        Object value;
+        try {
+            value = valueLoader.call();
+        } catch (Exception ex) {
+            throw new ValueRetrievalException(key, valueLoader, ex);
+        }
+        if (value != null) {
+            delegate.put(key, value);
+        }
+        return value;
+    }
+
+    // Without Redis the lock is skipped; the in-node coalescing still applies
+    private boolean tryLock(String lockKey, String token) {
+        try {
+            return Boolean.TRUE.equals(redisTemplate.opsForValue()
+                    .setIfAbsent(lockKey, token, settings.getLockTtl()));
+        } catch (DataAccessException ex) {
+            log.warn("Could not take load lock {}: {}", lockKey, ex.getMessage());
+            return true;
+        }
+    }
+
+    private void unlock(String lockKey, String token) {
+        try {
+            redisTemplate.execute(RELEASE_LOCK, List.of(lockKey), token);
+        } catch (DataAccessException ex) {
+            log.warn("Could not release load lock {}, it expires in {}: {}", lockKey, settings.getLockTtl(), ex.getMessage());
+        }
+    }
+
+    private void sleep(Object key, Callable<?> valueLoader) {
+        try {
+            Thread.sleep(settings.getPollInterval());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ValueRetrievalException(key, valueLoader, ex);
+        }
+    }
+
+    private String lockKey(Object key) {
+        return "lock:" + getName() + "::" + key;
+    }
+}
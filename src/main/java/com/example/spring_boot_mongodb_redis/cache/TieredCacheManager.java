@@ -0,0 +1,107 @@
+package com.example.spring_boot_mongodb_redis.cache;
+
+import com.example.spring_boot_mongodb_redis.config.CacheProperties;
+import com.example.spring_boot_mongodb_redis.service.CacheMetrics;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Composite cache manager that layers decorators (such as the in-heap near cache)
+ * over the caches of the underlying Redis cache manager.
+ */
+public class TieredCacheManager implements CacheManager {
+
+    private final CacheManager remote;
+    private final CacheProperties.Near near;
+    private final CacheProperties.SingleFlight singleFlight;
+    private final CacheProperties.RefreshAhead refreshAhead;
+    private final CacheProperties.Expiry expiry;
+    private final CacheInvalidationBus invalidationBus;
+    private final RedisCircuitBreaker breaker;
+    private final AsyncCacheWriter writer;
+    private final CacheMetrics metrics;
+    private final StringRedisTemplate redisTemplate;
+    private final Map<String, Cache> caches = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor refreshExecutor;
+
+    public TieredCacheManager(CacheManager remote,
+                              CacheProperties properties,
+                              CacheInvalidationBus invalidationBus,
+                              RedisCircuitBreaker breaker,
+                              AsyncCacheWriter writer,
+                              CacheMetrics metrics,
+                              StringRedisTemplate redisTemplate,
+                              ThreadFactory refreshThreads) {
+        this.remote = remote;
+        this.near = properties.getNear();
+        this.singleFlight = properties.getSingleFlight();
+        this.refreshAhead = properties.getRefreshAhead();
+        this.expiry = properties.getExpiry();
+        this.invalidationBus = invalidationBus;
+        this.breaker = breaker;
+        this.writer = writer;
+        this.metrics = metrics;
+        this.redisTemplate = redisTemplate;
+
+        this.refreshExecutor = new ThreadPoolExecutor(refreshAhead.getThreads(), refreshAhead.getThreads(),
+                0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(refreshAhead.getQueueCapacity()), refreshThreads);
+    }
+
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        Cache cache = caches.get(name);
+        if (cache != null) {
+            return cache;
+        }
+        Cache remoteCache = remote.getCache(name);
+        if (remoteCache == null) {
+            return null;
+        }
+        return caches.computeIfAbsent(name, n -> decorate(remoteCache));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return remote.getCacheNames();
+    }
+
+    // Outermost first: refresh-ahead -> near cache -> circuit breaker -> single-flight loading -> Redis
+    private Cache decorate(Cache cache) {
+        if (singleFlight.isEnabled() && singleFlight.getCaches().contains(cache.getName())) {
+            cache = new SingleFlightCache(cache, redisTemplate, singleFlight);
+        }
+        if (breaker.isEnabled()) {
+            cache = new ResilientCache(cache, breaker, writer);
+        }
+        if (near.isEnabled() && near.getCaches().contains(cache.getName())) {
+            TwoLevelCache twoLevelCache = new TwoLevelCache(cache,
+                    Caffeine.newBuilder()
+                            .maximumSize(near.getMaximumSize())
+                            .expireAfterWrite(near.getTtl())
+                            .build(),
+                    invalidationBus,
+                    metrics);
+            invalidationBus.subscribe(cache.getName(), twoLevelCache);
+            cache = twoLevelCache;
+        }
+        if (refreshAhead.isEnabled() && refreshAhead.getCaches().contains(cache.getName())) {
+            JitteredTtlFunction ttl = new JitteredTtlFunction(expiry.ttlFor(cache.getName()), expiry.jitterFor(cache.getName()));
+            cache = new RefreshAheadCache(cache, redisTemplate, refreshExecutor, refreshAhead, ttl.getMaximumTimeToLive());
+        }
+        return cache;
+    }
+}
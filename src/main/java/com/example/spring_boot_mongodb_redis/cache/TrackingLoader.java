@@ -0,0 +1,63 @@
+package com.example.spring_boot_mongodb_redis.cache;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+/**
+ * Reusable per-thread wrapper around a {@code get(key, loader)} value loader that records
+ * whether the loader ran and how long it took, so decorators can tell a miss from a hit
+ * without allocating a wrapper per call. Frames are stacked for nested cached calls; each
+ * decorator type keeps its own instance per thread. Caches run the loader on the calling
+ * thread.
+ */
+final class TrackingLoader implements Callable<Object> {
+
+    private Callable<?>[] targets = new Callable<?>[4];
+    private boolean[] loaded = new boolean[4];
+    private long[] loadNanos = new long[4];
+    private int depth;
+
+    // Returns the loader to hand to the delegate; every enter() must be paired with exit()
+    @SuppressWarnings("unchecked")
+    <T> Callable<T> enter(Callable<T> target) {
+        if (depth == targets.length) {
+            targets = Arrays.copyOf(targets, depth * 2);
+            loaded = Arrays.copyOf(loaded, depth * 2);
+            loadNanos = Arrays.copyOf(loadNanos, depth * 2);
+        }
+        targets[depth] = target;
+        loaded[depth] = false;
+        loadNanos[depth] = 0;
+        depth++;
+        return (Callable<T>) this;
+    }
+
+    void exit() {
+        targets[--depth] = null;
+    }
+
+    boolean loaded() {
+        return loaded[depth - 1];
+    }
+
+    long loadNanos() {
+        return loadNanos[depth - 1];
+    }
+
+    @Override
+    public Object call() throws Exception {
+        int frame = depth - 1;
+        long start = System.nanoTime();
+        try {
+            return targets[frame].call();
+        } finally {
+            loaded[frame] = true;
+            loadNanos[frame] = System.nanoTime() - start;
+        }
+    }
+
+    // The caller's own loader, for decorators that keep it beyond the current call
+    static Callable<?> unwrap(Callable<?> loader) {
+        return loader instanceof TrackingLoader tracking ? tracking.targets[tracking.depth - 1] : loader;
+    }
+}
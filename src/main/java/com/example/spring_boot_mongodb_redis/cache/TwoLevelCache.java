@@ -0,0 +1,190 @@
+package com.example.spring_boot_mongodb_redis.cache;
+
+import com.example.spring_boot_mongodb_redis.service.CacheMetrics;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Near cache: a bounded in-heap L1 in front of the shared Redis L2. Local writes update L1
+ * directly and are broadcast so that other nodes drop their L1 copy of the same key.
+ */
+public class TwoLevelCache extends DelegatingCache implements CacheInvalidationBus.Listener {
+
+    private static final ThreadLocal<TrackingLoader> LOADER = ThreadLocal.withInitial(TrackingLoader::new);
+
+    private final com.github.benmanes.caffeine.cache.Cache<String, ValueWrapper> local;
+    private final CacheInvalidationBus invalidationBus;
+    private final CacheMetrics.Handle l1Metrics;
+    private final CacheMetrics.Handle l2Metrics;
+
+    public TwoLevelCache(Cache remote,
+                         com.github.benmanes.caffeine.cache.Cache<String, ValueWrapper> local,
+                         CacheInvalidationBus invalidationBus,
+                         CacheMetrics metrics) {
+        super(remote);
+        this.local = local;
+        this.invalidationBus = invalidationBus;
+        this.l1Metrics = metrics.handle(remote.getName() + ":l1");
+        this.l2Metrics = metrics.handle(remote.getName() + ":l2");
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        String localKey = localKey(key);
+        ValueWrapper wrapper = local.getIfPresent(localKey);
+        if (wrapper != null) {
+            l1Metrics.hit();
+            return wrapper;
+        }
+        l1Metrics.miss();
+
+        wrapper = delegate.get(key);
+        if (wrapper != null) {
+            l2Metrics.hit();
+            local.put(localKey, wrapper);
+        } else {
+            l2Metrics.miss();
+        }
+        return wrapper;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        String localKey = localKey(key);
+        ValueWrapper wrapper = local.getIfPresent(localKey);
+        if (wrapper != null) {
+            l1Metrics.hit();
+            return (T) wrapper.get();
+        }
+        l1Metrics.miss();
+
+        TrackingLoader loader = LOADER.get();
+        T value;
+        try {
+            value = delegate.get(key, loader.enter(valueLoader));
+            if (loader.loaded()) {
+                l2Metrics.miss();
+            } else {
+                l2Metrics.hit();
+            }
+        } finally {
+            loader.exit();
+        }
+        local.put(localKey, new SimpleValueWrapper(value));
+        return value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        delegate.put(key, value);
+        String localKey = localKey(key);
+        local.put(localKey, new SimpleValueWrapper(value));
+        invalidationBus.publish(getName(), List.of(localKey));
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = delegate.putIfAbsent(key, value);
+        invalidateEverywhere(key);
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        delegate.evict(key);
+        invalidateEverywhere(key);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        boolean evicted = delegate.evictIfPresent(key);
+        invalidateEverywhere(key);
+        return evicted;
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+        local.invalidateAll();
+        invalidationBus.publishClear(getName());
+    }
+
+    @Override
+    public boolean invalidate() {
+        boolean invalidated = delegate.invalidate();
+        local.invalidateAll();
+        invalidationBus.publishClear(getName());
+        return invalidated;
+    }
+
+    // L1 only, for callers that read the remaining keys from Redis themselves (multi-get)
+    public ValueWrapper getLocal(Object key) {
+        ValueWrapper wrapper = local.getIfPresent(localKey(key));
+        if (wrapper != null) {
+            l1Metrics.hit();
+        } else {
+            l1Metrics.miss();
+        }
+        return wrapper;
+    }
+
+    public void afterRemoteGet(Map<?, ?> entries) {
+        entries.forEach((key, value) -> local.put(localKey(key), new SimpleValueWrapper(value)));
+    }
+
+    // Called after entries were written to or removed from Redis outside this cache, e.g. by a pipeline
+    public void afterRemotePut(Map<?, ?> entries) {
+        List<String> localKeys = new ArrayList<>(entries.size());
+        entries.forEach((key, value) -> {
+            String localKey = localKey(key);
+            local.put(localKey, new SimpleValueWrapper(value));
+            localKeys.add(localKey);
+        });
+        invalidationBus.publish(getName(), localKeys);
+    }
+
+    public void afterRemoteEvict(Collection<?> keys) {
+        List<String> localKeys = keys.stream().map(TwoLevelCache::localKey).toList();
+        local.invalidateAll(localKeys);
+        invalidationBus.publish(getName(), localKeys);
+    }
+
+    @Override
+    public void onInvalidate(Collection<String> keys) {
+        local.invalidateAll(keys);
+    }
+
+    @Override
+    public void onClear() {
+        local.invalidateAll();
+    }
+
+    private void invalidateEverywhere(Object key) {
+        String localKey = localKey(key);
+        local.invalidate(localKey);
+        invalidationBus.publish(getName(), List.of(localKey));
+    }
+
+    // L1 is keyed by the same string form Redis uses, so keys survive the trip over pub/sub
+    static String localKey(Object key) {
+        return String.valueOf(key);
+    }
+}
@@ -0,0 +1,324 @@
+package com.example.spring_boot_mongodb_redis.cache;
+
+import com.example.spring_boot_mongodb_redis.model.User;
+import com.example.spring_boot_mongodb_redis.model.UserPage;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Schema-aware binary encoding for {@link User}, {@code List<User>} and {@link UserPage} cache values.
+ * <p>
+ * Layout: magic byte, format version, flags, type tag, then the payload (deflated when larger than
+ * the compression threshold). Each user is a field-presence bitmask followed by the present fields
+ * as varints and length-prefixed UTF-8. Any other value, and any entry that does not start with the
+ * magic byte (e.g. JSON written before this serializer was enabled), goes through the JSON delegate.
+ * Entries from a newer format version read as a cache miss, so mixed-version nodes can share Redis.
+ * Version 2 added the user's version field; version 1 entries still read, without it.
+ */
+public class UserBinaryRedisSerializer implements RedisSerializer<Object> {
+
+    static final byte MAGIC = (byte) 0xB7;
+    static final byte FORMAT_VERSION = 2;
+
+    private static final byte FLAG_COMPRESSED = 1;
+    private static final byte TYPE_USER = 1;
+    private static final byte TYPE_USER_LIST = 2;
+    private static final byte TYPE_USER_PAGE = 3;
+    private static final int HEADER_LENGTH = 4;
+
+    private final RedisSerializer<Object> fallback;
+    private final int compressionThreshold;
+
+    public UserBinaryRedisSerializer(RedisSerializer<Object> fallback, int compressionThreshold) {
+        this.fallback = fallback;
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        byte type;
+        Output out = new Output();
+        if (value instanceof User user) {
+            type = TYPE_USER;
+            writeUser(out, user);
+        } else if (value instanceof UserPage page && isUserList(page.getUsers())) {
+            type = TYPE_USER_PAGE;
+            writeUsers(out, page.getUsers());
+            writeNullableLong(out, page.getNextAfter());
+        } else if (value instanceof List<?> list && isUserList(list)) {
+            type = TYPE_USER_LIST;
+            writeUsers(out, list);
+        } else {
+            return fallback.serialize(value);
+        }
+
+        byte flags = 0;
+        byte[] payload = out.toByteArray();
+        if (compressionThreshold > 0 && payload.length >= compressionThreshold) {
+            payload = compress(payload);
+            flags |= FLAG_COMPRESSED;
+        }
+
+        byte[] result = new byte[HEADER_LENGTH + payload.length];
+        result[0] = MAGIC;
+        result[1] = FORMAT_VERSION;
+        result[2] = flags;
+        result[3] = type;
+        System.arraycopy(payload, 0, result, HEADER_LENGTH, payload.length);
+        return result;
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] != MAGIC) {
+            return fallback.deserialize(bytes);
+        }
+        if (bytes.length < HEADER_LENGTH || bytes[1] > FORMAT_VERSION) {
+            // Written by a newer node; treat as a miss rather than failing the request
+            return null;
+        }
+
+        Input in = new Input(bytes, HEADER_LENGTH);
+        if ((bytes[2] & FLAG_COMPRESSED) != 0) {
+            in = new Input(decompress(in), 0);
+        }
+        return switch (bytes[3]) {
+            case TYPE_USER -> readUser(in);
+            case TYPE_USER_LIST -> readUsers(in);
+            case TYPE_USER_PAGE -> UserPage.builder().users(readUsers(in)).nextAfter(readNullableLong(in)).build();
+            default -> throw new SerializationException("Unknown cache value type: " + bytes[3]);
+        };
+    }
+
+    private static boolean isUserList(List<?> list) {
+        if (list == null) {
+            return false;
+        }
+        for (Object element : list) {
+            if (!(element instanceof User)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeUsers(Output out, List<?> users) {
+        out.writeVarLong(users.size());
+        for (Object user : users) {
+            writeUser(out, (User) user);
+        }
+    }
+
+    private static List<User> readUsers(Input in) {
+        int size = (int) in.readVarLong();
+        List<User> users = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            users.add(readUser(in));
+        }
+        return users;
+    }
+
+    private static void writeUser(Output out, User user) {
+        String[] strings = {user.getFirstName(), user.getLastName(), user.getMaidenName(), user.getGender(),
+                user.getEmail(), user.getPhone(), user.getUsername(), user.getPassword()};
+
+        int presence = 0;
+        if (user.getId() != null) {
+            presence |= 1;
+        }
+        for (int i = 0; i < strings.length; i++) {
+            if (strings[i] != null) {
+                presence |= 1 << (i + 1);
+            }
+        }
+        if (user.getBirthDate() != null) {
+            presence |= 1 << 9;
+        }
+        if (user.getVersion() != null) {
+            presence |= 1 << 10;
+        }
+
+        out.writeVarLong(presence);
+        if (user.getId() != null) {
+            out.writeVarLong(zigZag(user.getId()));
+        }
+        for (String value : strings) {
+            if (value != null) {
+                out.writeString(value);
+            }
+        }
+        if (user.getBirthDate() != null) {
+            out.writeVarLong(zigZag(user.getBirthDate().toEpochDay()));
+        }
+        if (user.getVersion() != null) {
+            out.writeVarLong(zigZag(user.getVersion()));
+        }
+    }
+
+    private static User readUser(Input in) {
+        int presence = (int) in.readVarLong();
+        User user = new User();
+        if ((presence & 1) != 0) {
+            user.setId(unZigZag(in.readVarLong()));
+        }
+        String[] strings = new String[8];
+        for (int i = 0; i < strings.length; i++) {
+            if ((presence & (1 << (i + 1))) != 0) {
+                strings[i] = in.readString();
+            }
+        }
+        user.setFirstName(strings[0]);
+        user.setLastName(strings[1]);
+        user.setMaidenName(strings[2]);
+        user.setGender(strings[3]);
+        user.setEmail(strings[4]);
+        user.setPhone(strings[5]);
+        user.setUsername(strings[6]);
+        user.setPassword(strings[7]);
+        if ((presence & (1 << 9)) != 0) {
+            user.setBirthDate(LocalDate.ofEpochDay(unZigZag(in.readVarLong())));
+        }
+        if ((presence & (1 << 10)) != 0) {
+            user.setVersion(unZigZag(in.readVarLong()));
+        }
+        return user;
+    }
+
+    private static void writeNullableLong(Output out, Long value) {
+        out.writeVarLong(value == null ? 0 : 1);
+        if (value != null) {
+            out.writeVarLong(zigZag(value));
+        }
+    }
+
+    private static Long readNullableLong(Input in) {
+        return in.readVarLong() == 0 ? null : unZigZag(in.readVarLong());
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static byte[] compress(byte[] payload) {
+        Output out = new Output();
+        out.writeVarLong(payload.length);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(payload);
+            deflater.finish();
+            byte[] buffer = new byte[Math.max(64, payload.length / 2)];
+            while (!deflater.finished()) {
+                int written = deflater.deflate(buffer);
+                out.writeBytes(buffer, written);
+            }
+        } finally {
+            deflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] decompress(Input in) {
+        byte[] result = new byte[(int) in.readVarLong()];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(in.buffer, in.position, in.buffer.length - in.position);
+            int read = inflater.inflate(result);
+            if (read != result.length) {
+                throw new SerializationException("Truncated compressed cache value");
+            }
+        } catch (DataFormatException e) {
+            throw new SerializationException("Corrupt compressed cache value", e);
+        } finally {
+            inflater.end();
+        }
+        return result;
+    }
+
+    private static final class Output {
+        private byte[] buffer = new byte[256];
+        private int size;
+
+        void writeVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            writeBytes(bytes, bytes.length);
+        }
+
+        void writeBytes(byte[] bytes, int length) {
+            ensureCapacity(length);
+            System.arraycopy(bytes, 0, buffer, size, length);
+            size += length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+
+        private void ensureCapacity(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            }
+        }
+    }
+
+    private static final class Input {
+        private final byte[] buffer;
+        private int position;
+
+        Input(byte[] buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        long readVarLong() {
+            long result = 0;
+            int shift = 0;
+            while (true) {
+                if (position >= buffer.length) {
+                    throw new SerializationException("Truncated cache value");
+                }
+                byte b = buffer[position++];
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+                shift += 7;
+            }
+        }
+
+        String readString() {
+            int length = (int) readVarLong();
+            if (position + length > buffer.length) {
+                throw new SerializationException("Truncated cache value");
+            }
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
@@ -1,16 +1,50 @@
 package com.example.spring_boot_mongodb_redis.config;
 
+import com.example.spring_boot_mongodb_redis.cache.AsyncCacheWriter;
+import com.example.spring_boot_mongodb_redis.cache.RedisCircuitBreaker;
+import com.example.spring_boot_mongodb_redis.model.User;
+import com.example.spring_boot_mongodb_redis.service.UserProjection;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.client.RestTemplate;
 
 @Configuration
-@EnableConfigurationProperties(AppProperties.class)
+@EnableScheduling
+@EnableConfigurationProperties({AppProperties.class, CacheProperties.class})
 public class AppConfig {
 
     @Bean
     public RestTemplate restTemplate() {
         return new RestTemplate();
     }
+
+    // Responses, stored JSON renderings and the export all use this mapper; the cache serializers do not
+    @Bean
+    public Jackson2ObjectMapperBuilderCustomizer userRepresentation() {
+        return builder -> builder.mixIn(User.class, UserProjection.Representation.class);
+    }
+
+    // Not part of RedisConfig: the list view and JSON cache use Redis even with cache.enabled=false,
+    // and there the breaker is disabled and never opens
+    @Bean(destroyMethod = "shutdown")
+    public RedisCircuitBreaker redisCircuitBreaker(StringRedisTemplate stringRedisTemplate, CacheProperties cacheProperties,
+                                                   MeterRegistry meterRegistry, BackgroundThreads backgroundThreads) {
+        return new RedisCircuitBreaker(stringRedisTemplate, cacheProperties, meterRegistry,
+                backgroundThreads.named("redis-breaker-probe"));
+    }
+
+    // Needs the breaker to handle its failures, and is shared by the caches and the batch operations so
+    // that all writes to one key go through one lane
+    @Bean(destroyMethod = "shutdown")
+    public AsyncCacheWriter asyncCacheWriter(RedisCircuitBreaker redisCircuitBreaker, CacheProperties cacheProperties,
+                                             MeterRegistry meterRegistry, BackgroundThreads backgroundThreads) {
+        CacheProperties.AsyncWrites settings = cacheProperties.getAsyncWrites();
+        return new AsyncCacheWriter(redisCircuitBreaker.isEnabled() && settings.isEnabled(), settings.getLanes(),
+                settings.getQueueCapacity(), redisCircuitBreaker, backgroundThreads.numbered("cache-writer"), meterRegistry);
+    }
 }
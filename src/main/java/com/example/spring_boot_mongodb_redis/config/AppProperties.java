@@ -1,11 +1,98 @@
 package com.example.spring_boot_mongodb_redis.config;
 
+import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+
 @Data
 @ConfigurationProperties(prefix = "app")
 public class AppProperties {
     private String apiUrl;
     private String userDataFile;
+    private Sequence sequence = new Sequence();
+    private IdFilter idFilter = new IdFilter();
+    private Import importer = new Import();
+    private WarmUp warmUp = new WarmUp();
+    private Tracing tracing = new Tracing();
+    private Limits limits = new Limits();
+    private PinningMonitor pinningMonitor = new PinningMonitor();
+
+    @Data
+    public static class Sequence {
+        private long initialValue = 100;
+        private int blockSize = 1000;
+        private int prefetchThreshold = 200;
+    }
+
+    @Data
+    public static class IdFilter {
+        private boolean enabled = false;
+        private double falsePositiveRate = 0.01;
+        private long minimumCapacity = 100_000;
+        private int scanBatchSize = 5_000;
+        private Duration rebuildInterval = Duration.ofMinutes(15);
+    }
+
+    @Data
+    public static class Import {
+        private int batchSize = 1_000;
+        private int writers = 4;
+        // Batches parsed ahead of the writers; the parser waits when they are all in flight
+        private int maxPendingBatches = 8;
+        private boolean memoryMapped = false;
+        private Duration checkpointInterval = Duration.ofSeconds(2);
+        private Duration progressInterval = Duration.ofSeconds(5);
+    }
+
+    @Data
+    public static class WarmUp {
+        private boolean enabled = true;
+        // One user lookup in this many is counted
+        private int sampleRate = 8;
+        private int maximumTracked = 100_000;
+        private int topKeys = 10_000;
+        private Duration persistInterval = Duration.ofMinutes(5);
+        private int batchSize = 500;
+    }
+
+    @Data
+    public static class Tracing {
+        private boolean enabled = true;
+        // Fraction of requests traced end to end
+        private double sampleRate = 0.01;
+        // Calls at least this slow are always logged
+        private Duration slowThreshold = Duration.ofMillis(200);
+        private int maxArgumentLength = 200;
+        private Set<String> redactedParameters = new HashSet<>(Set.of("password", "secret", "token"));
+    }
+
+    @Data
+    public static class Limits {
+        // Off by default; the virtual profile turns it on, where nothing else bounds the calls in flight
+        private boolean enabled = false;
+        private Limit mongo = new Limit(64, Duration.ofSeconds(2));
+        private Limit redis = new Limit(256, Duration.ofMillis(500));
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Limit {
+        private int maxConcurrent;
+        // Callers waiting longer than this for a slot are rejected with 503
+        private Duration acquireTimeout;
+    }
+
+    @Data
+    public static class PinningMonitor {
+        private boolean enabled = true;
+        // Pinned sections shorter than this are not reported
+        private Duration threshold = Duration.ofMillis(20);
+        private int stackDepth = 8;
+    }
 }
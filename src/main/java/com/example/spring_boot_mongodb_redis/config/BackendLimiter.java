@@ -0,0 +1,82 @@
+package com.example.spring_boot_mongodb_redis.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds the number of calls in flight to one backend. Callers over the limit wait in arrival
+ * order for up to the acquire timeout and are then rejected with 503, so a burst of virtual
+ * threads queues here, where it is measured, instead of inside the driver. A thread that
+ * already holds a permit passes straight through, since driver calls nest (a repository call
+ * goes through MongoOperations, a pipeline through one connection).
+ */
+public class BackendLimiter {
+
+    private final String name;
+    private final int maxConcurrent;
+    private final long timeoutNanos;
+    private final Semaphore permits;
+    private final ThreadLocal<int[]> depth = ThreadLocal.withInitial(() -> new int[1]);
+    private final Timer waitTimer;
+    private final Counter rejected;
+
+    public BackendLimiter(String name, AppProperties.Limit limit, MeterRegistry registry) {
+        this.name = name;
+        this.maxConcurrent = limit.getMaxConcurrent();
+        this.timeoutNanos = limit.getAcquireTimeout().toNanos();
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.waitTimer = Timer.builder("app.backend.limiter.wait")
+                .description("Time spent waiting for a backend call slot")
+                .tag("backend", name)
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .register(registry);
+        this.rejected = Counter.builder("app.backend.limiter.rejected")
+                .description("Calls rejected after waiting the full acquire timeout")
+                .tag("backend", name)
+                .register(registry);
+        Gauge.builder("app.backend.limiter.active", permits, p -> maxConcurrent - p.availablePermits())
+                .tag("backend", name).register(registry);
+        Gauge.builder("app.backend.limiter.queued", permits, Semaphore::getQueueLength)
+                .tag("backend", name).register(registry);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void acquire() {
+        int[] held = depth.get();
+        if (held[0]++ > 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (!acquired) {
+            held[0]--;
+            rejected.increment();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Too many concurrent " + name + " calls, try again later");
+        }
+    }
+
+    public void release() {
+        int[] held = depth.get();
+        if (held[0] > 0 && --held[0] == 0) {
+            permits.release();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.spring_boot_mongodb_redis.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Threads for the application's own background executors (data initialization, the import
+ * writers, cache refresh and sequence prefetch). When spring.threads.virtual.enabled is set
+ * they are virtual threads, like the request handlers; otherwise daemon platform threads. Each
+ * executor keeps its own bound either way.
+ */
+@Component
+public class BackgroundThreads {
+
+    private final boolean virtual;
+
+    public BackgroundThreads(@Value("${spring.threads.virtual.enabled:false}") boolean virtual) {
+        this.virtual = virtual;
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    // Every thread gets the same name, for single-threaded executors
+    public ThreadFactory named(String name) {
+        return builder().name(name).factory();
+    }
+
+    // name-1, name-2, ...
+    public ThreadFactory numbered(String prefix) {
+        return builder().name(prefix + "-", 1).factory();
+    }
+
+    private Thread.Builder builder() {
+        return virtual ? Thread.ofVirtual() : Thread.ofPlatform().daemon();
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.spring_boot_mongodb_redis.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@Data
+@ConfigurationProperties(prefix = "cache")
+public class CacheProperties {
+    private boolean enabled = true;
+    private Near near = new Near();
+    private Serializer serializer = new Serializer();
+    private SingleFlight singleFlight = new SingleFlight();
+    private Expiry expiry = new Expiry();
+    private RefreshAhead refreshAhead = new RefreshAhead();
+    private ListView listView = new ListView();
+    private Redis redis = new Redis();
+    private WriteBehind writeBehind = new WriteBehind();
+    private ChangeStream changeStream = new ChangeStream();
+    private JsonPassthrough jsonPassthrough = new JsonPassthrough();
+    private Breaker breaker = new Breaker();
+    private AsyncWrites asyncWrites = new AsyncWrites();
+
+    @Data
+    public static class Near {
+        private boolean enabled = true;
+        private Set<String> caches = new HashSet<>(Set.of("users"));
+        private long maximumSize = 10_000;
+        private Duration ttl = Duration.ofSeconds(30);
+        private String channel = "cache:invalidation";
+    }
+
+    @Data
+    public static class Serializer {
+        private Mode mode = Mode.JSON;
+        private int compressionThreshold = 512;
+
+        public enum Mode {
+            JSON, BINARY
+        }
+    }
+
+    @Data
+    public static class SingleFlight {
+        private boolean enabled = true;
+        private Set<String> caches = new HashSet<>(Set.of("users"));
+        private Duration lockTtl = Duration.ofSeconds(5);
+        private Duration waitTimeout = Duration.ofSeconds(2);
+        private Duration pollInterval = Duration.ofMillis(20);
+    }
+
+    @Data
+    public static class Expiry {
+        private Duration ttl = Duration.ofSeconds(60);
+        // Each entry's TTL is randomized by up to this fraction either way
+        private double jitter = 0.1;
+        private Map<String, CacheExpiry> caches = new HashMap<>();
+
+        public Duration ttlFor(String cacheName) {
+            CacheExpiry expiry = caches.get(cacheName);
+            return expiry != null && expiry.getTtl() != null ? expiry.getTtl() : ttl;
+        }
+
+        public double jitterFor(String cacheName) {
+            CacheExpiry expiry = caches.get(cacheName);
+            return expiry != null && expiry.getJitter() != null ? expiry.getJitter() : jitter;
+        }
+    }
+
+    @Data
+    public static class CacheExpiry {
+        private Duration ttl;
+        private Double jitter;
+    }
+
+    @Data
+    public static class RefreshAhead {
+        private boolean enabled = true;
+        private Set<String> caches = new HashSet<>(Set.of("users"));
+        // XFetch beta: above 1 refreshes earlier, below 1 later
+        private double beta = 1.0;
+        private long maximumTracked = 10_000;
+        private int threads = 2;
+        private int queueCapacity = 1_000;
+    }
+
+    @Data
+    public static class ListView {
+        private boolean enabled = true;
+        // Users per script call while building the view from Mongo
+        private int batchSize = 1_000;
+        private Duration lockTtl = Duration.ofMinutes(1);
+        private Duration checkInterval = Duration.ofSeconds(30);
+    }
+
+    // Single-user writes go to Redis and a stream first, and reach Mongo in coalesced batches
+    @Data
+    public static class WriteBehind {
+        private boolean enabled = false;
+        // Stream entries per Mongo bulk write
+        private int batchSize = 500;
+        private Duration flushInterval = Duration.ofMillis(100);
+        // Entries delivered to a consumer but not acknowledged for this long are taken over (crashed node, failed flush)
+        private Duration claimIdle = Duration.ofSeconds(30);
+        // How long a flushed user still answers reads from the pending copy, covering cache puts still in flight
+        private Duration retainFlushed = Duration.ofMinutes(1);
+    }
+
+    // Invalidation from a Mongo change stream on the user collection; needs a replica set
+    @Data
+    public static class ChangeStream {
+        private boolean enabled = false;
+        // Events applied to Redis together
+        private int batchSize = 500;
+        private Duration maxAwaitTime = Duration.ofSeconds(1);
+        // How often the resume token is saved; a restart replays at most this much
+        private Duration checkpointInterval = Duration.ofSeconds(1);
+        private Duration retryDelay = Duration.ofSeconds(5);
+    }
+
+    @Data
+    public static class JsonPassthrough {
+        private boolean enabled = true;
+        private Duration ttl = Duration.ofMinutes(10);
+        // Rendered bodies at least this large are stored gzipped
+        private int gzipThreshold = 1_024;
+    }
+
+    @Data
+    public static class Breaker {
+        private boolean enabled = true;
+        // Consecutive Redis timeouts or connection failures that open the breaker
+        private int failureThreshold = 5;
+        private Duration probeInterval = Duration.ofSeconds(1);
+        // Consecutive successful probes that close it again
+        private int successThreshold = 2;
+        // Beyond this many dropped writes, the affected cache is cleared on recovery instead
+        private int maxDirtyKeys = 100_000;
+    }
+
+    // Redis cache writes leave the request thread; only with the breaker, which handles their failures
+    @Data
+    public static class AsyncWrites {
+        private boolean enabled = true;
+        // Single-threaded queues; writes to one key always share one
+        private int lanes = 4;
+        // Per lane; a write that finds its lane full is dropped and its key evicted
+        private int queueCapacity = 10_000;
+    }
+
+    // Connection settings; host, port and password still come from spring.data.redis in standalone mode
+    @Data
+    public static class Redis {
+        private Mode mode = Mode.STANDALONE;
+        // host:port of the master and its replicas (replica), the sentinels (sentinel) or seed nodes (cluster)
+        private List<String> nodes = new ArrayList<>();
+        private String sentinelMaster = "mymaster";
+        private String sentinelPassword;
+        // Where cache GETs are served from, as a Lettuce ReadFrom name (replica_preferred, nearest, ...);
+        // unset reads from the master. Other reads and all writes always go to the master.
+        private String readFrom;
+        private Duration commandTimeout = Duration.ofMillis(500);
+        // Overrides by command name, e.g. MGET: 500ms
+        private Map<String, Duration> commandTimeouts = new HashMap<>();
+        private Duration shutdownTimeout = Duration.ofMillis(100);
+        private PipelineFlush pipelineFlush = PipelineFlush.EACH_COMMAND;
+        // Commands buffered before a flush when pipelineFlush is BUFFERED
+        private int pipelineBufferSize = 100;
+        private int clusterMaxRedirects = 3;
+        private Duration clusterRefreshPeriod = Duration.ofSeconds(30);
+        private Pool pool = new Pool();
+
+        public enum Mode {
+            STANDALONE, REPLICA, SENTINEL, CLUSTER
+        }
+
+        public enum PipelineFlush {
+            EACH_COMMAND, BUFFERED, ON_CLOSE
+        }
+    }
+
+    // Dedicated connections instead of one shared, multiplexed connection
+    @Data
+    public static class Pool {
+        private boolean enabled = false;
+        private int maxActive = 16;
+        private int maxIdle = 8;
+        private int minIdle = 0;
+        private Duration maxWait = Duration.ofSeconds(1);
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.spring_boot_mongodb_redis.config;
+
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.ReadFrom;
+import io.lettuce.core.TimeoutOptions;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
+import io.lettuce.core.protocol.RedisCommand;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
+import org.springframework.data.redis.connection.RedisConfiguration;
+import org.springframework.data.redis.connection.RedisNode;
+import org.springframework.data.redis.connection.RedisPassword;
+import org.springframework.data.redis.connection.RedisSentinelConfiguration;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.RedisStaticMasterReplicaConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds Lettuce connection factories for the topology in cache.redis: one standalone node, a
+ * static master with replicas, a Sentinel-managed master, or a cluster. All of them share the
+ * client options: per-command timeouts, commands rejected while disconnected instead of queued
+ * behind a reconnect, the pipelining flush policy and, optionally, a pool of dedicated
+ * connections instead of the single shared one.
+ */
+final class LettuceConnectionFactories {
+
+    private LettuceConnectionFactories() {
+    }
+
+    static LettuceConnectionFactory create(CacheProperties.Redis settings, String host, int port, String password,
+                                           ReadFrom readFrom) {
+        CacheProperties.Pool pool = settings.getPool();
+        LettuceClientConfiguration.LettuceClientConfigurationBuilder client = pool.isEnabled()
+                ? LettucePoolingClientConfiguration.builder().poolConfig(poolConfig(pool))
+                : LettuceClientConfiguration.builder();
+        client.commandTimeout(settings.getCommandTimeout())
+                .shutdownTimeout(settings.getShutdownTimeout())
+                .clientOptions(clientOptions(settings));
+        if (readFrom != null) {
+            client.readFrom(readFrom);
+        }
+
+        LettuceConnectionFactory factory = new LettuceConnectionFactory(configuration(settings, host, port, password), client.build());
+        // With a pool, each operation borrows its own connection rather than multiplexing over one
+        factory.setShareNativeConnection(!pool.isEnabled());
+        factory.setPipeliningFlushPolicy(switch (settings.getPipelineFlush()) {
+            case EACH_COMMAND -> LettuceConnection.PipeliningFlushPolicy.flushEachCommand();
+            case BUFFERED -> LettuceConnection.PipeliningFlushPolicy.buffered(settings.getPipelineBufferSize());
+            case ON_CLOSE -> LettuceConnection.PipeliningFlushPolicy.flushOnClose();
+        });
+        return factory;
+    }
+
+    // Null for "unset"; rejects names Lettuce does not know at startup rather than on the first read
+    static ReadFrom readFrom(CacheProperties.Redis settings) {
+        String name = settings.getReadFrom();
+        if (name == null || name.isBlank()) {
+            return null;
+        }
+        if (settings.getMode() == CacheProperties.Redis.Mode.STANDALONE) {
+            throw new IllegalStateException("cache.redis.read-from needs a replica, sentinel or cluster topology");
+        }
+        // replica_preferred and replica-preferred read as Lettuce's replicaPreferred; subnet: and regex: pass through
+        return ReadFrom.valueOf(name.contains(":") ? name : name.replace("_", "").replace("-", ""));
+    }
+
+    private static RedisConfiguration configuration(CacheProperties.Redis settings, String host, int port, String password) {
+        RedisPassword redisPassword = RedisPassword.of(password);
+        List<String> nodes = settings.getNodes();
+        switch (settings.getMode()) {
+            case REPLICA -> {
+                RedisNode master = RedisNode.fromString(nodes(nodes).get(0));
+                RedisStaticMasterReplicaConfiguration config = new RedisStaticMasterReplicaConfiguration(master.getHost(), master.getPort());
+                nodes.stream().skip(1).map(RedisNode::fromString).forEach(node -> config.addNode(node.getHost(), node.getPort()));
+                config.setPassword(redisPassword);
+                return config;
+            }
+            case SENTINEL -> {
+                RedisSentinelConfiguration config = new RedisSentinelConfiguration();
+                config.master(settings.getSentinelMaster());
+                nodes(nodes).forEach(node -> config.sentinel(RedisNode.fromString(node)));
+                config.setPassword(redisPassword);
+                if (settings.getSentinelPassword() != null) {
+                    config.setSentinelPassword(RedisPassword.of(settings.getSentinelPassword()));
+                }
+                return config;
+            }
+            case CLUSTER -> {
+                RedisClusterConfiguration config = new RedisClusterConfiguration(nodes(nodes));
+                config.setMaxRedirects(settings.getClusterMaxRedirects());
+                config.setPassword(redisPassword);
+                return config;
+            }
+            default -> {
+                RedisStandaloneConfiguration config = new RedisStandaloneConfiguration(host, port);
+                config.setPassword(redisPassword);
+                return config;
+            }
+        }
+    }
+
+    private static List<String> nodes(List<String> nodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalStateException("cache.redis.nodes is required for replica, sentinel and cluster topologies");
+        }
+        return nodes;
+    }
+
+    private static ClientOptions clientOptions(CacheProperties.Redis settings) {
+        TimeoutOptions timeouts = TimeoutOptions.builder()
+                .timeoutSource(new CommandTimeouts(settings.getCommandTimeout(), settings.getCommandTimeouts()))
+                .build();
+        if (settings.getMode() == CacheProperties.Redis.Mode.CLUSTER) {
+            return ClusterClientOptions.builder()
+                    .timeoutOptions(timeouts)
+                    .disconnectedBehavior(ClientOptions.DisconnectedBehavior.REJECT_COMMANDS)
+                    .maxRedirects(settings.getClusterMaxRedirects())
+                    // Follow failovers and resharding without waiting for MOVED errors to pile up
+                    .topologyRefreshOptions(ClusterTopologyRefreshOptions.builder()
+                            .enablePeriodicRefresh(settings.getClusterRefreshPeriod())
+                            .enableAllAdaptiveRefreshTriggers()
+                            .build())
+                    .build();
+        }
+        return ClientOptions.builder()
+                .timeoutOptions(timeouts)
+                .disconnectedBehavior(ClientOptions.DisconnectedBehavior.REJECT_COMMANDS)
+                .build();
+    }
+
+    private static GenericObjectPoolConfig<?> poolConfig(CacheProperties.Pool pool) {
+        GenericObjectPoolConfig<?> config = new GenericObjectPoolConfig<>();
+        config.setMaxTotal(pool.getMaxActive());
+        config.setMaxIdle(pool.getMaxIdle());
+        config.setMinIdle(pool.getMinIdle());
+        config.setMaxWait(pool.getMaxWait());
+        return config;
+    }
+
+    // Timeout per command type, falling back to the default command timeout
+    private static final class CommandTimeouts extends TimeoutOptions.TimeoutSource {
+
+        private final long defaultNanos;
+        private final Map<String, Long> nanosByCommand = new HashMap<>();
+
+        private CommandTimeouts(Duration defaultTimeout, Map<String, Duration> overrides) {
+            this.defaultNanos = defaultTimeout.toNanos();
+            overrides.forEach((command, timeout) -> nanosByCommand.put(command.toUpperCase(Locale.ROOT), timeout.toNanos()));
+        }
+
+        @Override
+        public long getTimeout(RedisCommand<?, ?, ?> command) {
+            return nanosByCommand.getOrDefault(command.getType().name(), defaultNanos);
+        }
+
+        @Override
+        public TimeUnit getTimeUnit() {
+            return TimeUnit.NANOSECONDS;
+        }
+    }
+}
@@ -1,25 +1,36 @@
 package com.example.spring_boot_mongodb_redis.config;
 
-import com.fasterxml.jackson.annotation.JsonTypeInfo;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.jsontype.BasicPolymorphicTypeValidator;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.example.spring_boot_mongodb_redis.cache.AsyncCacheWriter;
+import com.example.spring_boot_mongodb_redis.cache.CacheInvalidationBus;
+import com.example.spring_boot_mongodb_redis.cache.CacheInvalidationSubscription;
+import com.example.spring_boot_mongodb_redis.cache.CacheSerializers;
+import com.example.spring_boot_mongodb_redis.cache.JitteredTtlFunction;
+import com.example.spring_boot_mongodb_redis.cache.RedisCircuitBreaker;
+import com.example.spring_boot_mongodb_redis.cache.TieredCacheManager;
+import com.example.spring_boot_mongodb_redis.service.CacheMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.cache.BatchStrategies;
+import org.springframework.data.redis.cache.BatchStrategy;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.cache.RedisCacheWriter;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
-import org.springframework.data.redis.connection.RedisPassword;
-import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
-import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 
-import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
 
 @Configuration
 @EnableCaching
@@ -35,33 +46,78 @@ public class RedisConfig {
     @Value("${spring.data.redis.password}")
     private String redisPassword;
 
-    @Value("${spring.cache.redis.time-to-live}")
-    private long ttlSeconds;
-
+    // Topology, pooling and timeouts come from cache.redis; see LettuceConnectionFactories
     @Bean
-    public LettuceConnectionFactory customRedisConnectionFactory() {
-        RedisStandaloneConfiguration config = new RedisStandaloneConfiguration(redisHost, redisPort);
-        config.setPassword(RedisPassword.of(redisPassword));
-        return new LettuceConnectionFactory(config);
+    @Primary
+    public LettuceConnectionFactory customRedisConnectionFactory(CacheProperties cacheProperties) {
+        return LettuceConnectionFactories.create(cacheProperties.getRedis(), redisHost, redisPort, redisPassword, null);
     }
+
+    // Cache lookups tolerate replication lag, so only they read from replicas; locks, the list view
+    // and everything else keep using the primary factory. Writes through this factory still go to the master.
     @Bean
-    public CacheManager redisCacheManager(RedisConnectionFactory redisConnectionFactory) {
-        ObjectMapper objectMapper = new ObjectMapper();
-        objectMapper.registerModule(new JavaTimeModule());
-        objectMapper.activateDefaultTyping(
-                BasicPolymorphicTypeValidator.builder().allowIfBaseType(Object.class).build(),
-                ObjectMapper.DefaultTyping.NON_FINAL,
-                JsonTypeInfo.As.PROPERTY
-        );
+    @ConditionalOnProperty(name = "cache.redis.read-from")
+    public LettuceConnectionFactory cacheReadConnectionFactory(CacheProperties cacheProperties) {
+        CacheProperties.Redis redis = cacheProperties.getRedis();
+        return LettuceConnectionFactories.create(redis, redisHost, redisPort, redisPassword,
+                LettuceConnectionFactories.readFrom(redis));
+    }
 
-        GenericJackson2JsonRedisSerializer serializer = new GenericJackson2JsonRedisSerializer(objectMapper);
+    @Bean
+    public CacheManager redisCacheManager(RedisConnectionFactory redisConnectionFactory,
+                                          @Qualifier("cacheReadConnectionFactory") ObjectProvider<RedisConnectionFactory> cacheReadConnectionFactory,
+                                          CacheProperties cacheProperties,
+                                          CacheInvalidationBus cacheInvalidationBus,
+                                          RedisCircuitBreaker redisCircuitBreaker,
+                                          AsyncCacheWriter asyncCacheWriter,
+                                          CacheMetrics cacheMetrics,
+                                          StringRedisTemplate stringRedisTemplate,
+                                          BackgroundThreads backgroundThreads) {
+        CacheProperties.Expiry expiry = cacheProperties.getExpiry();
         RedisCacheConfiguration config = RedisCacheConfiguration.defaultCacheConfig()
-                .entryTtl(Duration.ofSeconds(ttlSeconds))
-                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(serializer));
+                .entryTtl(new JitteredTtlFunction(expiry.getTtl(), expiry.getJitter()))
+                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(
+                        CacheSerializers.create(cacheProperties.getSerializer())));
+
+        Map<String, RedisCacheConfiguration> cacheConfigurations = new HashMap<>();
+        expiry.getCaches().keySet().forEach(cacheName -> cacheConfigurations.put(cacheName,
+                config.entryTtl(new JitteredTtlFunction(expiry.ttlFor(cacheName), expiry.jitterFor(cacheName)))));
 
-        return RedisCacheManager
-                .builder(redisConnectionFactory)
+        // SCAN instead of KEYS when clearing a cache, so a large clear never blocks Redis. A cluster
+        // connection cannot SCAN across nodes, so there each master runs KEYS for its own slots.
+        BatchStrategy clearStrategy = cacheProperties.getRedis().getMode() == CacheProperties.Redis.Mode.CLUSTER
+                ? BatchStrategies.keys()
+                : BatchStrategies.scan(1000);
+        RedisCacheManager redisCacheManager = RedisCacheManager
+                .builder(RedisCacheWriter.nonLockingRedisCacheWriter(
+                        cacheReadConnectionFactory.getIfAvailable(() -> redisConnectionFactory), clearStrategy))
                 .cacheDefaults(config)
+                .withInitialCacheConfigurations(cacheConfigurations)
                 .build();
+        redisCacheManager.afterPropertiesSet();
+
+        return new TieredCacheManager(redisCacheManager, cacheProperties, cacheInvalidationBus, redisCircuitBreaker,
+                asyncCacheWriter, cacheMetrics, stringRedisTemplate, backgroundThreads.numbered("cache-refresh"));
+    }
+
+    @Bean
+    public CacheInvalidationBus cacheInvalidationBus(StringRedisTemplate stringRedisTemplate, CacheProperties cacheProperties,
+                                                     RedisCircuitBreaker redisCircuitBreaker, AsyncCacheWriter asyncCacheWriter) {
+        return new CacheInvalidationBus(stringRedisTemplate, cacheProperties.getNear().getChannel(), redisCircuitBreaker,
+                asyncCacheWriter);
+    }
+
+    // The listener container is not a bean: the context would start it and fail startup while Redis is unreachable
+    @Bean
+    public CacheInvalidationSubscription cacheInvalidationSubscription(RedisConnectionFactory redisConnectionFactory,
+                                                                       CacheInvalidationBus cacheInvalidationBus,
+                                                                       CacheProperties cacheProperties,
+                                                                       BackgroundThreads backgroundThreads) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.addMessageListener(cacheInvalidationBus, new ChannelTopic(cacheInvalidationBus.getChannel()));
+        container.afterPropertiesSet();
+        return new CacheInvalidationSubscription(container, cacheProperties.getBreaker().getProbeInterval(),
+                backgroundThreads.named("cache-invalidation-subscriber"));
     }
 }
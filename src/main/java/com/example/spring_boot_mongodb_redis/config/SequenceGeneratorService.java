@@ -1,6 +1,7 @@
 package com.example.spring_boot_mongodb_redis.config;
 
 import com.example.spring_boot_mongodb_redis.model.DatabaseSequence;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DuplicateKeyException;
@@ -11,37 +12,158 @@ import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hi/lo sequence allocator. Each node reserves a block of ids with a single atomic
+ * {@code $inc} on {@code database_sequences} and hands them out from memory; the next
+ * block is reserved in the background once the current one runs low. Ids left in a
+ * block when the node stops are never reused, so sequences may have gaps.
+ * <p>
+ * Known sequences are seeded at startup through {@link #seed}; one that is missing when a
+ * block is reserved is seeded then. Allocators never touch Mongo while being created, since
+ * that happens inside a {@link ConcurrentHashMap} bin lock.
+ */
 @Slf4j
 @Service
 public class SequenceGeneratorService {
 
     private final MongoOperations mongoOperations;
+    private final AppProperties.Sequence settings;
+    private final Map<String, Allocator> allocators = new ConcurrentHashMap<>();
+    private final ExecutorService prefetchExecutor;
 
     @Autowired
-    public SequenceGeneratorService(MongoOperations mongoOperations) {
+    public SequenceGeneratorService(MongoOperations mongoOperations, AppProperties appProperties,
+                                    BackgroundThreads backgroundThreads) {
         this.mongoOperations = mongoOperations;
+        this.settings = appProperties.getSequence();
+        this.prefetchExecutor = Executors.newSingleThreadExecutor(backgroundThreads.named("sequence-prefetch"));
     }
 
     public long generateSequence(String seqName) {
+        return allocators.computeIfAbsent(seqName, Allocator::new).next();
+    }
+
+    // Reserves a contiguous range of ids for a batch in one round trip and returns the first one
+    public long generateSequenceRange(String seqName, int count) {
+        return reserve(seqName, count).first;
+    }
+
+    // Creates the counter at the initial value unless it already exists
+    public void seed(String seqName) {
         try {
-            mongoOperations.insert(new DatabaseSequence(seqName, 100L));
-            log.debug("Initialized sequence '{}' to 100", seqName);
+            mongoOperations.insert(new DatabaseSequence(seqName, settings.getInitialValue()));
+            log.debug("Initialized sequence '{}' to {}", seqName, settings.getInitialValue());
         } catch (DuplicateKeyException ignored) {
             log.debug("Sequence '{}' already initialized, skipping seed", seqName);
         }
+    }
 
-        DatabaseSequence counter = mongoOperations.findAndModify(
-                Query.query(Criteria.where("_id").is(seqName)),
-                new Update().inc("seq", 1),
-                FindAndModifyOptions.options().returnNew(true),
-                DatabaseSequence.class
-        );
+    @PreDestroy
+    public void shutdown() {
+        prefetchExecutor.shutdownNow();
+    }
+
+    private Block reserve(String seqName, int size) {
+        Query query = Query.query(Criteria.where("_id").is(seqName));
+        Update update = new Update().inc("seq", size);
+        FindAndModifyOptions options = FindAndModifyOptions.options().returnNew(true);
 
+        DatabaseSequence counter = mongoOperations.findAndModify(query, update, options, DatabaseSequence.class);
         if (counter == null) {
-            log.warn("Counter for '{}' was null after upsert+inc; inserting fallback value 101", seqName);
-            mongoOperations.insert(new DatabaseSequence(seqName, 101L));
-            return 101L;
+            log.info("Sequence '{}' not found; seeding it", seqName);
+            seed(seqName);
+            counter = mongoOperations.findAndModify(query, update, options, DatabaseSequence.class);
+            if (counter == null) {
+                throw new IllegalStateException("Unable to reserve ids for sequence '" + seqName + "'");
+            }
+        }
+        log.debug("Reserved ids {}..{} for sequence '{}'", counter.getSeq() - size + 1, counter.getSeq(), seqName);
+        return new Block(counter.getSeq() - size + 1, counter.getSeq());
+    }
+
+    private static final class Block {
+        private static final Block EXHAUSTED = new Block(1, 0);
+
+        private final long first;
+        private final AtomicLong cursor;
+        private final long last;
+
+        private Block(long first, long last) {
+            this.first = first;
+            this.cursor = new AtomicLong(first);
+            this.last = last;
+        }
+    }
+
+    private final class Allocator {
+        private final String seqName;
+        private final int prefetchAt;
+        private final AtomicReference<Block> current = new AtomicReference<>(Block.EXHAUSTED);
+        private final AtomicReference<CompletableFuture<Block>> pending = new AtomicReference<>();
+        // Not a monitor: the holder waits on Mongo, which would pin a virtual thread to its carrier
+        private final ReentrantLock advanceLock = new ReentrantLock();
+
+        private Allocator(String seqName) {
+            this.seqName = seqName;
+            this.prefetchAt = Math.min(Math.max(settings.getPrefetchThreshold(), 0), settings.getBlockSize() - 1);
+        }
+
+        long next() {
+            while (true) {
+                Block block = current.get();
+                long id = block.cursor.getAndIncrement();
+                if (id <= block.last) {
+                    if (block.last - id == prefetchAt) {
+                        prefetch();
+                    }
+                    return id;
+                }
+                advance(block);
+            }
+        }
+
+        private void prefetch() {
+            CompletableFuture<Block> future = new CompletableFuture<>();
+            if (pending.compareAndSet(null, future)) {
+                prefetchExecutor.execute(() -> {
+                    try {
+                        future.complete(reserve(seqName, settings.getBlockSize()));
+                    } catch (Exception e) {
+                        future.completeExceptionally(e);
+                    }
+                });
+            }
+        }
+
+        private void advance(Block exhausted) {
+            advanceLock.lock();
+            try {
+                if (current.get() != exhausted) {
+                    return;
+                }
+                Block next = null;
+                CompletableFuture<Block> future = pending.getAndSet(null);
+                if (future != null) {
+                    try {
+                        next = future.join();
+                    } catch (CompletionException e) {
+                        log.warn("Prefetch of sequence '{}' failed, reserving synchronously: {}", seqName, e.getCause().getMessage());
+                    }
+                }
+                current.set(next != null ? next : reserve(seqName, settings.getBlockSize()));
+            } finally {
+                advanceLock.unlock();
+            }
         }
-        return counter.getSeq();
     }
 }
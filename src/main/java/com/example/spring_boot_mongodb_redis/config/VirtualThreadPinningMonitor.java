@@ -0,0 +1,92 @@
+package com.example.spring_boot_mongodb_redis.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Reports virtual threads that block while pinned to their carrier, typically inside a
+ * synchronized block of a driver or library. Pinned sections above the threshold are counted
+ * and timed; the first occurrence from each call site is logged with its stack, later ones
+ * only at debug. Reads the jdk.VirtualThreadPinned JFR event from an in-process stream.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadPinningMonitor {
+
+    private static final String EVENT = "jdk.VirtualThreadPinned";
+    private static final Pattern JDK_PACKAGES = Pattern.compile("(java|javax|jdk|sun)\\.");
+
+    private final AppProperties.PinningMonitor settings;
+    private final Timer pinned;
+    private final Set<String> reportedSites = ConcurrentHashMap.newKeySet();
+    private final RecordingStream stream;
+
+    public VirtualThreadPinningMonitor(AppProperties appProperties, MeterRegistry meterRegistry) {
+        this.settings = appProperties.getPinningMonitor();
+        this.pinned = Timer.builder("app.virtual-threads.pinned")
+                .description("Virtual threads that blocked while pinned to a carrier thread")
+                .register(meterRegistry);
+        if (!settings.isEnabled()) {
+            this.stream = null;
+            return;
+        }
+        this.stream = new RecordingStream();
+        stream.enable(EVENT).withThreshold(settings.getThreshold()).withStackTrace();
+        stream.onEvent(EVENT, this::onPinned);
+        stream.startAsync();
+        log.info("Reporting virtual threads pinned for at least {} ms", settings.getThreshold().toMillis());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (stream != null) {
+            stream.close();
+        }
+    }
+
+    private void onPinned(RecordedEvent event) {
+        pinned.record(event.getDuration());
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        if (stackTrace == null || stackTrace.getFrames().isEmpty()) {
+            return;
+        }
+        String stack = stackTrace.getFrames().stream()
+                .limit(settings.getStackDepth())
+                .map(VirtualThreadPinningMonitor::describe)
+                .collect(Collectors.joining("\n\tat ", "\tat ", ""));
+        String site = site(stackTrace);
+        if (reportedSites.add(site)) {
+            log.warn("Virtual thread pinned for {} ms in {} (further occurrences at debug):\n{}",
+                    event.getDuration().toMillis(), site, stack);
+        } else {
+            log.debug("Virtual thread pinned for {} ms at {}", event.getDuration().toMillis(), site);
+        }
+    }
+
+    // The top frames are always the JDK parking the thread; the site is the first frame outside the JDK
+    private static String site(RecordedStackTrace stackTrace) {
+        return stackTrace.getFrames().stream()
+                .filter(frame -> !JDK_PACKAGES.matcher(frame.getMethod().getType().getName()).lookingAt())
+                .findFirst()
+                .map(VirtualThreadPinningMonitor::describe)
+                .orElseGet(() -> describe(stackTrace.getFrames().get(0)));
+    }
+
+    private static String describe(RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+    }
+}
@@ -1,6 +1,9 @@
 package com.example.spring_boot_mongodb_redis.controller;
 
+import com.example.spring_boot_mongodb_redis.cache.RedisCircuitBreaker;
 import com.example.spring_boot_mongodb_redis.service.CacheMetrics;
+import com.example.spring_boot_mongodb_redis.service.UserListView;
+import com.example.spring_boot_mongodb_redis.service.UserWriteBehind;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.CacheManager;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -18,13 +21,20 @@ public class CacheController {
 
     private final CacheMetrics cacheMetrics;
     private final CacheManager cacheManager;
+    private final UserListView userListView;
+    private final UserWriteBehind userWriteBehind;
+    private final RedisCircuitBreaker redisCircuitBreaker;
 
     @Value("${cache.enabled:true}")
     private boolean cacheEnabled;
 
-    public CacheController(CacheMetrics cacheMetrics, CacheManager cacheManager) {
+    public CacheController(CacheMetrics cacheMetrics, CacheManager cacheManager, UserListView userListView,
+                           UserWriteBehind userWriteBehind, RedisCircuitBreaker redisCircuitBreaker) {
         this.cacheMetrics = cacheMetrics;
         this.cacheManager = cacheManager;
+        this.userListView = userListView;
+        this.userWriteBehind = userWriteBehind;
+        this.redisCircuitBreaker = redisCircuitBreaker;
     }
 
     @GetMapping("/metrics")
@@ -42,6 +52,25 @@ public class CacheController {
         status.put("cacheEnabled", cacheEnabled);
         status.put("cacheImplementation", cacheManager.getClass().getSimpleName());
         status.put("availableCaches", cacheManager.getCacheNames());
+        status.put("writeBehind", writeBehindStatus());
+        status.put("redisBreaker", redisCircuitBreaker.status());
+        return status;
+    }
+
+    // Blocks until the writes recorded so far are in the database
+    @PostMapping("/write-behind/flush")
+    public Map<String, Object> flushWriteBehind() {
+        long flushed = userWriteBehind.flush();
+        Map<String, Object> response = writeBehindStatus();
+        response.put("flushed", flushed);
+        return response;
+    }
+
+    private Map<String, Object> writeBehindStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("enabled", userWriteBehind.isEnabled());
+        status.put("backlog", userWriteBehind.getBacklog());
+        status.put("lagMillis", userWriteBehind.getLag().toMillis());
         return status;
     }
 
@@ -51,6 +80,7 @@ public class CacheController {
                 .requireNonNull(cacheManager
                         .getCache(cacheName))
                 .clear());
+        userListView.invalidate();
         cacheMetrics.resetMetrics();
 
         Map<String, String> response = new HashMap<>();
@@ -63,3 +93,4 @@ public class CacheController {
 //curl -X GET http://localhost:8080/api/cache/metrics | jq
 //curl -X GET http://localhost:8080/api/cache/status | jq
 //curl -X POST http://localhost:8080/api/cache/clear | jq
+//curl -X POST http://localhost:8080/api/cache/write-behind/flush | jq
@@ -1,32 +1,185 @@
 package com.example.spring_boot_mongodb_redis.controller;
 
+import com.example.spring_boot_mongodb_redis.model.BatchItemResult;
 import com.example.spring_boot_mongodb_redis.model.User;
+import com.example.spring_boot_mongodb_redis.model.UserLookupResult;
+import com.example.spring_boot_mongodb_redis.model.UserPage;
+import com.example.spring_boot_mongodb_redis.service.HotUserTracker;
+import com.example.spring_boot_mongodb_redis.service.UserJsonCache;
+import com.example.spring_boot_mongodb_redis.service.UserProjection;
 import com.example.spring_boot_mongodb_redis.service.UserService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.Locale;
+import java.util.SortedSet;
 
 @RestController
+@Profile("!reactive")
 @RequestMapping("/api/users")
 public class UserController {
 
     private final UserService service;
+    private final HotUserTracker hotUsers;
+    private final UserJsonCache jsonCache;
+    private final UserProjection userProjection;
+    private final ObjectWriter ndjsonWriter;
 
-    public UserController(UserService service) {
+    public UserController(UserService service, HotUserTracker hotUsers, UserJsonCache jsonCache,
+                          UserProjection userProjection, ObjectMapper objectMapper) {
         this.service = service;
+        this.hotUsers = hotUsers;
+        this.jsonCache = jsonCache;
+        this.userProjection = userProjection;
+        this.ndjsonWriter = objectMapper.writerFor(User.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .withRootValueSeparator((String) null);
     }
 
     @GetMapping
+    public ResponseEntity<?> listUsers(@RequestParam(required = false) Long after,
+                                       @RequestParam(defaultValue = "100") int limit,
+                                       @RequestParam(required = false) String fields,
+                                       @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                       @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        SortedSet<String> projection = userProjection.parse(fields);
+        UserJsonCache.Rendered rendered = jsonCache.page(after, limit, projection);
+        if (rendered != null) {
+            return respond(rendered, ifNoneMatch, acceptEncoding);
+        }
+        return project(UserPage.class, service.getPage(after, limit, projection), projection);
+    }
+
+    @GetMapping(params = "email")
     @ResponseStatus(HttpStatus.OK)
-    public List<User> listUsers() {
-        return service.getAll();
+    public User getUserByEmail(@RequestParam String email) {
+        return service.getByEmail(email);
     }
 
-    @GetMapping("/{id}")
+    @GetMapping(params = "username")
+    @ResponseStatus(HttpStatus.OK)
+    public User getUserByUsername(@RequestParam String username) {
+        return service.getByUsername(username);
+    }
+
+    @GetMapping(params = "ids")
     @ResponseStatus(HttpStatus.OK)
-    public User getUser(@PathVariable Long id) {
-        return service.getById(id);
+    public UserLookupResult getUsers(@RequestParam List<Long> ids) {
+        ids.forEach(hotUsers::record);
+        return service.getByIds(ids);
+    }
+
+    // Same as GET ?ids= for sets too large for a query string
+    @PostMapping("/lookup")
+    @ResponseStatus(HttpStatus.OK)
+    public UserLookupResult lookupUsers(@RequestBody List<Long> ids) {
+        ids.forEach(hotUsers::record);
+        return service.getByIds(ids);
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportUsers() {
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = ndjsonWriter.createGenerator(out)) {
+                service.streamAll(user -> {
+                    try {
+                        ndjsonWriter.writeValue(generator, user);
+                        generator.writeRaw('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<?> getUser(@PathVariable Long id,
+                                     @RequestParam(required = false) String fields,
+                                     @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                     @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        // Recorded here rather than in the service, whose cached lookups never reach the method body
+        hotUsers.record(id);
+        SortedSet<String> projection = userProjection.parse(fields);
+        UserJsonCache.Rendered rendered = jsonCache.user(id, projection);
+        if (rendered != null) {
+            return respond(rendered, ifNoneMatch, acceptEncoding);
+        }
+        return project(User.class, service.getById(id), projection);
+    }
+
+    private ResponseEntity<?> project(Class<?> type, Object value, SortedSet<String> projection) {
+        if (projection == null) {
+            return ResponseEntity.ok(value);
+        }
+        try {
+            byte[] json = userProjection.writer(type, projection).writeValueAsBytes(value);
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(json);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Stored JSON goes out as is; only clients that do not accept gzip cost a decompression
+    private static ResponseEntity<?> respond(UserJsonCache.Rendered rendered, String ifNoneMatch, String acceptEncoding) {
+        if (rendered.matches(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(rendered.etag()).build();
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .eTag(rendered.etag())
+                .contentType(MediaType.APPLICATION_JSON);
+        if (!rendered.gzip()) {
+            return response.body(rendered.body());
+        }
+        response.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (acceptsGzip(acceptEncoding)) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(rendered.body());
+        }
+        return response.body(rendered.json());
+    }
+
+    // Honours q-values: "gzip;q=0" refuses gzip, and "*" covers it when gzip is not listed
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Double wildcard = null;
+        for (String token : acceptEncoding.split(",")) {
+            String[] parts = token.split(";");
+            String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+            double q = 1.0;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.length() > 2 && param.regionMatches(true, 0, "q=", 0, 2)) {
+                    try {
+                        q = Double.parseDouble(param.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                return q > 0;
+            }
+            if (coding.equals("*")) {
+                wildcard = q;
+            }
+        }
+        return wildcard != null && wildcard > 0;
     }
 
     @PostMapping
@@ -41,9 +194,34 @@ public class UserController {
         return service.update(id, user);
     }
 
+    // Only the fields present in the body are changed
+    @PatchMapping("/{id}")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public User patchUser(@PathVariable Long id, @RequestBody User changes) {
+        return service.patch(id, changes);
+    }
+
     @DeleteMapping("/{id}")
     @ResponseStatus(HttpStatus.ACCEPTED)
     public void deleteUser(@PathVariable Long id) {
         service.delete(id);
     }
+
+    @PostMapping("/batch")
+    @ResponseStatus(HttpStatus.MULTI_STATUS)
+    public List<BatchItemResult> createUsers(@RequestBody List<User> users) {
+        return service.createAll(users);
+    }
+
+    @PutMapping("/batch")
+    @ResponseStatus(HttpStatus.MULTI_STATUS)
+    public List<BatchItemResult> updateUsers(@RequestBody List<User> users) {
+        return service.updateAll(users);
+    }
+
+    @DeleteMapping("/batch")
+    @ResponseStatus(HttpStatus.MULTI_STATUS)
+    public List<BatchItemResult> deleteUsers(@RequestBody List<Long> ids) {
+        return service.deleteAll(ids);
+    }
 }
@@ -1,6 +1,10 @@
 package com.example.spring_boot_mongodb_redis.exception;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -21,6 +25,16 @@ public class GlobalExceptionHandler {
                 .body(ex.getReason());
     }
 
+    // A backend that timed out or is unreachable is worth retrying, unlike an unexpected error
+    @ExceptionHandler({QueryTimeoutException.class, RedisConnectionFailureException.class})
+    public ResponseEntity<String> handleBackendUnavailable(DataAccessException ex) {
+        log.warn("Backend unavailable: {}", ex.getMessage());
+        return ResponseEntity
+                .status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body("Service temporarily unavailable");
+    }
+
     // Optional: catch all fallback for other unhandled exceptions
     @ExceptionHandler(Exception.class)
     public ResponseEntity<String> handleGenericException(Exception ex) {
@@ -0,0 +1,328 @@
+package com.example.spring_boot_mongodb_redis.init;
+
+import com.example.spring_boot_mongodb_redis.config.AppProperties;
+import com.example.spring_boot_mongodb_redis.config.BackgroundThreads;
+import com.example.spring_boot_mongodb_redis.model.ImportCheckpoint;
+import com.example.spring_boot_mongodb_redis.model.User;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.mongodb.bulk.BulkWriteError;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+
+/**
+ * Imports a JSON array of users without holding it in memory. The file is read token by token
+ * with Jackson's streaming parser (optionally over a memory-mapped file), users are grouped into
+ * fixed-size unordered inserts, and a bounded number of batches are written in parallel while
+ * the next ones are parsed.
+ * <p>
+ * Progress is checkpointed in Mongo as the number of leading array elements that are known to be
+ * written. An interrupted import resumes by skipping that many elements; batches that were in
+ * flight are inserted again and their duplicate-key errors ignored.
+ */
+@Slf4j
+@Component
+public class UserBulkImporter {
+
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final MongoOperations mongoOperations;
+    private final AppProperties.Import settings;
+    private final ObjectReader userReader;
+    private final BackgroundThreads backgroundThreads;
+
+    public UserBulkImporter(MongoOperations mongoOperations, AppProperties appProperties,
+                            BackgroundThreads backgroundThreads) {
+        this.mongoOperations = mongoOperations;
+        this.settings = appProperties.getImporter();
+        this.backgroundThreads = backgroundThreads;
+        this.userReader = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+                .readerFor(User.class);
+    }
+
+    // True when an earlier import of this exact file stopped before the end
+    public boolean isPending(Path file) throws IOException {
+        ImportCheckpoint checkpoint = mongoOperations.findById(checkpointId(file), ImportCheckpoint.class);
+        return checkpoint != null && !checkpoint.isCompleted();
+    }
+
+    // Returns the number of users inserted by this run; progress receives the running total
+    public long importFile(Path file, LongConsumer progress) throws IOException {
+        String checkpointId = checkpointId(file);
+        ImportCheckpoint checkpoint = mongoOperations.findById(checkpointId, ImportCheckpoint.class);
+        if (checkpoint != null && checkpoint.isCompleted()) {
+            log.info("ℹ️ {} was already imported", file);
+            return 0;
+        }
+        long resumeAt = checkpoint != null ? checkpoint.getPosition() : 0;
+
+        try (InputStream in = open(file);
+             JsonParser parser = userReader.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Expected a JSON array of users in " + file);
+            }
+            if (resumeAt > 0) {
+                log.info("ℹ️ Resuming import of {} after {} users", file, resumeAt);
+                for (long i = 0; i < resumeAt && parser.nextToken() == JsonToken.START_OBJECT; i++) {
+                    parser.skipChildren();
+                }
+            }
+            return new Run(checkpointId, resumeAt, progress).execute(parser);
+        }
+    }
+
+    private InputStream open(Path file) throws IOException {
+        if (settings.isMemoryMapped()) {
+            return new MappedInputStream(FileChannel.open(file, StandardOpenOption.READ));
+        }
+        return new BufferedInputStream(Files.newInputStream(file), 1 << 16);
+    }
+
+    private static String checkpointId(Path file) throws IOException {
+        return file.toAbsolutePath() + ":" + Files.size(file) + ":" + Files.getLastModifiedTime(file).toMillis();
+    }
+
+    /**
+     * State of one import. The parser thread fills batches and hands them to the writers; writers
+     * report completed batches, and the checkpoint advances over the contiguous completed prefix.
+     */
+    private final class Run {
+
+        private final String checkpointId;
+        private final LongConsumer progress;
+        private final ExecutorService writers;
+        private final Semaphore pending = new Semaphore(settings.getMaxPendingBatches());
+        private final AtomicLong inserted = new AtomicLong();
+        private final AtomicLong duplicates = new AtomicLong();
+        private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+        // Not a monitor: checkpoints are saved while holding it, which would pin a virtual writer thread
+        private final ReentrantLock progressLock = new ReentrantLock();
+        // Guarded by progressLock: end position of each completed batch that is not yet contiguous
+        private final Map<Long, Long> completed = new TreeMap<>();
+        private long nextBatch;
+        private long watermark;
+        private long lastCheckpoint = System.nanoTime();
+
+        private Run(String checkpointId, long resumeAt, LongConsumer progress) {
+            this.checkpointId = checkpointId;
+            this.progress = progress;
+            this.watermark = resumeAt;
+            this.writers = Executors.newFixedThreadPool(settings.getWriters(), backgroundThreads.numbered("user-import"));
+        }
+
+        private long execute(JsonParser parser) throws IOException {
+            long started = System.nanoTime();
+            long lastReport = started;
+            long lastReported = 0;
+            long position = watermark;
+            long batchNumber = 0;
+            List<User> batch = new ArrayList<>(settings.getBatchSize());
+            try {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    batch.add(userReader.readValue(parser));
+                    position++;
+                    if (batch.size() == settings.getBatchSize()) {
+                        submit(batchNumber++, batch, position);
+                        batch = new ArrayList<>(settings.getBatchSize());
+                    }
+
+                    long now = System.nanoTime();
+                    if (now - lastReport >= settings.getProgressInterval().toNanos()) {
+                        long total = inserted.get();
+                        log.info("📦 Imported {} users ({} users/s, parsed {})",
+                                total, rate(total - lastReported, now - lastReport), position);
+                        lastReport = now;
+                        lastReported = total;
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    submit(batchNumber, batch, position);
+                }
+                awaitWriters();
+            } finally {
+                writers.shutdownNow();
+            }
+
+            checkpoint(watermark, true);
+            long elapsed = System.nanoTime() - started;
+            log.info("✅ Imported {} users in {} ms ({} users/s, {} already present)",
+                    inserted.get(), elapsed / 1_000_000, rate(inserted.get(), elapsed), duplicates.get());
+            return inserted.get();
+        }
+
+        private void submit(long number, List<User> batch, long end) {
+            try {
+                pending.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Import interrupted", e);
+            }
+            throwIfFailed();
+            writers.execute(() -> {
+                try {
+                    write(batch);
+                    complete(number, end);
+                    progress.accept(inserted.get());
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    pending.release();
+                }
+            });
+        }
+
+        private void write(List<User> batch) {
+            BulkOperations bulk = mongoOperations.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+            bulk.insert(batch);
+            try {
+                inserted.addAndGet(bulk.execute().getInsertedCount());
+            } catch (BulkOperationException e) {
+                // Users written before an interruption come back as duplicates on resume
+                List<BulkWriteError> errors = e.getErrors();
+                if (errors.stream().anyMatch(error -> error.getCode() != DUPLICATE_KEY)) {
+                    throw e;
+                }
+                inserted.addAndGet(e.getResult().getInsertedCount());
+                duplicates.addAndGet(errors.size());
+            }
+        }
+
+        private void complete(long number, long end) {
+            progressLock.lock();
+            try {
+                completed.put(number, end);
+                Long contiguous;
+                while ((contiguous = completed.remove(nextBatch)) != null) {
+                    watermark = contiguous;
+                    nextBatch++;
+                }
+                if (System.nanoTime() - lastCheckpoint >= settings.getCheckpointInterval().toNanos()) {
+                    checkpoint(watermark, false);
+                }
+            } finally {
+                progressLock.unlock();
+            }
+        }
+
+        private void awaitWriters() {
+            try {
+                pending.acquire(settings.getMaxPendingBatches());
+                pending.release(settings.getMaxPendingBatches());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Import interrupted", e);
+            }
+            throwIfFailed();
+        }
+
+        private void throwIfFailed() {
+            RuntimeException error = failure.get();
+            if (error != null) {
+                progressLock.lock();
+                try {
+                    checkpoint(watermark, false);
+                } finally {
+                    progressLock.unlock();
+                }
+                throw error;
+            }
+        }
+
+        private void checkpoint(long position, boolean done) {
+            mongoOperations.save(ImportCheckpoint.builder()
+                    .id(checkpointId)
+                    .position(position)
+                    .completed(done)
+                    .updatedAt(Instant.now())
+                    .build());
+            lastCheckpoint = System.nanoTime();
+        }
+
+        private static long rate(long count, long nanos) {
+            return nanos > 0 ? count * 1_000_000_000L / nanos : 0;
+        }
+    }
+
+    // Maps the file a window at a time, since a single mapping is limited to 2 GB
+    private static final class MappedInputStream extends InputStream {
+
+        private static final long WINDOW = 1L << 28;
+
+        private final FileChannel channel;
+        private final long size;
+        private long offset;
+        private MappedByteBuffer buffer;
+
+        private MappedInputStream(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+        }
+
+        @Override
+        public int read() throws IOException {
+            return ensureAvailable() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!ensureAvailable()) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(bytes, off, count);
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        private boolean ensureAvailable() throws IOException {
+            if (buffer != null && buffer.hasRemaining()) {
+                return true;
+            }
+            if (offset >= size) {
+                return false;
+            }
+            long length = Math.min(WINDOW, size - offset);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+            offset += length;
+            return true;
+        }
+    }
+}
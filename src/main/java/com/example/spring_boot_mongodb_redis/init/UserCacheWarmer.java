@@ -0,0 +1,75 @@
+package com.example.spring_boot_mongodb_redis.init;
+
+import com.example.spring_boot_mongodb_redis.cache.RedisCacheBatchOperations;
+import com.example.spring_boot_mongodb_redis.config.AppProperties;
+import com.example.spring_boot_mongodb_redis.config.CacheProperties;
+import com.example.spring_boot_mongodb_redis.model.User;
+import com.example.spring_boot_mongodb_redis.repository.UserRepository;
+import com.example.spring_boot_mongodb_redis.service.HotUserTracker;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+/**
+ * Preloads the users cache with the IDs {@link HotUserTracker} saved as most requested. Each
+ * batch costs one pipelined EXISTS, one $in query for the users Redis does not have yet, and
+ * one pipelined SET NX, so entries already cached by other nodes are neither reloaded nor
+ * overwritten.
+ */
+@Slf4j
+@Component
+public class UserCacheWarmer {
+
+    private static final String USERS_CACHE = "users";
+
+    private final HotUserTracker hotUsers;
+    private final UserRepository repository;
+    private final RedisCacheBatchOperations cacheBatchOperations;
+    private final AppProperties.WarmUp settings;
+    private final boolean cacheEnabled;
+
+    public UserCacheWarmer(HotUserTracker hotUsers,
+                           UserRepository repository,
+                           RedisCacheBatchOperations cacheBatchOperations,
+                           AppProperties appProperties,
+                           CacheProperties cacheProperties) {
+        this.hotUsers = hotUsers;
+        this.repository = repository;
+        this.cacheBatchOperations = cacheBatchOperations;
+        this.settings = appProperties.getWarmUp();
+        this.cacheEnabled = cacheProperties.isEnabled();
+    }
+
+    // Returns the number of users loaded into the cache; progress receives the running total
+    public long warmUp(LongConsumer progress) {
+        if (!cacheEnabled || !settings.isEnabled()) {
+            return 0;
+        }
+        List<Long> ids = hotUsers.hotIds();
+        if (ids.isEmpty()) {
+            log.info("ℹ️ No hot user list saved yet, skipping cache warm-up");
+            return 0;
+        }
+
+        long started = System.currentTimeMillis();
+        long warmed = 0;
+        for (int from = 0; from < ids.size(); from += settings.getBatchSize()) {
+            List<Long> batch = ids.subList(from, Math.min(from + settings.getBatchSize(), ids.size()));
+            List<Long> missing = cacheBatchOperations.missingKeys(USERS_CACHE, batch).stream().map(Long.class::cast).toList();
+            if (!missing.isEmpty()) {
+                Map<Long, User> users = new LinkedHashMap<>();
+                repository.findAllById(missing).forEach(user -> users.put(user.getId(), user));
+                cacheBatchOperations.putAllIfAbsent(USERS_CACHE, users);
+                warmed += users.size();
+            }
+            progress.accept(warmed);
+        }
+        log.info("🔥 Warmed the users cache with {} of {} hot users in {} ms",
+                warmed, ids.size(), System.currentTimeMillis() - started);
+        return warmed;
+    }
+}
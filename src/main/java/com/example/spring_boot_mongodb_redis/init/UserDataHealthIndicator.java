@@ -0,0 +1,69 @@
+package com.example.spring_boot_mongodb_redis.init;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Readiness of the user data. Out of service while the startup import and cache warm-up run in
+ * the background, with their progress in the details. It is part of the readiness health group,
+ * so a starting node only receives traffic once both are done. A failed initialization reports
+ * up with the error, since the node can still serve the data that is already there.
+ */
+@Component
+public class UserDataHealthIndicator implements HealthIndicator {
+
+    public enum Phase {
+        STARTING, IMPORTING, WARMING_UP, READY, FAILED
+    }
+
+    private final Instant startedAt = Instant.now();
+    private volatile Phase phase = Phase.STARTING;
+    private volatile long imported;
+    private volatile long warmed;
+    private volatile String error;
+    private volatile Instant finishedAt;
+
+    @Override
+    public Health health() {
+        Health.Builder builder = phase == Phase.READY || phase == Phase.FAILED ? Health.up() : Health.outOfService();
+        builder.withDetail("phase", phase)
+                .withDetail("imported", imported)
+                .withDetail("warmed", warmed)
+                .withDetail("elapsed", Duration.between(startedAt, finishedAt != null ? finishedAt : Instant.now()).toString());
+        if (error != null) {
+            builder.withDetail("error", error);
+        }
+        return builder.build();
+    }
+
+    void importing() {
+        phase = Phase.IMPORTING;
+    }
+
+    void imported(long count) {
+        imported = count;
+    }
+
+    void warmingUp() {
+        phase = Phase.WARMING_UP;
+    }
+
+    void warmed(long count) {
+        warmed = count;
+    }
+
+    void ready() {
+        finishedAt = Instant.now();
+        phase = Phase.READY;
+    }
+
+    void failed(Exception e) {
+        error = e.toString();
+        finishedAt = Instant.now();
+        phase = Phase.FAILED;
+    }
+}
@@ -1,120 +1,203 @@
 package com.example.spring_boot_mongodb_redis.init;
 
 import com.example.spring_boot_mongodb_redis.config.AppProperties;
+import com.example.spring_boot_mongodb_redis.config.BackgroundThreads;
+import com.example.spring_boot_mongodb_redis.config.SequenceGeneratorService;
 import com.example.spring_boot_mongodb_redis.model.User;
 import com.example.spring_boot_mongodb_redis.repository.UserRepository;
+import com.example.spring_boot_mongodb_redis.service.UserIdFilter;
+import com.example.spring_boot_mongodb_redis.service.UserListView;
+import com.example.spring_boot_mongodb_redis.service.UserService;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.http.HttpMethod;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDate;
 import java.time.format.DateTimeParseException;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Slf4j
 @Component
 public class UserDataInitializer implements CommandLineRunner {
 
     private final UserRepository userRepository;
+    private final MongoOperations mongoOperations;
     private final RestTemplate restTemplate;
     private final AppProperties appProperties;
+    private final UserBulkImporter importer;
+    private final SequenceGeneratorService sequenceGenerator;
+    private final UserListView userListView;
+    private final UserIdFilter userIdFilter;
+    private final UserCacheWarmer cacheWarmer;
+    private final UserDataHealthIndicator readiness;
     private final ObjectMapper mapper;
-
-    public UserDataInitializer(UserRepository userRepository, RestTemplate restTemplate, AppProperties appProperties) {
+    private final ObjectWriter fileWriter;
+    private final ExecutorService executor;
+
+    public UserDataInitializer(UserRepository userRepository, MongoOperations mongoOperations,
+                               RestTemplate restTemplate, AppProperties appProperties,
+                               UserBulkImporter importer, SequenceGeneratorService sequenceGenerator,
+                               UserListView userListView, UserIdFilter userIdFilter,
+                               UserCacheWarmer cacheWarmer, UserDataHealthIndicator readiness,
+                               BackgroundThreads backgroundThreads) {
         this.userRepository = userRepository;
+        this.mongoOperations = mongoOperations;
         this.restTemplate = restTemplate;
         this.appProperties = appProperties;
+        this.importer = importer;
+        this.sequenceGenerator = sequenceGenerator;
+        this.userListView = userListView;
+        this.userIdFilter = userIdFilter;
+        this.cacheWarmer = cacheWarmer;
+        this.readiness = readiness;
+        this.executor = Executors.newSingleThreadExecutor(backgroundThreads.named("user-data-init"));
         this.mapper = new ObjectMapper()
                 .registerModule(new JavaTimeModule())
                 .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        this.fileWriter = mapper.writerFor(User.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
     }
 
+    // Startup does not wait for the data; the userData readiness indicator holds traffic back until it is done
     @Override
     public void run(String... args) {
-        if (userRepository.count() == 0) {
-            log.info("📦 Starting user data initialization...");
-
-            List<User> users = loadUsersFromFile();
-            if (users.isEmpty()) {
-                users = fetchUsersFromApi();
-                if (!users.isEmpty()) {
-                    saveUsersToFile(users);
-                }
-            }
+        executor.execute(this::initialize);
+    }
 
-            if (!users.isEmpty()) {
-                userRepository.saveAll(users);
-                log.info("✅ Successfully initialized MongoDB with {} users", users.size());
-            } else {
-                log.warn("⚠️ No users were loaded from file or API.");
-            }
-        } else {
-            log.info("✅ User data already present. Skipping initialization.");
-        }
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
     }
 
-    private List<User> loadUsersFromFile() {
-        List<User> users = new ArrayList<>();
+    private void initialize() {
         try {
-            File file = new File(appProperties.getUserDataFile());
-            if (!file.exists()) {
-                log.info("ℹ️ User data file not found: {}", file.getAbsolutePath());
-                return users;
-            }
+            ensureIndexes();
+            sequenceGenerator.seed(UserService.USER_SEQUENCE);
+            importUsers();
+            readiness.warmingUp();
+            cacheWarmer.warmUp(readiness::warmed);
+            readiness.ready();
+        } catch (Exception e) {
+            log.error("❌ User data initialization failed; an import resumes from its checkpoint on the next start", e);
+            readiness.failed(e);
+        }
+    }
 
-            log.info("ℹ️ Loading users from file: {}", file.getAbsolutePath());
-            User[] userArray = mapper.readValue(file, User[].class);
-            users.addAll(Arrays.asList(userArray));
-            log.info("✅ Loaded {} users from file", users.size());
+    // Before the import, so it already skips duplicates. Sparse, since email and username are optional.
+    private void ensureIndexes() {
+        IndexOperations indexes = mongoOperations.indexOps(User.class);
+        for (String field : List.of("email", "username")) {
+            try {
+                indexes.ensureIndex(new Index().on(field, Sort.Direction.ASC).unique().sparse());
+            } catch (DataAccessException e) {
+                log.error("❌ Could not create the unique {} index; lookups work but duplicates are not rejected: {}",
+                        field, e.getMessage());
+            }
+        }
+    }
 
-        } catch (Exception e) {
-            log.warn("⚠️ Failed to load users from file", e);
+    private void importUsers() throws IOException {
+        File file = new File(appProperties.getUserDataFile());
+        if (userRepository.count() > 0 && !(file.exists() && importer.isPending(file.toPath()))) {
+            log.info("✅ User data already present. Skipping initialization.");
+            return;
         }
-        return users;
+        log.info("📦 Starting user data initialization...");
+        readiness.importing();
+        if (!file.exists() && !downloadUsersFromApi(file)) {
+            log.warn("⚠️ No users were loaded from file or API.");
+            return;
+        }
+
+        log.info("ℹ️ Loading users from file: {}", file.getAbsolutePath());
+        long imported = importer.importFile(file.toPath(), readiness::imported);
+        log.info("✅ Successfully initialized MongoDB with {} users", imported);
+        // Both were built from the collection before the import
+        userListView.invalidate();
+        userIdFilter.rebuild();
     }
 
-    private List<User> fetchUsersFromApi() {
-        List<User> users = new ArrayList<>();
+    // Streams the API's users array into the data file, so the import reads it like any other file
+    private boolean downloadUsersFromApi(File file) {
         try {
             log.info("🌐 Fetching users from API: {}", appProperties.getApiUrl());
-            String response = restTemplate.getForObject(appProperties.getApiUrl(), String.class);
-
-            JsonNode root = mapper.readTree(response);
-            JsonNode usersNode = root.path("users");
+            Long count = restTemplate.execute(appProperties.getApiUrl(), HttpMethod.GET, null,
+                    response -> saveUsersToFile(response.getBody(), file));
+            log.info("✅ Fetched {} users from API", count);
+            return count != null && count > 0;
+        } catch (Exception e) {
+            log.error("❌ Failed to fetch users from API", e);
+            return false;
+        }
+    }
 
-            for (JsonNode node : usersNode) {
-                try {
-                    User user = parseUserFromNode(node);
-                    users.add(user);
-                } catch (Exception e) {
-                    log.warn("⚠️ Failed to parse user from API node: {}", node, e);
+    private long saveUsersToFile(InputStream body, File file) throws IOException {
+        long count = 0;
+        Path partial = Path.of(file.getPath() + ".part");
+        try (JsonParser parser = mapper.getFactory().createParser(body);
+             JsonGenerator generator = mapper.getFactory().createGenerator(partial.toFile(), JsonEncoding.UTF8)) {
+            generator.useDefaultPrettyPrinter();
+            generator.writeStartArray();
+            if (moveToUsersArray(parser)) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    JsonNode node = mapper.readTree(parser);
+                    try {
+                        fileWriter.writeValue(generator, parseUserFromNode(node));
+                        count++;
+                    } catch (Exception e) {
+                        log.warn("⚠️ Failed to parse user from API node: {}", node, e);
+                    }
                 }
             }
+            generator.writeEndArray();
+        }
 
-            log.info("✅ Fetched {} users from API", users.size());
-
-        } catch (Exception e) {
-            log.error("❌ Failed to fetch users from API", e);
+        if (count > 0) {
+            Files.move(partial, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            log.info("💾 Saved {} users to file: {}", count, file.getAbsolutePath());
+        } else {
+            Files.deleteIfExists(partial);
         }
-        return users;
+        return count;
     }
 
-    private void saveUsersToFile(List<User> users) {
-        try {
-            File file = new File(appProperties.getUserDataFile());
-            mapper.writerWithDefaultPrettyPrinter().writeValue(file, users);
-            log.info("💾 Saved {} users to file: {}", users.size(), file.getAbsolutePath());
-        } catch (Exception e) {
-            log.warn("⚠️ Failed to save users to file", e);
+    private static boolean moveToUsersArray(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return false;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            if (parser.nextToken() == JsonToken.START_ARRAY && "users".equals(field)) {
+                return true;
+            }
+            parser.skipChildren();
         }
+        return false;
     }
 
     private User parseUserFromNode(JsonNode node) {
@@ -1,54 +1,100 @@
 package com.example.spring_boot_mongodb_redis.interceptor;
 
+import com.example.spring_boot_mongodb_redis.cache.CacheLookupOutcome;
+import com.example.spring_boot_mongodb_redis.cache.InstrumentedCacheManager;
 import com.example.spring_boot_mongodb_redis.service.CacheMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.interceptor.CacheInterceptor;
+import org.springframework.cache.interceptor.CacheOperation;
 import org.springframework.cache.interceptor.CacheOperationInvoker;
 import org.springframework.cache.interceptor.CacheOperationSource;
+import org.springframework.cache.interceptor.CacheableOperation;
+import org.springframework.cache.interceptor.LoggingCacheErrorHandler;
 import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Component;
 
 import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 @Component
 @Primary
 public class MetricsRecordingCacheInterceptor extends CacheInterceptor {
 
     private static final Logger redisLogger = LoggerFactory.getLogger("RedisTransactions");
+    private static final String[] RESULTS = {"write", "hit", "miss"};
+
     private final CacheMetrics metricsCollector;
+    private final MeterRegistry meterRegistry;
+    private final Map<Method, InvocationMetrics> invocationMetrics = new ConcurrentHashMap<>();
 
-    public MetricsRecordingCacheInterceptor(CacheMetrics metricsCollector, CacheOperationSource cacheOperationSource) {
+    public MetricsRecordingCacheInterceptor(CacheMetrics metricsCollector,
+                                            CacheOperationSource cacheOperationSource,
+                                            MeterRegistry meterRegistry) {
         this.metricsCollector = metricsCollector;
+        this.meterRegistry = meterRegistry;
         setCacheOperationSource(cacheOperationSource);
+        // Cache errors the circuit breaker does not absorb become a miss or a skipped write, not a failed request
+        setErrorHandler(new LoggingCacheErrorHandler(redisLogger.getName(), false));
+    }
+
+    // Hits and misses are taken from the lookups themselves, so every cache the interceptor
+    // resolves goes through an InstrumentedCache
+    @Override
+    public void setCacheManager(CacheManager cacheManager) {
+        super.setCacheManager(new InstrumentedCacheManager(cacheManager, metricsCollector));
     }
 
     @Override
     protected Object execute(CacheOperationInvoker invoker, Object target, Method method, Object[] args) {
-        String className = target.getClass().getSimpleName();
-        String methodName = method.getName();
-
-        redisLogger.debug("Cache interceptor executing: {}.{}", className, methodName);
-
-        long startTime = System.currentTimeMillis();
-        Object result = super.execute(invoker, target, method, args);
-        long endTime = System.currentTimeMillis();
-
-        // Try to determine if this was a cache hit or miss
-        // This is a simplification - in reality, it's more complex to determine if a cache hit occurred
-        if (result != null) {
-            // Assume cache hit for simplicity
-            metricsCollector.recordCacheHit("users");
-            redisLogger.debug("Cache operation on {}.{} completed in {} ms (likely HIT)",
-                    className, methodName, (endTime - startTime));
-        } else {
-            // Assume cache miss
-            metricsCollector.recordCacheMiss("users");
-            redisLogger.debug("Cache operation on {}.{} completed in {} ms (likely MISS)",
-                    className, methodName, (endTime - startTime));
+        InvocationMetrics metrics = invocationMetrics(method, target);
+        CacheLookupOutcome outcome = CacheLookupOutcome.current();
+        int previous = outcome.reset();
+
+        long startTime = System.nanoTime();
+        try {
+            return super.execute(invoker, target, method, args);
+        } finally {
+            long elapsed = System.nanoTime() - startTime;
+            int result = outcome.restore(previous);
+            metrics.timer(result).record(elapsed, TimeUnit.NANOSECONDS);
+
+            if (redisLogger.isDebugEnabled()) {
+                redisLogger.debug("Cache operation on {} [{}] completed in {} µs ({})",
+                        metrics.methodName, metrics.cacheName, elapsed / 1_000, RESULTS[result]);
+            }
+        }
+    }
+
+    private InvocationMetrics invocationMetrics(Method method, Object target) {
+        InvocationMetrics metrics = invocationMetrics.get(method);
+        if (metrics != null) {
+            return metrics;
         }
+        Class<?> targetClass = AopProxyUtils.ultimateTargetClass(target);
+        return invocationMetrics.computeIfAbsent(method, m -> new InvocationMetrics(
+                targetClass.getSimpleName() + "." + m.getName(), cacheName(m, targetClass), meterRegistry));
+    }
 
-        return result;
+    // The cache a method reads from, or the first cache it writes to when it has no @Cacheable
+    private String cacheName(Method method, Class<?> targetClass) {
+        CacheOperationSource source = getCacheOperationSource();
+        Collection<CacheOperation> operations = source != null ? source.getCacheOperations(method, targetClass) : null;
+        if (operations == null || operations.isEmpty()) {
+            return "none";
+        }
+        CacheOperation primary = operations.stream()
+                .filter(CacheableOperation.class::isInstance)
+                .findFirst()
+                .orElse(operations.iterator().next());
+        return String.join(",", primary.getCacheNames());
     }
 
     @Override
@@ -56,4 +102,35 @@ public class MetricsRecordingCacheInterceptor extends CacheInterceptor {
         super.afterPropertiesSet();
         redisLogger.info("MetricsRecordingCacheInterceptor initialized");
     }
-}
\ No newline at end of file
+
+    // Timers indexed by CacheLookupOutcome result, registered on first use so that methods
+    // only export the results they can produce
+    private static final class InvocationMetrics {
+
+        private final String methodName;
+        private final String cacheName;
+        private final MeterRegistry registry;
+        private final Timer[] timers = new Timer[RESULTS.length];
+
+        private InvocationMetrics(String methodName, String cacheName, MeterRegistry registry) {
+            this.methodName = methodName;
+            this.cacheName = cacheName;
+            this.registry = registry;
+        }
+
+        private Timer timer(int result) {
+            Timer timer = timers[result];
+            if (timer == null) {
+                timer = Timer.builder("app.cache.invocations")
+                        .description("Latency of cached method invocations by lookup result")
+                        .tag("cache", cacheName)
+                        .tag("method", methodName)
+                        .tag("result", RESULTS[result])
+                        .publishPercentiles(0.5, 0.99, 0.999)
+                        .register(registry);
+                timers[result] = timer;
+            }
+            return timer;
+        }
+    }
+}
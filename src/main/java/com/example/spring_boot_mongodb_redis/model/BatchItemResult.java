@@ -0,0 +1,24 @@
+package com.example.spring_boot_mongodb_redis.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchItemResult {
+    private int index;
+    private Long id;
+    private Status status;
+    private String error;
+    private User user;
+
+    public enum Status {
+        CREATED, UPDATED, DELETED, NOT_FOUND, CONFLICT, FAILED
+    }
+}
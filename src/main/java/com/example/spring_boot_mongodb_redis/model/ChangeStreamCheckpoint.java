@@ -0,0 +1,24 @@
+package com.example.spring_boot_mongodb_redis.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+@Document(collection = "change_stream_checkpoints")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChangeStreamCheckpoint {
+    // Name of the stream; every node shares it, so a restart resumes from the newest token saved by any of them
+    @Id
+    private String id;
+    // Resume token as extended JSON
+    private String resumeToken;
+    private Instant updatedAt;
+}
@@ -0,0 +1,25 @@
+package com.example.spring_boot_mongodb_redis.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.List;
+
+@Document(collection = "hot_keys")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class HotKeys {
+    // Cache name
+    @Id
+    private String id;
+    // Most requested keys first
+    private List<Long> ids;
+    private Instant updatedAt;
+}
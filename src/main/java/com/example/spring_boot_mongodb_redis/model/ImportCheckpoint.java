@@ -0,0 +1,25 @@
+package com.example.spring_boot_mongodb_redis.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+@Document(collection = "import_checkpoints")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportCheckpoint {
+    // Source file path, size and modification time, so an edited file starts over
+    @Id
+    private String id;
+    // Number of leading array elements known to be written
+    private long position;
+    private boolean completed;
+    private Instant updatedAt;
+}
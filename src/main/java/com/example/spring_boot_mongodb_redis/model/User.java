@@ -4,6 +4,7 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 
@@ -28,6 +29,10 @@ public class User implements Serializable {
     private String email;
     private String phone;
     private String username;
+    // Kept out of toString so it never reaches a log line
+    @ToString.Exclude
     private String password;
     private LocalDate birthDate;
+    // Incremented on every update; sent back on PUT/PATCH it turns the write into a compare-and-set
+    private Long version;
 }
@@ -0,0 +1,17 @@
+package com.example.spring_boot_mongodb_redis.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserLookupResult {
+    private List<User> users;
+    private List<Long> notFound;
+}
@@ -0,0 +1,21 @@
+package com.example.spring_boot_mongodb_redis.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserPage implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+    private List<User> users;
+    private Long nextAfter;
+}
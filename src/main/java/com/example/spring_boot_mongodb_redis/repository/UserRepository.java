@@ -3,5 +3,12 @@ package com.example.spring_boot_mongodb_redis.repository;
 import com.example.spring_boot_mongodb_redis.model.User;
 import org.springframework.data.mongodb.repository.MongoRepository;
 
+import java.util.Optional;
+
+// email and username have unique sparse indexes, created by UserDataInitializer
 public interface UserRepository extends MongoRepository<User, Long> {
+
+    Optional<User> findByEmail(String email);
+
+    Optional<User> findByUsername(String username);
 }
@@ -1,69 +1,206 @@
 package com.example.spring_boot_mongodb_redis.service;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 @Component
 public class CacheMetrics {
 
-    private final Map<String, AtomicInteger> cacheHits = new ConcurrentHashMap<>();
-    private final Map<String, AtomicInteger> cacheMisses = new ConcurrentHashMap<>();
-    private final Map<String, AtomicInteger> cacheOperations = new ConcurrentHashMap<>();
+    // Rolling windows reported next to the lifetime totals, in seconds
+    private static final int[] WINDOWS = {1, 60, 300};
+    private static final String[] WINDOW_NAMES = {"1s", "1m", "5m"};
+
+    private final Map<String, Handle> handles = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+
+    public CacheMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    // Callers on hot paths resolve their handle once and record through it directly
+    public Handle handle(String cacheName) {
+        Handle handle = handles.get(cacheName);
+        return handle != null ? handle : handles.computeIfAbsent(cacheName, this::register);
+    }
 
     public void recordCacheHit(String cacheName) {
-        cacheHits.computeIfAbsent(cacheName, k -> new AtomicInteger(0)).incrementAndGet();
-        recordCacheOperation(cacheName);
+        handle(cacheName).hit();
     }
 
     public void recordCacheMiss(String cacheName) {
-        cacheMisses.computeIfAbsent(cacheName, k -> new AtomicInteger(0)).incrementAndGet();
-        recordCacheOperation(cacheName);
+        handle(cacheName).miss();
+    }
+
+    public void recordCachePut(String cacheName) {
+        handle(cacheName).put();
+    }
+
+    public void recordCacheEvict(String cacheName) {
+        handle(cacheName).evict();
     }
 
-    private void recordCacheOperation(String cacheName) {
-        cacheOperations.computeIfAbsent(cacheName, k -> new AtomicInteger(0)).incrementAndGet();
+    public long getCacheHits(String cacheName) {
+        Handle handle = handles.get(cacheName);
+        return handle != null ? handle.hits.sum() : 0;
     }
 
-    public int getCacheHits(String cacheName) {
-        return cacheHits.getOrDefault(cacheName, new AtomicInteger(0)).get();
+    public long getCacheMisses(String cacheName) {
+        Handle handle = handles.get(cacheName);
+        return handle != null ? handle.misses.sum() : 0;
     }
 
-    public int getCacheMisses(String cacheName) {
-        return cacheMisses.getOrDefault(cacheName, new AtomicInteger(0)).get();
+    public long getTotalOperations(String cacheName) {
+        return getCacheHits(cacheName) + getCacheMisses(cacheName);
     }
 
-    public int getTotalOperations(String cacheName) {
-        return cacheOperations.getOrDefault(cacheName, new AtomicInteger(0)).get();
+    public long getCachePuts(String cacheName) {
+        Handle handle = handles.get(cacheName);
+        return handle != null ? handle.puts.sum() : 0;
+    }
+
+    public long getCacheEvictions(String cacheName) {
+        Handle handle = handles.get(cacheName);
+        return handle != null ? handle.evictions.sum() : 0;
     }
 
     public double getHitRatio(String cacheName) {
-        int hits = getCacheHits(cacheName);
-        int total = getTotalOperations(cacheName);
-        return total > 0 ? (double) hits / total : 0.0;
+        return ratio(getCacheHits(cacheName), getTotalOperations(cacheName));
     }
 
+    // Handles stay registered so that callers holding one keep reporting
     public void resetMetrics() {
-        cacheHits.clear();
-        cacheMisses.clear();
-        cacheOperations.clear();
+        handles.values().forEach(Handle::reset);
+    }
+
+    @Scheduled(fixedRate = 1000)
+    public void sample() {
+        handles.values().forEach(Handle::sample);
     }
 
     public Map<String, Object> getMetrics() {
-        Map<String, Object> metrics = new ConcurrentHashMap<>();
+        Map<String, Object> metrics = new TreeMap<>();
+
+        handles.forEach((cacheName, handle) -> {
+            long hits = handle.hits.sum();
+            long misses = handle.misses.sum();
 
-        cacheOperations.keySet().forEach(cacheName -> {
-            Map<String, Object> cacheMetrics = new ConcurrentHashMap<>();
-            cacheMetrics.put("hits", getCacheHits(cacheName));
-            cacheMetrics.put("misses", getCacheMisses(cacheName));
-            cacheMetrics.put("total", getTotalOperations(cacheName));
-            cacheMetrics.put("hitRatio", String.format("%.2f", getHitRatio(cacheName) * 100) + "%");
+            Map<String, Object> cacheMetrics = new LinkedHashMap<>();
+            cacheMetrics.put("hits", hits);
+            cacheMetrics.put("misses", misses);
+            cacheMetrics.put("total", hits + misses);
+            cacheMetrics.put("puts", handle.puts.sum());
+            cacheMetrics.put("evictions", handle.evictions.sum());
+            cacheMetrics.put("hitRatio", formatRatio(ratio(hits, hits + misses)));
+            cacheMetrics.put("windows", handle.windows());
 
             metrics.put(cacheName, cacheMetrics);
         });
 
         return metrics;
     }
-}
\ No newline at end of file
+
+    private Handle register(String cacheName) {
+        Handle handle = new Handle();
+        FunctionCounter.builder("app.cache.gets", handle.hits, LongAdder::sum)
+                .tag("cache", cacheName).tag("result", "hit").register(meterRegistry);
+        FunctionCounter.builder("app.cache.gets", handle.misses, LongAdder::sum)
+                .tag("cache", cacheName).tag("result", "miss").register(meterRegistry);
+        FunctionCounter.builder("app.cache.puts", handle.puts, LongAdder::sum)
+                .tag("cache", cacheName).register(meterRegistry);
+        FunctionCounter.builder("app.cache.evictions", handle.evictions, LongAdder::sum)
+                .tag("cache", cacheName).register(meterRegistry);
+        return handle;
+    }
+
+    private static double ratio(long hits, long total) {
+        return total > 0 ? (double) hits / total : 0.0;
+    }
+
+    private static String formatRatio(double ratio) {
+        return String.format("%.2f", ratio * 100) + "%";
+    }
+
+    /**
+     * Counters for one cache name. Recording is a single striped add; once a second the
+     * sampler copies the running totals into ring buffers, and window rates and hit ratios
+     * are the difference between the newest sample and the one a window ago.
+     */
+    public static final class Handle {
+
+        private static final int SLOTS = WINDOWS[WINDOWS.length - 1] + 1;
+
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder puts = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+
+        private final long[] hitSamples = new long[SLOTS];
+        private final long[] missSamples = new long[SLOTS];
+        private int newest = -1;
+        private int sampled;
+
+        private Handle() {
+        }
+
+        public void hit() {
+            hits.increment();
+        }
+
+        public void miss() {
+            misses.increment();
+        }
+
+        public void put() {
+            puts.increment();
+        }
+
+        public void evict() {
+            evictions.increment();
+        }
+
+        private synchronized void sample() {
+            newest = (newest + 1) % SLOTS;
+            hitSamples[newest] = hits.sum();
+            missSamples[newest] = misses.sum();
+            sampled = Math.min(sampled + 1, SLOTS);
+        }
+
+        private synchronized void reset() {
+            hits.reset();
+            misses.reset();
+            puts.reset();
+            evictions.reset();
+            newest = -1;
+            sampled = 0;
+        }
+
+        // A window that is not filled yet reports over the samples available so far
+        private synchronized Map<String, Object> windows() {
+            Map<String, Object> windows = new LinkedHashMap<>();
+            for (int i = 0; i < WINDOWS.length; i++) {
+                int span = Math.min(WINDOWS[i], sampled - 1);
+                long hitDelta = 0;
+                long missDelta = 0;
+                if (span > 0) {
+                    int oldest = (newest - span + SLOTS) % SLOTS;
+                    hitDelta = hitSamples[newest] - hitSamples[oldest];
+                    missDelta = missSamples[newest] - missSamples[oldest];
+                }
+
+                Map<String, Object> window = new LinkedHashMap<>();
+                window.put("requestsPerSecond", span > 0 ? (double) (hitDelta + missDelta) / span : 0.0);
+                window.put("hitRatio", formatRatio(ratio(hitDelta, hitDelta + missDelta)));
+                windows.put(WINDOW_NAMES[i], window);
+            }
+            return windows;
+        }
+    }
+}
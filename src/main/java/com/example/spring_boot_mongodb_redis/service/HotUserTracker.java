@@ -0,0 +1,81 @@
+package com.example.spring_boot_mongodb_redis.service;
+
+import com.example.spring_boot_mongodb_redis.config.AppProperties;
+import com.example.spring_boot_mongodb_redis.model.HotKeys;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Samples user lookups to find the most requested IDs, and periodically saves the top of that
+ * list in Mongo for a starting node to warm its cache from. Every interval counts from zero, so
+ * the list follows current traffic. With several nodes the last one to save wins, which is
+ * representative as long as the load balancer spreads requests evenly.
+ */
+@Slf4j
+@Component
+public class HotUserTracker {
+
+    private static final String USERS_CACHE = "users";
+
+    private final MongoOperations mongoOperations;
+    private final AppProperties.WarmUp settings;
+    private final Map<Long, LongAdder> counts = new ConcurrentHashMap<>();
+
+    public HotUserTracker(MongoOperations mongoOperations, AppProperties appProperties) {
+        this.mongoOperations = mongoOperations;
+        this.settings = appProperties.getWarmUp();
+    }
+
+    // One lookup in sample-rate is counted; IDs first seen after the table is full are ignored until the next interval
+    public void record(Long id) {
+        if (!settings.isEnabled() || id == null || ThreadLocalRandom.current().nextInt(settings.getSampleRate()) != 0) {
+            return;
+        }
+        LongAdder count = counts.get(id);
+        if (count == null) {
+            if (counts.size() >= settings.getMaximumTracked()) {
+                return;
+            }
+            count = counts.computeIfAbsent(id, key -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    public List<Long> hotIds() {
+        HotKeys hotKeys = mongoOperations.findById(USERS_CACHE, HotKeys.class);
+        return hotKeys != null && hotKeys.getIds() != null ? hotKeys.getIds() : List.of();
+    }
+
+    @Scheduled(initialDelayString = "${app.warm-up.persist-interval:5m}", fixedDelayString = "${app.warm-up.persist-interval:5m}")
+    public void persist() {
+        if (counts.isEmpty()) {
+            return;
+        }
+        Map<Long, Long> snapshot = new HashMap<>();
+        counts.forEach((id, count) -> snapshot.put(id, count.sum()));
+        counts.clear();
+
+        List<Long> top = snapshot.entrySet().stream()
+                .sorted(Map.Entry.<Long, Long>comparingByValue().reversed())
+                .limit(settings.getTopKeys())
+                .map(Map.Entry::getKey)
+                .toList();
+        try {
+            mongoOperations.save(HotKeys.builder().id(USERS_CACHE).ids(top).updatedAt(Instant.now()).build());
+            log.debug("Saved {} hot user ID(s) out of {} sampled", top.size(), snapshot.size());
+        } catch (DataAccessException e) {
+            log.warn("Could not save hot user IDs: {}", e.getMessage());
+        }
+    }
+}
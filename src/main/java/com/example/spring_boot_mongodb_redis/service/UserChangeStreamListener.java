@@ -0,0 +1,384 @@
+package com.example.spring_boot_mongodb_redis.service;
+
+import com.example.spring_boot_mongodb_redis.cache.RedisCacheBatchOperations;
+import com.example.spring_boot_mongodb_redis.config.BackgroundThreads;
+import com.example.spring_boot_mongodb_redis.config.CacheProperties;
+import com.example.spring_boot_mongodb_redis.model.ChangeStreamCheckpoint;
+import com.example.spring_boot_mongodb_redis.model.User;
+import com.mongodb.MongoServerException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.BsonTimestamp;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the users cache and the list view in line with writes that bypass the application
+ * (batch jobs, mongosh, other services) by following the user collection's change stream.
+ * <p>
+ * Events are applied in batches. A changed user whose cached copy is equal to the new document,
+ * or newer, was written through this application and is skipped, so the service's own writes do
+ * not cause a second round of invalidations. Other changes refresh the cached copy in place and
+ * patch the list view; deletes evict. The resume token is saved in Mongo after the events before
+ * it are applied, so a restart replays from there instead of missing writes. When the token is
+ * too old to resume from, the users cache and the view are cleared instead.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "cache.change-stream.enabled", havingValue = "true")
+public class UserChangeStreamListener {
+
+    private static final String CHECKPOINT_ID = "users-cache";
+    private static final String USERS_CACHE = "users";
+    private static final String MISSING_USERS_CACHE = "users_missing";
+    private static final Set<Integer> RESUME_FAILED = Set.of(280, 286); // ChangeStreamFatalError, ChangeStreamHistoryLost
+    private static final int NOT_A_REPLICA_SET = 40573;
+
+    private final MongoOperations mongoOperations;
+    private final RedisCacheBatchOperations cacheBatchOperations;
+    private final CacheManager cacheManager;
+    private final UserListView userListView;
+    private final UserIdFilter userIdFilter;
+    private final CacheProperties.ChangeStream settings;
+    private final ExecutorService executor;
+    private final Counter events;
+    private final Counter applied;
+    private final Counter skipped;
+    private final AtomicLong lagMillis = new AtomicLong();
+    private volatile boolean running = true;
+    // Token after the last applied event; only the listener thread touches it
+    private BsonDocument resumeToken;
+    private BsonDocument savedToken;
+    private long lastCheckpoint;
+
+    public UserChangeStreamListener(MongoOperations mongoOperations,
+                                    RedisCacheBatchOperations cacheBatchOperations,
+                                    CacheManager cacheManager,
+                                    UserListView userListView,
+                                    UserIdFilter userIdFilter,
+                                    CacheProperties cacheProperties,
+                                    BackgroundThreads backgroundThreads,
+                                    MeterRegistry meterRegistry) {
+        this.mongoOperations = mongoOperations;
+        this.cacheBatchOperations = cacheBatchOperations;
+        this.cacheManager = cacheManager;
+        this.userListView = userListView;
+        this.userIdFilter = userIdFilter;
+        this.settings = cacheProperties.getChangeStream();
+        this.events = Counter.builder("app.change-stream.events")
+                .description("User change events received").register(meterRegistry);
+        this.applied = Counter.builder("app.change-stream.applied")
+                .description("Cache entries refreshed or evicted for writes made outside the application").register(meterRegistry);
+        this.skipped = Counter.builder("app.change-stream.skipped")
+                .description("Changes the cache already reflected, usually the application's own writes").register(meterRegistry);
+        TimeGauge.builder("app.change-stream.lag", lagMillis, TimeUnit.MILLISECONDS, AtomicLong::get)
+                .description("Time between a write and its event being applied").register(meterRegistry);
+
+        this.executor = Executors.newSingleThreadExecutor(backgroundThreads.named("user-change-stream"));
+        executor.execute(this::run);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        executor.shutdown();
+        executor.awaitTermination(settings.getMaxAwaitTime().toMillis() + 5_000, TimeUnit.MILLISECONDS);
+    }
+
+    private void run() {
+        boolean started = false;
+        while (running) {
+            try {
+                if (!started) {
+                    resumeToken = loadToken();
+                    started = true;
+                    log.info("Following user changes {}", resumeToken != null ? "from the saved resume token" : "from now");
+                }
+                follow();
+            } catch (MongoServerException ex) {
+                if (ex.getCode() == NOT_A_REPLICA_SET) {
+                    log.error("cache.change-stream needs MongoDB running as a replica set; not following user changes");
+                    return;
+                }
+                if (!RESUME_FAILED.contains(ex.getCode())) {
+                    retryLater(ex);
+                } else if (restart(ex)) {
+                    resumeToken = null;
+                }
+            } catch (RuntimeException ex) {
+                retryLater(ex);
+            }
+        }
+        if (started) {
+            checkpoint(resumeToken, true);
+        }
+    }
+
+    private void follow() {
+        try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = open(resumeToken)) {
+            while (running) {
+                List<ChangeStreamDocument<Document>> batch = nextBatch(cursor);
+                if (!batch.isEmpty()) {
+                    apply(batch);
+                    resumeToken = batch.get(batch.size() - 1).getResumeToken();
+                } else {
+                    // Keeps the saved token recent while the collection is idle, so it does not age out of the oplog
+                    lagMillis.set(0);
+                    if (cursor.getResumeToken() != null) {
+                        resumeToken = cursor.getResumeToken();
+                    }
+                }
+                checkpoint(resumeToken, false);
+            }
+        }
+    }
+
+    // The missed writes are unknown, so everything they could have touched is dropped before starting from now
+    private boolean restart(MongoServerException ex) {
+        log.warn("Cannot resume the user change stream ({}); clearing the users cache and list view", ex.getMessage());
+        try {
+            reset();
+        } catch (RuntimeException resetFailed) {
+            retryLater(resetFailed);
+            return false;
+        }
+        checkpoint(null, true);
+        return true;
+    }
+
+    private MongoChangeStreamCursor<ChangeStreamDocument<Document>> open(BsonDocument token) {
+        ChangeStreamIterable<Document> stream = mongoOperations.getCollection(mongoOperations.getCollectionName(User.class))
+                .watch()
+                .fullDocument(FullDocument.UPDATE_LOOKUP)
+                .maxAwaitTime(settings.getMaxAwaitTime().toMillis(), TimeUnit.MILLISECONDS)
+                .batchSize(settings.getBatchSize());
+        // startAfter, unlike resumeAfter, also accepts the token of an invalidate event
+        return (token != null ? stream.startAfter(token) : stream).cursor();
+    }
+
+    // Waits for the first event, then takes whatever else is already buffered
+    private List<ChangeStreamDocument<Document>> nextBatch(MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor) {
+        List<ChangeStreamDocument<Document>> batch = new ArrayList<>();
+        ChangeStreamDocument<Document> event = cursor.tryNext();
+        while (event != null) {
+            batch.add(event);
+            event = batch.size() < settings.getBatchSize() && cursor.available() > 0 ? cursor.tryNext() : null;
+        }
+        return batch;
+    }
+
+    private void apply(List<ChangeStreamDocument<Document>> batch) {
+        events.increment(batch.size());
+        // Latest state per user in the batch; a null user means it is gone
+        Map<Long, User> changes = new LinkedHashMap<>();
+        Set<Long> inserted = new HashSet<>();
+        for (ChangeStreamDocument<Document> event : batch) {
+            switch (event.getOperationType()) {
+                case INSERT, UPDATE, REPLACE -> {
+                    Long id = userId(event);
+                    if (id != null) {
+                        changes.put(id, toUser(id, event.getFullDocument()));
+                        if (event.getOperationType() == OperationType.INSERT) {
+                            inserted.add(id);
+                        }
+                    }
+                }
+                case DELETE -> {
+                    Long id = userId(event);
+                    if (id != null) {
+                        changes.put(id, null);
+                    }
+                }
+                case DROP, RENAME, DROP_DATABASE, INVALIDATE -> {
+                    log.warn("User collection {} event; clearing the users cache and list view", event.getOperationType());
+                    reset();
+                    changes.clear();
+                    inserted.clear();
+                }
+                default -> {
+                }
+            }
+        }
+        BsonTimestamp clusterTime = batch.get(batch.size() - 1).getClusterTime();
+        if (clusterTime != null) {
+            lagMillis.set(Math.max(0, System.currentTimeMillis() - clusterTime.getTime() * 1000L));
+        }
+        if (!changes.isEmpty()) {
+            applyChanges(changes, inserted);
+        }
+    }
+
+    private void applyChanges(Map<Long, User> changes, Set<Long> inserted) {
+        Map<Object, Object> cached = cacheBatchOperations.peekAll(USERS_CACHE, changes.keySet());
+        Map<Object, Object> knownMissing = cacheBatchOperations.peekAll(MISSING_USERS_CACHE, changes.keySet());
+        if (cached == null || knownMissing == null) {
+            applyBlind(changes);
+            return;
+        }
+
+        Map<Long, User> refreshed = new LinkedHashMap<>();
+        List<Long> evicted = new ArrayList<>();
+        List<User> viewUpserts = new ArrayList<>();
+        List<Long> viewRemovals = new ArrayList<>();
+        List<Long> appeared = new ArrayList<>();
+        long unchanged = 0;
+        for (Map.Entry<Long, User> change : changes.entrySet()) {
+            Long id = change.getKey();
+            User user = change.getValue();
+            Object current = cached.get(id);
+            if (user == null) {
+                // The service evicts and remembers its own deletes
+                if (current == null && knownMissing.containsKey(id)) {
+                    unchanged++;
+                    continue;
+                }
+                if (current != null) {
+                    evicted.add(id);
+                }
+                viewRemovals.add(id);
+            } else {
+                if (current instanceof User copy && (copy.equals(user) || isNewer(copy, user))) {
+                    unchanged++;
+                    continue;
+                }
+                if (current != null) {
+                    refreshed.put(id, user);
+                }
+                viewUpserts.add(user);
+                if (knownMissing.containsKey(id) || inserted.contains(id) && !userIdFilter.mightContain(id)) {
+                    appeared.add(id);
+                }
+            }
+        }
+
+        cacheBatchOperations.putAll(USERS_CACHE, refreshed);
+        cacheBatchOperations.evictAll(USERS_CACHE, evicted);
+        cacheBatchOperations.evictAll(MISSING_USERS_CACHE, appeared.stream().filter(knownMissing::containsKey).toList());
+        userIdFilter.addAll(appeared.stream().filter(id -> !userIdFilter.mightContain(id)).toList());
+        userListView.upsertAll(viewUpserts);
+        userListView.removeAll(viewRemovals);
+
+        skipped.increment(unchanged);
+        applied.increment(changes.size() - unchanged);
+        if (unchanged < changes.size()) {
+            log.debug("Applied {} external user change(s): {} refreshed, {} evicted, {} skipped",
+                    changes.size() - unchanged, refreshed.size(), evicted.size(), unchanged);
+        }
+    }
+
+    // Redis is unavailable, so the cached copies cannot be compared: every changed user is evicted, which the
+    // circuit breaker turns into a delete once Redis is back, and the view is patched (or marked for rebuild)
+    private void applyBlind(Map<Long, User> changes) {
+        List<Long> ids = new ArrayList<>(changes.keySet());
+        List<Long> present = changes.entrySet().stream().filter(change -> change.getValue() != null).map(Map.Entry::getKey).toList();
+        cacheBatchOperations.evictAll(USERS_CACHE, ids);
+        cacheBatchOperations.evictAll(MISSING_USERS_CACHE, present);
+        userIdFilter.addAll(present.stream().filter(id -> !userIdFilter.mightContain(id)).toList());
+        userListView.upsertAll(changes.values().stream().filter(Objects::nonNull).toList());
+        userListView.removeAll(ids.stream().filter(id -> changes.get(id) == null).toList());
+        applied.increment(changes.size());
+        log.debug("Evicted {} externally changed user(s) without comparing, Redis is unavailable", changes.size());
+    }
+
+    // A cached copy with a higher version is a later write whose own event is still to come
+    private static boolean isNewer(User cached, User user) {
+        return cached.getVersion() != null && user.getVersion() != null && cached.getVersion() > user.getVersion();
+    }
+
+    private Long userId(ChangeStreamDocument<Document> event) {
+        BsonValue id = event.getDocumentKey() != null ? event.getDocumentKey().get("_id") : null;
+        if (id == null || !id.isNumber()) {
+            log.debug("Ignoring user change with a non-numeric _id: {}", id);
+            return null;
+        }
+        return id.asNumber().longValue();
+    }
+
+    // Null when the document was deleted before the lookup or cannot be mapped; either way the cached copy goes
+    private User toUser(Long id, Document document) {
+        if (document == null) {
+            return null;
+        }
+        try {
+            return mongoOperations.getConverter().read(User.class, document);
+        } catch (RuntimeException ex) {
+            log.warn("Cannot map changed user {}, evicting it instead: {}", id, ex.getMessage());
+            return null;
+        }
+    }
+
+    private void reset() {
+        Cache users = cacheManager.getCache(USERS_CACHE);
+        if (users != null) {
+            users.clear();
+        }
+        userListView.invalidate();
+    }
+
+    private BsonDocument loadToken() {
+        ChangeStreamCheckpoint checkpoint = mongoOperations.findById(CHECKPOINT_ID, ChangeStreamCheckpoint.class);
+        savedToken = checkpoint != null && checkpoint.getResumeToken() != null
+                ? BsonDocument.parse(checkpoint.getResumeToken())
+                : null;
+        lastCheckpoint = System.nanoTime();
+        return savedToken;
+    }
+
+    private void checkpoint(BsonDocument token, boolean force) {
+        boolean due = System.nanoTime() - lastCheckpoint >= settings.getCheckpointInterval().toNanos();
+        if (!(force || due) || (token != null && token.equals(savedToken))) {
+            return;
+        }
+        try {
+            mongoOperations.save(ChangeStreamCheckpoint.builder()
+                    .id(CHECKPOINT_ID)
+                    .resumeToken(token != null ? token.toJson() : null)
+                    .updatedAt(Instant.now())
+                    .build());
+            savedToken = token;
+            lastCheckpoint = System.nanoTime();
+        } catch (RuntimeException ex) {
+            log.warn("Could not save the user change stream resume token: {}", ex.getMessage());
+        }
+    }
+
+    private void retryLater(RuntimeException ex) {
+        if (!running) {
+            return;
+        }
+        log.warn("User change stream failed, resuming in {} s: {}", settings.getRetryDelay().toSeconds(), ex.getMessage());
+        try {
+            Thread.sleep(settings.getRetryDelay().toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
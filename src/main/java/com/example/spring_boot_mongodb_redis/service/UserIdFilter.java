@@ -0,0 +1,178 @@
+package com.example.spring_boot_mongodb_redis.service;
+
+import com.example.spring_boot_mongodb_redis.cache.CacheInvalidationBus;
+import com.example.spring_boot_mongodb_redis.config.AppProperties;
+import com.example.spring_boot_mongodb_redis.model.User;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+/**
+ * In-memory Bloom filter of existing user IDs. A negative answer means the ID certainly does
+ * not exist, so the lookup can be answered with 404 without touching Redis or Mongo. The
+ * filter is built from an _id-only scan and rebuilt periodically, which also drops deleted
+ * IDs; IDs created in between are added locally and broadcast to the other nodes. Until the
+ * first build completes every ID is reported as possibly present.
+ */
+@Slf4j
+@Component
+public class UserIdFilter implements CacheInvalidationBus.Listener {
+
+    private static final String BUS_NAME = "user_ids";
+
+    private final MongoOperations mongoOperations;
+    private final AppProperties.IdFilter settings;
+    private final CacheInvalidationBus invalidationBus;
+
+    private volatile BloomFilter current;
+    private volatile BloomFilter building;
+
+    public UserIdFilter(MongoOperations mongoOperations,
+                        AppProperties appProperties,
+                        ObjectProvider<CacheInvalidationBus> invalidationBus) {
+        this.mongoOperations = mongoOperations;
+        this.settings = appProperties.getIdFilter();
+        this.invalidationBus = invalidationBus.getIfAvailable();
+        if (settings.isEnabled() && this.invalidationBus != null) {
+            this.invalidationBus.subscribe(BUS_NAME, this);
+        }
+    }
+
+    public boolean mightContain(Long id) {
+        BloomFilter filter = current;
+        return filter == null || id == null || filter.mightContain(id);
+    }
+
+    public void add(Long id) {
+        addLocally(id);
+        if (invalidationBus != null && settings.isEnabled()) {
+            invalidationBus.publish(BUS_NAME, List.of(String.valueOf(id)));
+        }
+    }
+
+    public void addAll(Collection<Long> ids) {
+        ids.forEach(this::addLocally);
+        if (invalidationBus != null && settings.isEnabled() && !ids.isEmpty()) {
+            invalidationBus.publish(BUS_NAME, ids.stream().map(String::valueOf).toList());
+        }
+    }
+
+    @Override
+    public void onInvalidate(Collection<String> keys) {
+        keys.forEach(key -> addLocally(Long.valueOf(key)));
+    }
+
+    @Override
+    public void onClear() {
+    }
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${app.id-filter.rebuild-interval:15m}")
+    public void rebuild() {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+        long expected = Math.max(settings.getMinimumCapacity(), mongoOperations.estimatedCount(User.class) * 2);
+        BloomFilter filter = new BloomFilter(expected, settings.getFalsePositiveRate());
+        building = filter;
+
+        long count = 0;
+        Query query = new Query().cursorBatchSize(settings.getScanBatchSize());
+        query.fields().include("_id");
+        try (Stream<Document> ids = mongoOperations.stream(query, Document.class, mongoOperations.getCollectionName(User.class))) {
+            for (Document document : (Iterable<Document>) ids::iterator) {
+                Object id = document.get("_id");
+                if (id instanceof Number number) {
+                    filter.add(number.longValue());
+                    count++;
+                }
+            }
+        } catch (RuntimeException e) {
+            building = null;
+            log.warn("Rebuilding the user ID filter failed, keeping the previous one: {}", e.getMessage());
+            return;
+        }
+
+        current = filter;
+        building = null;
+        log.info("Built user ID filter with {} ID(s), {} bits, in {} ms",
+                count, filter.bitSize(), System.currentTimeMillis() - started);
+    }
+
+    // Adds go to the filter being built as well, so creates during a rebuild are not lost.
+    // Reading building before current means an add racing with the swap lands in the new filter.
+    private void addLocally(Long id) {
+        if (id == null) {
+            return;
+        }
+        BloomFilter next = building;
+        if (next != null) {
+            next.add(id);
+        }
+        BloomFilter filter = current;
+        if (filter != null && filter != next) {
+            filter.add(id);
+        }
+    }
+
+    private static final class BloomFilter {
+
+        private final AtomicLongArray bits;
+        private final long bitSize;
+        private final int hashes;
+
+        private BloomFilter(long expectedInsertions, double falsePositiveRate) {
+            long size = (long) (-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            this.bits = new AtomicLongArray((int) Math.max(1, (size + 63) >>> 6));
+            this.bitSize = (long) bits.length() << 6;
+            this.hashes = Math.max(1, (int) Math.round((double) size / expectedInsertions * Math.log(2)));
+        }
+
+        private void add(long id) {
+            long hash1 = mix(id);
+            long hash2 = mix(hash1);
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(hash1 + i * hash2, bitSize);
+                int index = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long word = bits.get(index);
+                while ((word & mask) == 0 && !bits.weakCompareAndSetVolatile(index, word, word | mask)) {
+                    word = bits.get(index);
+                }
+            }
+        }
+
+        private boolean mightContain(long id) {
+            long hash1 = mix(id);
+            long hash2 = mix(hash1);
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(hash1 + i * hash2, bitSize);
+                if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private long bitSize() {
+            return bitSize;
+        }
+
+        // SplitMix64 finalizer: sequential IDs spread evenly over the bit array
+        private static long mix(long value) {
+            long z = value + 0x9E3779B97F4A7C15L;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+    }
+}
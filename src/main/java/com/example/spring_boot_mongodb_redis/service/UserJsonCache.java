@@ -0,0 +1,355 @@
+package com.example.spring_boot_mongodb_redis.service;
+
+import com.example.spring_boot_mongodb_redis.cache.DelegatingCache;
+import com.example.spring_boot_mongodb_redis.cache.RedisCircuitBreaker;
+import com.example.spring_boot_mongodb_redis.cache.RedisCacheKeys;
+import com.example.spring_boot_mongodb_redis.cache.TwoLevelCache;
+import com.example.spring_boot_mongodb_redis.config.CacheProperties;
+import com.example.spring_boot_mongodb_redis.model.User;
+import com.example.spring_boot_mongodb_redis.model.UserPage;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.function.Supplier;
+import java.util.zip.CRC32C;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Client-facing JSON for cached users and list pages, kept in Redis next to the entries it was
+ * rendered from so a read can be answered with stored bytes instead of a decode and re-encode.
+ * <p>
+ * Each rendering records the CRC32C and length of its source (the {@code users} cache entry, or
+ * the serialized entries of a list view page). A read fetches the source and the rendering in
+ * one round trip and serves the rendering only when the checksum still matches, so every path
+ * that updates or evicts a user invalidates its rendering without knowing about it; a stale
+ * rendering is replaced on the next read and otherwise expires. The ETag is a hash of the JSON
+ * itself and can be compared with If-None-Match before anything is decoded. Projections are
+ * rendered and stored separately, with the field set as part of the key.
+ * <p>
+ * A user held by the near cache is rendered on this node instead, and the rendering is kept
+ * for as long as the near cache keeps serving the same copy, so hot reads stay off Redis.
+ */
+@Slf4j
+@Component
+public class UserJsonCache {
+
+    static final String JSON_CACHE = "user_json";
+    private static final String USER_PREFIX = JSON_CACHE + "::";
+    private static final String PAGE_PREFIX = JSON_CACHE + "::page:";
+    // 2: renderings no longer include the password, so older ones are not served
+    private static final byte FORMAT = 2;
+    private static final byte GZIP = 1;
+    // Format, flags, source checksum, source length, ETag length
+    private static final int HEADER_SIZE = 1 + 1 + 4 + 4 + 1;
+
+    private final CacheManager cacheManager;
+    private final StringRedisTemplate redisTemplate;
+    private final RedisCircuitBreaker breaker;
+    private final UserListView userListView;
+    private final UserProjection userProjection;
+    private final CacheProperties.JsonPassthrough settings;
+    private final ObjectWriter userWriter;
+    private final ObjectWriter pageWriter;
+    private final CacheMetrics.Handle metrics;
+    private final CacheMetrics.Handle userMetrics;
+    // Renderings of near cache entries, valid while the near cache holds the same instance
+    private final com.github.benmanes.caffeine.cache.Cache<String, LocalRendering> localRenderings;
+    private final boolean enabled;
+
+    public UserJsonCache(CacheManager cacheManager,
+                         StringRedisTemplate redisTemplate,
+                         RedisCircuitBreaker breaker,
+                         UserListView userListView,
+                         UserProjection userProjection,
+                         CacheProperties cacheProperties,
+                         ObjectMapper objectMapper,
+                         CacheMetrics cacheMetrics) {
+        this.cacheManager = cacheManager;
+        this.redisTemplate = redisTemplate;
+        this.breaker = breaker;
+        this.userListView = userListView;
+        this.userProjection = userProjection;
+        this.settings = cacheProperties.getJsonPassthrough();
+        // The same mapper MVC uses, so a stored body is byte for byte what the controller would write
+        this.userWriter = objectMapper.writerFor(User.class);
+        this.pageWriter = objectMapper.writerFor(UserPage.class);
+        this.metrics = cacheMetrics.handle(JSON_CACHE);
+        this.userMetrics = cacheMetrics.handle("users");
+        this.localRenderings = Caffeine.newBuilder()
+                .maximumSize(cacheProperties.getNear().getMaximumSize())
+                .expireAfterWrite(cacheProperties.getNear().getTtl())
+                .build();
+        this.enabled = cacheProperties.isEnabled() && settings.isEnabled();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // The rendered user when it is in the users cache; null sends the caller through the service
+    public Rendered user(Long id, SortedSet<String> projection) {
+        if (!enabled) {
+            return null;
+        }
+        Cache cache = cacheManager.getCache("users");
+        if (cache == null) {
+            return null;
+        }
+        TwoLevelCache nearCache = DelegatingCache.unwrap(cache, TwoLevelCache.class);
+        Cache.ValueWrapper local = nearCache != null ? nearCache.getLocal(id) : null;
+        if (local != null && local.get() instanceof User user) {
+            userMetrics.hit();
+            return renderLocal(id + suffix(projection), user, projection);
+        }
+        RedisCache redisCache = DelegatingCache.unwrap(cache, RedisCache.class);
+        if (redisCache == null || !breaker.allowRequest()) {
+            return null;
+        }
+        byte[] sourceKey = RedisCacheKeys.serializeKey(redisCache, id);
+        byte[] key = bytes(USER_PREFIX + id + suffix(projection));
+        List<Object> replies;
+        try {
+            replies = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                connection.stringCommands().get(sourceKey);
+                connection.stringCommands().get(key);
+                return null;
+            }, RedisSerializer.byteArray());
+            breaker.onSuccess();
+        } catch (DataAccessException ex) {
+            breaker.onFailure(ex);
+            log.debug("Reading rendered user {} failed: {}", id, ex.getMessage());
+            return null;
+        }
+        if (!(replies.get(0) instanceof byte[] source)) {
+            return null;
+        }
+        Rendered rendered = serve(key, replies.get(1), checksum(source), source.length, () -> {
+            Object user = RedisCacheKeys.deserializeValue(redisCache, source);
+            return user instanceof User ? render(writer(User.class, projection), user) : null;
+        });
+        if (rendered != null) {
+            // The users cache is read here without going through it, so its hit is counted here too
+            userMetrics.hit();
+        }
+        return rendered;
+    }
+
+    // The rendered page when the list view can serve it; null sends the caller through the service
+    public Rendered page(Long after, int limit, SortedSet<String> projection) {
+        if (!enabled) {
+            return null;
+        }
+        UserService.checkPageLimit(limit);
+        List<byte[]> entries = userListView.rawPage(after, limit);
+        if (entries == null) {
+            return null;
+        }
+        CRC32C crc = new CRC32C();
+        long length = 0;
+        for (byte[] entry : entries) {
+            crc.update(entry);
+            length += entry.length;
+        }
+        byte[] key = bytes(PAGE_PREFIX + (after != null ? after : "") + ":" + limit + suffix(projection));
+        Object stored = null;
+        if (breaker.allowRequest()) {
+            try {
+                stored = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(key));
+                breaker.onSuccess();
+            } catch (DataAccessException ex) {
+                breaker.onFailure(ex);
+                log.debug("Reading a rendered users page failed: {}", ex.getMessage());
+            }
+        }
+        return serve(key, stored, (int) crc.getValue(), (int) length,
+                () -> render(writer(UserPage.class, projection), UserService.page(userListView.decode(entries), limit)));
+    }
+
+    private Rendered renderLocal(String key, User user, SortedSet<String> projection) {
+        LocalRendering cached = localRenderings.getIfPresent(key);
+        if (cached != null && cached.source() == user) {
+            metrics.hit();
+            return cached.rendered();
+        }
+        metrics.miss();
+        Rendered rendered = rendered(render(writer(User.class, projection), user));
+        localRenderings.put(key, new LocalRendering(user, rendered));
+        return rendered;
+    }
+
+    private ObjectWriter writer(Class<?> type, SortedSet<String> projection) {
+        if (projection != null) {
+            return userProjection.writer(type, projection);
+        }
+        return type == User.class ? userWriter : pageWriter;
+    }
+
+    private static String suffix(SortedSet<String> projection) {
+        return projection != null ? ":" + UserProjection.key(projection) : "";
+    }
+
+    private Rendered serve(byte[] key, Object stored, int checksum, int length, Supplier<byte[]> renderer) {
+        if (stored instanceof byte[] envelope) {
+            Rendered rendered = parse(envelope, checksum, length);
+            if (rendered != null) {
+                metrics.hit();
+                return rendered;
+            }
+        }
+        metrics.miss();
+        byte[] json = renderer.get();
+        if (json == null) {
+            return null;
+        }
+        Rendered rendered = rendered(json);
+        byte[] envelope = envelope(rendered, checksum, length);
+        if (!breaker.allowRequest()) {
+            // Nothing to invalidate: a rendering is checked against its source before it is served
+            return rendered;
+        }
+        try {
+            redisTemplate.execute((RedisCallback<Object>) connection -> connection.stringCommands()
+                    .set(key, envelope, Expiration.from(settings.getTtl()), RedisStringCommands.SetOption.upsert()));
+            metrics.put();
+        } catch (DataAccessException ex) {
+            breaker.onFailure(ex);
+            log.debug("Storing a rendered response failed: {}", ex.getMessage());
+        }
+        return rendered;
+    }
+
+    private Rendered rendered(byte[] json) {
+        String etag = etag(json);
+        return json.length >= settings.getGzipThreshold() ? new Rendered(etag, gzip(json), true) : new Rendered(etag, json, false);
+    }
+
+    private static Rendered parse(byte[] envelope, int checksum, int length) {
+        if (envelope.length < HEADER_SIZE || envelope[0] != FORMAT) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(envelope);
+        buffer.position(2);
+        if (buffer.getInt() != checksum || buffer.getInt() != length) {
+            return null;
+        }
+        int etagLength = buffer.get() & 0xFF;
+        if (buffer.remaining() < etagLength) {
+            return null;
+        }
+        String etag = new String(envelope, HEADER_SIZE, etagLength, StandardCharsets.US_ASCII);
+        byte[] body = Arrays.copyOfRange(envelope, HEADER_SIZE + etagLength, envelope.length);
+        return new Rendered(etag, body, (envelope[1] & GZIP) != 0);
+    }
+
+    private static byte[] envelope(Rendered rendered, int checksum, int length) {
+        byte[] etag = rendered.etag().getBytes(StandardCharsets.US_ASCII);
+        return ByteBuffer.allocate(HEADER_SIZE + etag.length + rendered.body().length)
+                .put(FORMAT)
+                .put(rendered.gzip() ? GZIP : 0)
+                .putInt(checksum)
+                .putInt(length)
+                .put((byte) etag.length)
+                .put(etag)
+                .put(rendered.body())
+                .array();
+    }
+
+    private static byte[] render(ObjectWriter writer, Object value) {
+        try {
+            return writer.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int checksum(byte[] source) {
+        CRC32C crc = new CRC32C();
+        crc.update(source);
+        return (int) crc.getValue();
+    }
+
+    // Strong ETag over the uncompressed JSON, so it does not depend on the transfer encoding
+    private static String etag(byte[] json) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(json);
+            return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 16)) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] gzip(byte[] json) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 2);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private record LocalRendering(User source, Rendered rendered) {
+    }
+
+    public record Rendered(String etag, byte[] body, boolean gzip) {
+
+        // True when any of the client's validators names this rendering
+        public boolean matches(String ifNoneMatch) {
+            if (ifNoneMatch == null) {
+                return false;
+            }
+            for (String candidate : ifNoneMatch.split(",")) {
+                String tag = candidate.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // The body as plain JSON, for clients that do not accept gzip
+        public byte[] json() {
+            if (!gzip) {
+                return body;
+            }
+            try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+                return in.readAllBytes();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package com.example.spring_boot_mongodb_redis.service;
+
+import com.example.spring_boot_mongodb_redis.cache.CacheSerializers;
+import com.example.spring_boot_mongodb_redis.cache.RedisCircuitBreaker;
+import com.example.spring_boot_mongodb_redis.config.CacheProperties;
+import com.example.spring_boot_mongodb_redis.model.User;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Redis copy of the user list that every write patches in place, so listing does not depend
+ * on a cache that each write throws away. Users are kept in a hash keyed by ID next to a
+ * sorted set of the IDs; a page is a ZRANGEBYSCORE over the index plus an HMGET of the
+ * entries, run as one script.
+ * <p>
+ * The view is built from a cursor scan whenever its ready marker is missing (first start,
+ * Redis flush, cache clear). Writes keep patching it during the build: scanned users are only
+ * added when no newer copy is present, and deletes leave a tombstone so the scan cannot bring
+ * them back. Until the marker is set, callers read the page from Mongo instead.
+ */
+@Slf4j
+@Component
+public class UserListView {
+
+    // Keys and patch scripts are shared with ReactiveUserService, which maintains the same view
+    static final String VIEW_CACHE = "users_view";
+    // Hash tag keeps every key of the view in one cluster slot, so the scripts may touch them all
+    private static final String PREFIX = "{users:view}:";
+    static final String INDEX_KEY = PREFIX + "index";
+    static final String DATA_KEY = PREFIX + "data";
+    static final String TOMBSTONES_KEY = PREFIX + "tombstones";
+    // Version of each user in the view; 'deleted' for removed IDs, which are never reused
+    static final String VERSIONS_KEY = PREFIX + "versions";
+    static final String READY_KEY = PREFIX + "ready";
+    static final String BUILDING_KEY = PREFIX + "building";
+
+    // Replies with an empty list while the view is not ready, otherwise a marker followed by the entries
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> PAGE = RedisScript.of("""
+            if redis.call('EXISTS', KEYS[3]) == 0 then return {} end
+            local page = {'ready'}
+            local ids = redis.call('ZRANGEBYSCORE', KEYS[1], ARGV[1], '+inf', 'LIMIT', 0, ARGV[2])
+            if #ids > 0 then
+              for _, entry in ipairs(redis.call('HMGET', KEYS[2], unpack(ids))) do
+                page[#page + 1] = entry
+              end
+            end
+            return page
+            """, List.class);
+
+    // Patches arrive out of order (concurrent writes, change stream replays), so one only applies
+    // when it is not older than the copy in the view, and never after the user was removed
+    static final RedisScript<Long> UPSERT = RedisScript.of("""
+            local applied = 0
+            for i = 1, #ARGV, 3 do
+              local current = redis.call('HGET', KEYS[3], ARGV[i])
+              if current ~= 'deleted' and (not current or tonumber(current) <= tonumber(ARGV[i + 1])) then
+                redis.call('HSET', KEYS[3], ARGV[i], ARGV[i + 1])
+                redis.call('HSET', KEYS[2], ARGV[i], ARGV[i + 2])
+                redis.call('ZADD', KEYS[1], ARGV[i], ARGV[i])
+                applied = applied + 1
+              end
+            end
+            return applied
+            """, Long.class);
+    static final List<String> UPSERT_KEYS = List.of(INDEX_KEY, DATA_KEY, VERSIONS_KEY);
+
+    static final RedisScript<Long> REMOVE = RedisScript.of("""
+            local building = redis.call('EXISTS', KEYS[3]) == 1
+            for i = 1, #ARGV do
+              redis.call('HDEL', KEYS[2], ARGV[i])
+              redis.call('ZREM', KEYS[1], ARGV[i])
+              redis.call('HSET', KEYS[5], ARGV[i], 'deleted')
+              if building then redis.call('SADD', KEYS[4], ARGV[i]) end
+            end
+            return #ARGV
+            """, Long.class);
+    static final List<String> REMOVE_KEYS = List.of(INDEX_KEY, DATA_KEY, BUILDING_KEY, TOMBSTONES_KEY, VERSIONS_KEY);
+
+    // Build writes never overwrite a patch and never resurrect a user deleted during the scan
+    private static final RedisScript<Long> FILL = RedisScript.of("""
+            local added = 0
+            for i = 1, #ARGV, 3 do
+              if redis.call('SISMEMBER', KEYS[3], ARGV[i]) == 0 and redis.call('HSETNX', KEYS[4], ARGV[i], ARGV[i + 1]) == 1 then
+                redis.call('HSET', KEYS[2], ARGV[i], ARGV[i + 2])
+                redis.call('ZADD', KEYS[1], ARGV[i], ARGV[i])
+                added = added + 1
+              end
+            end
+            return added
+            """, Long.class);
+
+    private static final RedisScript<Long> RELEASE_LOCK = RedisScript.of(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final MongoOperations mongoOperations;
+    private final RedisCircuitBreaker breaker;
+    private final CacheProperties.ListView settings;
+    private final RedisSerializer<Object> serializer;
+    private final CacheMetrics.Handle metrics;
+    private final boolean enabled;
+
+    public UserListView(StringRedisTemplate redisTemplate,
+                        MongoOperations mongoOperations,
+                        RedisCircuitBreaker breaker,
+                        CacheProperties cacheProperties,
+                        CacheMetrics cacheMetrics) {
+        this.redisTemplate = redisTemplate;
+        this.mongoOperations = mongoOperations;
+        this.breaker = breaker;
+        this.settings = cacheProperties.getListView();
+        this.serializer = CacheSerializers.create(cacheProperties.getSerializer());
+        this.metrics = cacheMetrics.handle(VIEW_CACHE);
+        this.enabled = cacheProperties.isEnabled() && settings.isEnabled();
+    }
+
+    // Users with an ID above after, in ID order; null when the view is not built yet or Redis fails
+    public List<User> page(Long after, int limit) {
+        List<byte[]> entries = rawPage(after, limit);
+        return entries != null ? decode(entries) : null;
+    }
+
+    // The same page as serialized entries, for callers that can answer without decoding them
+    List<byte[]> rawPage(Long after, int limit) {
+        if (!enabled) {
+            return null;
+        }
+        String min = after != null ? "(" + after : "-inf";
+        List<?> entries = null;
+        if (breaker.allowRequest()) {
+            try {
+                entries = run(PAGE, List.of(INDEX_KEY, DATA_KEY, READY_KEY), bytes(min), bytes(String.valueOf(limit)));
+                breaker.onSuccess();
+            } catch (DataAccessException ex) {
+                breaker.onFailure(ex);
+                log.warn("Reading the user list view failed, falling back to the database: {}", ex.getMessage());
+            }
+        }
+        if (entries == null || entries.isEmpty()) {
+            metrics.miss();
+            return null;
+        }
+        metrics.hit();
+
+        List<byte[]> page = new ArrayList<>(entries.size() - 1);
+        for (Object entry : entries.subList(1, entries.size())) {
+            if (entry instanceof byte[] value) {
+                page.add(value);
+            }
+        }
+        return page;
+    }
+
+    List<User> decode(List<byte[]> entries) {
+        List<User> users = new ArrayList<>(entries.size());
+        entries.forEach(entry -> users.add((User) serializer.deserialize(entry)));
+        return users;
+    }
+
+    public void upsert(User user) {
+        upsertAll(List.of(user));
+    }
+
+    public void upsertAll(Collection<User> users) {
+        if (!enabled || users.isEmpty()) {
+            return;
+        }
+        if (!breaker.allowRequest()) {
+            // Missed patches make the view wrong, so it is rebuilt once Redis is back
+            breaker.markDirty(READY_KEY);
+            return;
+        }
+        try {
+            run(UPSERT, UPSERT_KEYS, entries(users));
+            metrics.put();
+        } catch (DataAccessException ex) {
+            stale(ex);
+        }
+    }
+
+    public void remove(Long id) {
+        removeAll(List.of(id));
+    }
+
+    public void removeAll(Collection<Long> ids) {
+        if (!enabled || ids.isEmpty()) {
+            return;
+        }
+        if (!breaker.allowRequest()) {
+            breaker.markDirty(READY_KEY);
+            return;
+        }
+        try {
+            run(REMOVE, REMOVE_KEYS, ids.stream().map(id -> bytes(String.valueOf(id))).toArray());
+            metrics.evict();
+        } catch (DataAccessException ex) {
+            stale(ex);
+        }
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    // For writes that bypass the service, such as the initial data load; the next check rebuilds
+    public void invalidate() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            redisTemplate.delete(READY_KEY);
+        } catch (DataAccessException ex) {
+            log.warn("Could not invalidate the user list view: {}", ex.getMessage());
+        }
+    }
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${cache.list-view.check-interval:30s}")
+    public void ensureBuilt() {
+        if (!enabled) {
+            return;
+        }
+        String token = UUID.randomUUID().toString();
+        try {
+            if (Boolean.TRUE.equals(redisTemplate.hasKey(READY_KEY))
+                    || !Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(BUILDING_KEY, token, settings.getLockTtl()))) {
+                return;
+            }
+        } catch (DataAccessException ex) {
+            log.debug("User list view check failed: {}", ex.getMessage());
+            return;
+        }
+
+        try {
+            build();
+        } catch (RuntimeException ex) {
+            log.warn("Building the user list view failed, retrying on the next check: {}", ex.getMessage());
+        } finally {
+            try {
+                redisTemplate.execute(RELEASE_LOCK, List.of(BUILDING_KEY), token);
+            } catch (DataAccessException ex) {
+                log.warn("Could not release the user list view build lock: {}", ex.getMessage());
+            }
+        }
+    }
+
+    private void build() {
+        long started = System.currentTimeMillis();
+        // Writes between taking the lock and this delete are already in Mongo, so the scan picks them up.
+        // UNLINK frees the old view in the background; a DEL of the whole view outlasts its command timeout.
+        redisTemplate.unlink(List.of(INDEX_KEY, DATA_KEY, TOMBSTONES_KEY, VERSIONS_KEY));
+
+        long count = 0;
+        List<User> batch = new ArrayList<>(settings.getBatchSize());
+        Query query = new Query().with(Sort.by(Sort.Direction.ASC, "_id")).cursorBatchSize(settings.getBatchSize());
+        try (Stream<User> users = mongoOperations.stream(query, User.class)) {
+            for (User user : (Iterable<User>) users::iterator) {
+                batch.add(user);
+                if (batch.size() == settings.getBatchSize()) {
+                    count += fill(batch);
+                }
+            }
+        }
+        count += fill(batch);
+
+        redisTemplate.opsForValue().set(READY_KEY, String.valueOf(System.currentTimeMillis()));
+        redisTemplate.unlink(TOMBSTONES_KEY);
+        log.info("Built user list view with {} user(s) in {} ms", count, System.currentTimeMillis() - started);
+    }
+
+    private long fill(List<User> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        Long added = run(FILL, List.of(INDEX_KEY, DATA_KEY, TOMBSTONES_KEY, VERSIONS_KEY), entries(batch));
+        batch.clear();
+        redisTemplate.expire(BUILDING_KEY, settings.getLockTtl());
+        return added != null ? added : 0;
+    }
+
+    // Without the ready marker pages come from Mongo until the view is rebuilt from scratch
+    private void stale(DataAccessException ex) {
+        log.warn("Patching the user list view failed, invalidating it: {}", ex.getMessage());
+        if (breaker.onFailure(ex)) {
+            breaker.markDirty(READY_KEY);
+            return;
+        }
+        invalidate();
+    }
+
+    // Script arguments for UPSERT and FILL: ID, version and serialized user of each user in turn.
+    // Users written before versioning count as version -1.
+    Object[] entries(Collection<User> users) {
+        Object[] args = new Object[users.size() * 3];
+        int i = 0;
+        for (User user : users) {
+            args[i++] = bytes(String.valueOf(user.getId()));
+            args[i++] = bytes(String.valueOf(user.getVersion() != null ? user.getVersion() : -1));
+            args[i++] = serializer.serialize(user);
+        }
+        return args;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T run(RedisScript<T> script, List<String> keys, Object... args) {
+        RedisSerializer<byte[]> raw = RedisSerializer.byteArray();
+        return redisTemplate.execute(script, raw, (RedisSerializer<T>) (RedisSerializer<?>) raw, keys, args);
+    }
+
+    static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.spring_boot_mongodb_redis.service;
+
+import com.example.spring_boot_mongodb_redis.model.User;
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * The {@code ?fields=} subset of a user. Field sets are normalized (sorted, deduplicated) so that
+ * the same projection always maps to the same cache key, and they are pushed down to Mongo as a
+ * projection where Mongo serves the read. Cached users stay complete and are trimmed when written.
+ * <p>
+ * The password is never part of a response: it is not projectable, and {@link Representation}
+ * leaves it out of the full user the MVC mapper writes. Cache serializers use mappers of their
+ * own, so cached and queued users keep it.
+ */
+@Component
+public class UserProjection {
+
+    private static final String FILTER = "userProjection";
+    private static final Set<String> FIELDS = Arrays.stream(User.class.getDeclaredFields())
+            .filter(field -> !Modifier.isStatic(field.getModifiers()))
+            .map(Field::getName)
+            .filter(name -> !name.equals("password"))
+            .collect(Collectors.toUnmodifiableSet());
+
+    private final ObjectMapper mapper;
+
+    public UserProjection(ObjectMapper objectMapper) {
+        // A copy, so users written anywhere else keep all their fields
+        this.mapper = objectMapper.copy().addMixIn(User.class, Filtered.class);
+    }
+
+    // Null when no projection was asked for
+    public SortedSet<String> parse(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return null;
+        }
+        SortedSet<String> projection = new TreeSet<>();
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (!FIELDS.contains(name)) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "Unknown field '" + name + "', expected some of " + new TreeSet<>(FIELDS));
+            }
+            projection.add(name);
+        }
+        return projection;
+    }
+
+    public static String key(SortedSet<String> projection) {
+        return String.join(",", projection);
+    }
+
+    // Mongo still returns _id, which paging needs for the next cursor
+    public static Query include(Query query, SortedSet<String> projection) {
+        if (projection != null) {
+            projection.forEach(field -> query.fields().include(field));
+        }
+        return query;
+    }
+
+    // Writes only the projected fields of every user in the value, at any depth
+    public ObjectWriter writer(Class<?> type, SortedSet<String> projection) {
+        return mapper.writerFor(type).with(new SimpleFilterProvider()
+                .addFilter(FILTER, SimpleBeanPropertyFilter.filterOutAllExcept(projection)));
+    }
+
+    // Mixed into the MVC mapper for User: a password is still read from request bodies, but never written
+    @JsonIgnoreProperties(value = "password", allowSetters = true)
+    public interface Representation {
+    }
+
+    // Replaces Representation on the copy, so it has to carry it along
+    @JsonFilter(FILTER)
+    private interface Filtered extends Representation {
+    }
+}
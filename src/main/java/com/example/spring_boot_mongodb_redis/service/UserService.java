@@ -1,94 +1,701 @@
 package com.example.spring_boot_mongodb_redis.service;
 
+import com.example.spring_boot_mongodb_redis.cache.RedisCacheBatchOperations;
 import com.example.spring_boot_mongodb_redis.config.SequenceGeneratorService;
+import com.example.spring_boot_mongodb_redis.model.BatchItemResult;
 import com.example.spring_boot_mongodb_redis.model.User;
+import com.example.spring_boot_mongodb_redis.model.UserLookupResult;
+import com.example.spring_boot_mongodb_redis.model.UserPage;
 import com.example.spring_boot_mongodb_redis.repository.UserRepository;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.result.DeleteResult;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
-import org.springframework.cache.annotation.Caching;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
 public class UserService {
 
+    public static final String USER_SEQUENCE = "user_sequence";
+    private static final String USERS_CACHE = "users";
+    private static final String MISSING_USERS_CACHE = "users_missing";
+    private static final String USERS_BY_EMAIL_CACHE = "users_by_email";
+    private static final String USERS_BY_USERNAME_CACHE = "users_by_username";
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int STREAM_BATCH_SIZE = 500;
+    private static final int WRITE_BEHIND_ATTEMPTS = 3;
+
     private final UserRepository repository;
     private final SequenceGeneratorService sequenceGenerator;
+    private final MongoOperations mongoOperations;
+    private final RedisCacheBatchOperations cacheBatchOperations;
+    private final CacheManager cacheManager;
+    private final UserIdFilter userIdFilter;
+    private final UserListView userListView;
+    private final UserWriteBehind writeBehind;
 
-    public UserService(UserRepository repository, SequenceGeneratorService sequenceGenerator) {
+    public UserService(UserRepository repository,
+                       SequenceGeneratorService sequenceGenerator,
+                       MongoOperations mongoOperations,
+                       RedisCacheBatchOperations cacheBatchOperations,
+                       CacheManager cacheManager,
+                       UserIdFilter userIdFilter,
+                       UserListView userListView,
+                       UserWriteBehind writeBehind) {
         this.repository = repository;
         this.sequenceGenerator = sequenceGenerator;
+        this.mongoOperations = mongoOperations;
+        this.cacheBatchOperations = cacheBatchOperations;
+        this.cacheManager = cacheManager;
+        this.userIdFilter = userIdFilter;
+        this.userListView = userListView;
+        this.writeBehind = writeBehind;
+    }
+
+    // Served from the Redis list view that writes patch in place; Mongo only answers until the view is built
+    public UserPage getPage(Long after, int limit) {
+        return getPage(after, limit, null);
+    }
+
+    // A projection only narrows what Mongo returns; the list view holds whole users and is trimmed on output
+    public UserPage getPage(Long after, int limit, SortedSet<String> projection) {
+        checkPageLimit(limit);
+        List<User> users = userListView.page(after, limit);
+        if (users == null) {
+            log.debug("Fetching users page after ID {} (limit {}) from database", after, limit);
+            Query query = after != null ? Query.query(Criteria.where("_id").gt(after)) : new Query();
+            query.with(Sort.by(Sort.Direction.ASC, "_id")).limit(limit);
+            users = mongoOperations.find(UserProjection.include(query, projection), User.class);
+        }
+        return page(users, limit);
+    }
+
+    static void checkPageLimit(int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
     }
 
-    @Cacheable(value = "all_users", key = "'getAllUsers'")
-    public List<User> getAll() {
-        log.info("Fetching all users from database");
-        return repository.findAll();
+    static UserPage page(List<User> users, int limit) {
+        Long nextAfter = users.size() == limit ? users.get(users.size() - 1).getId() : null;
+        return UserPage.builder().users(users).nextAfter(nextAfter).build();
     }
 
-    @Cacheable(value = "users", key = "#id", unless = "#result == null")
+    // Reads the collection through a cursor so a full export never holds more than one batch in memory
+    public void streamAll(Consumer<User> consumer) {
+        log.info("Streaming all users from database");
+        Query query = new Query().with(Sort.by(Sort.Direction.ASC, "_id")).cursorBatchSize(STREAM_BATCH_SIZE);
+        try (Stream<User> users = mongoOperations.stream(query, User.class)) {
+            users.forEach(consumer);
+        }
+    }
+
+    // IDs the filter rules out skip the cache entirely; known-missing IDs are answered from users_missing
+    @Cacheable(value = "users", key = "#id", sync = true, condition = "@userIdFilter.mightContain(#id)")
     public User getById(Long id) {
-        log.info("Attempting to fetch user with ID: {}", id);
+        if (!userIdFilter.mightContain(id) || isKnownMissing(id)) {
+            throw userNotFound(id);
+        }
+        log.debug("Attempting to fetch user with ID: {}", id);
+        // With write-behind, Mongo may not have the latest write yet
+        if (writeBehind.isEnabled()) {
+            UserWriteBehind.Pending pending = writeBehind.pending(id);
+            if (pending != null) {
+                if (pending.deleted()) {
+                    throw userNotFound(id);
+                }
+                return pending.user();
+            }
+        }
         return repository.findById(id)
                 .orElseThrow(() -> {
-                    String message = "User not found with ID: " + id;
-                    log.warn(message);
-                    return new ResponseStatusException(HttpStatus.NOT_FOUND, message);
+                    rememberMissing(List.of(id));
+                    return userNotFound(id);
                 });
     }
 
+    public User getByEmail(String email) {
+        return getByUniqueKey(USERS_BY_EMAIL_CACHE, "email", email, User::getEmail, repository::findByEmail);
+    }
+
+    public User getByUsername(String username) {
+        return getByUniqueKey(USERS_BY_USERNAME_CACHE, "username", username, User::getUsername, repository::findByUsername);
+    }
+
+    // The key cache only maps the value to an ID, and the user comes from its users entry. A mapping
+    // left behind by a changed or deleted user is caught by comparing the field, and replaced from Mongo.
+    private User getByUniqueKey(String cacheName, String field, String value,
+                                Function<User, String> getter, Function<String, Optional<User>> finder) {
+        Cache ids = cacheManager.getCache(cacheName);
+        Cache.ValueWrapper cached = ids != null ? ids.get(value) : null;
+        if (cached != null && cached.get() instanceof Number id) {
+            User user = cachedUser(id.longValue());
+            if (user != null && value.equals(getter.apply(user))) {
+                return user;
+            }
+            ids.evict(value);
+        }
+
+        log.debug("Looking up user by {} in database", field);
+        User user = finder.apply(value).orElse(null);
+        if (user != null && writeBehind.isEnabled()) {
+            UserWriteBehind.Pending pending = writeBehind.pending(user.getId());
+            if (pending != null) {
+                user = !pending.deleted() && value.equals(getter.apply(pending.user())) ? pending.user() : null;
+            }
+        }
+        if (user == null) {
+            log.debug("User not found with {}: {}", field, value);
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found with " + field + ": " + value);
+        }
+        Cache users = cacheManager.getCache(USERS_CACHE);
+        if (users != null) {
+            users.put(user.getId(), user);
+        }
+        if (ids != null) {
+            ids.put(value, user.getId());
+        }
+        return user;
+    }
+
+    // Cached entries come from one MGET, the rest from one $in query, and those are written back in one pipeline
+    public UserLookupResult getByIds(List<Long> ids) {
+        List<Long> uniqueIds = ids.stream().filter(Objects::nonNull).distinct().toList();
+        if (uniqueIds.size() > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "at most " + MAX_PAGE_SIZE + " ids per lookup");
+        }
+        List<Long> candidateIds = uniqueIds.stream().filter(userIdFilter::mightContain).toList();
+
+        Map<Long, User> users = new HashMap<>();
+        cacheBatchOperations.getAll(USERS_CACHE, candidateIds).forEach((key, value) -> users.put((Long) key, (User) value));
+
+        List<Long> missingIds = candidateIds.stream().filter(id -> !users.containsKey(id)).toList();
+        if (!missingIds.isEmpty() && writeBehind.isEnabled()) {
+            Map<Long, UserWriteBehind.Pending> pending = writeBehind.pending(missingIds);
+            pending.forEach((id, write) -> {
+                if (!write.deleted()) {
+                    users.put(id, write.user());
+                }
+            });
+            missingIds = missingIds.stream().filter(id -> !pending.containsKey(id)).toList();
+        }
+        if (!missingIds.isEmpty()) {
+            log.debug("Fetching {} of {} requested users from database", missingIds.size(), uniqueIds.size());
+            Map<Long, User> loaded = new LinkedHashMap<>();
+            repository.findAllById(missingIds).forEach(user -> loaded.put(user.getId(), user));
+            cacheBatchOperations.putAll(USERS_CACHE, loaded);
+            users.putAll(loaded);
+            rememberMissing(missingIds.stream().filter(id -> !loaded.containsKey(id)).toList());
+        }
+
+        List<User> found = new ArrayList<>(users.size());
+        List<Long> notFound = new ArrayList<>();
+        for (Long id : uniqueIds) {
+            User user = users.get(id);
+            if (user != null) {
+                found.add(user);
+            } else {
+                notFound.add(id);
+            }
+        }
+        return UserLookupResult.builder().users(found).notFound(notFound).build();
+    }
+
     @CachePut(value = "users", key = "#result.id")
-    @CacheEvict(value = "all_users", allEntries = true)
     public User create(User user) {
-        log.info("Creating new user with data: {}", user);
-        user.setId(sequenceGenerator.generateSequence("user_sequence"));
-        return repository.save(user);
+        log.debug("Creating new user with data: {}", user);
+        user.setId(sequenceGenerator.generateSequence(USER_SEQUENCE));
+        user.setVersion(0L);
+        User saved = user;
+        if (writeBehind.isEnabled()) {
+            checkUnique(user, null);
+            writeBehind.save(user, null);
+        } else {
+            try {
+                saved = repository.save(user);
+            } catch (DuplicateKeyException e) {
+                throw duplicateUser(e);
+            }
+        }
+        forgetMissing(List.of(saved.getId()));
+        userListView.upsert(saved);
+        return saved;
     }
 
+    // Replaces every field; fields missing from the body are removed
     @CachePut(value = "users", key = "#id")
-    @CacheEvict(value = "all_users", allEntries = true)
     public User update(Long id, User userDetails) {
-        log.info("Updating user with ID: {}", id);
-        User user = repository.findById(id)
-                .orElseThrow(() -> {
-                    String message = "User not found with ID: " + id;
-                    log.warn(message);
-                    return new ResponseStatusException(HttpStatus.NOT_FOUND, message);
-                });
-
-        user.setFirstName(userDetails.getFirstName());
-        user.setLastName(userDetails.getLastName());
-        user.setMaidenName(userDetails.getMaidenName());
-        user.setGender(userDetails.getGender());
-        user.setEmail(userDetails.getEmail());
-        user.setPhone(userDetails.getPhone());
-        user.setUsername(userDetails.getUsername());
-        user.setPassword(userDetails.getPassword());
-        user.setBirthDate(userDetails.getBirthDate());
+        log.debug("Updating user with ID: {}", id);
+        return modify(id, userDetails, false);
+    }
 
-        return repository.save(user);
+    @CachePut(value = "users", key = "#id")
+    public User patch(Long id, User changes) {
+        log.debug("Patching user with ID: {}", id);
+        return modify(id, changes, true);
     }
 
-    @Caching(evict = {
-            @CacheEvict(value = "users", key = "#id"),
-            @CacheEvict(value = "all_users", allEntries = true)
-    })
+    // One deleteOne; the eviction only runs when it removed something, since a miss throws first
+    @CacheEvict(value = "users", key = "#id")
     public void delete(Long id) {
-        log.info("Deleting user with ID: {}", id);
-        if (repository.existsById(id)) {
-            repository.deleteById(id);
-            log.info("User with ID {} deleted successfully", id);
+        log.debug("Deleting user with ID: {}", id);
+        if (writeBehind.isEnabled()) {
+            deleteWriteBehind(id);
         } else {
-            String message = "User not found with ID: " + id;
-            log.warn(message);
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, message);
+            DeleteResult result = mongoOperations.remove(Query.query(Criteria.where("_id").is(id)), User.class);
+            if (result.getDeletedCount() == 0) {
+                String message = "User not found with ID: " + id;
+                log.warn(message);
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, message);
+            }
+        }
+        rememberMissing(List.of(id));
+        userListView.remove(id);
+        log.debug("User with ID {} deleted successfully", id);
+    }
+
+    public List<BatchItemResult> createAll(List<User> users) {
+        log.debug("Creating {} users in batch", users.size());
+        checkBatchSize(users.size());
+        if (users.isEmpty()) {
+            return List.of();
+        }
+
+        long firstId = sequenceGenerator.generateSequenceRange(USER_SEQUENCE, users.size());
+        for (int i = 0; i < users.size(); i++) {
+            users.get(i).setId(firstId + i);
+            users.get(i).setVersion(0L);
+        }
+
+        BulkOperations bulk = mongoOperations.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+        bulk.insert(users);
+        Map<Integer, String> errors = executeBulk(bulk).errors();
+
+        List<BatchItemResult> results = new ArrayList<>(users.size());
+        Map<Long, User> created = new LinkedHashMap<>();
+        for (int i = 0; i < users.size(); i++) {
+            User user = users.get(i);
+            if (errors.containsKey(i)) {
+                results.add(failed(i, user.getId(), errors.get(i)));
+            } else {
+                results.add(succeeded(i, BatchItemResult.Status.CREATED, user));
+                created.put(user.getId(), user);
+            }
+        }
+        cacheBatchOperations.putAll(USERS_CACHE, created);
+        forgetMissing(created.keySet());
+        userListView.upsertAll(created.values());
+        return results;
+    }
+
+    // Batches write to Mongo directly, so pending single-user writes are flushed first and their copies dropped after.
+    // Each replacement only matches the version read here, so a concurrent update makes it a CONFLICT, not an overwrite.
+    public List<BatchItemResult> updateAll(List<User> users) {
+        log.debug("Updating {} users in batch", users.size());
+        checkBatchSize(users.size());
+        writeBehind.flush();
+        Map<Long, Long> versions = findVersions(users.stream().map(User::getId).toList());
+
+        BulkOperations bulk = mongoOperations.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+        BatchItemResult[] results = new BatchItemResult[users.size()];
+        List<Integer> operations = new ArrayList<>();
+        Set<Long> batchIds = new HashSet<>();
+        for (int i = 0; i < users.size(); i++) {
+            User user = users.get(i);
+            if (user.getId() == null) {
+                results[i] = failed(i, null, "User ID is required");
+            } else if (!batchIds.add(user.getId())) {
+                results[i] = failed(i, user.getId(), "User ID " + user.getId() + " appears more than once in the batch");
+            } else if (!versions.containsKey(user.getId())) {
+                results[i] = notFound(i, user.getId());
+            } else if (user.getVersion() != null && !user.getVersion().equals(versions.get(user.getId()))) {
+                results[i] = conflict(i, user.getId(), user.getVersion());
+            } else {
+                Long current = versions.get(user.getId());
+                user.setVersion(current != null ? current + 1 : 1);
+                // A null version also matches documents written before versioning, which have no field
+                bulk.replaceOne(Query.query(Criteria.where("_id").is(user.getId()).and("version").is(current)), user);
+                operations.add(i);
+            }
+        }
+        if (operations.isEmpty()) {
+            return List.of(results);
+        }
+
+        BulkOutcome outcome = executeBulk(bulk);
+        Map<Long, User> updated = new LinkedHashMap<>();
+        for (int op = 0; op < operations.size(); op++) {
+            int i = operations.get(op);
+            User user = users.get(i);
+            if (outcome.errors().containsKey(op)) {
+                results[i] = failed(i, user.getId(), outcome.errors().get(op));
+            } else {
+                updated.put(user.getId(), user);
+            }
+        }
+        if (outcome.matched() < updated.size()) {
+            Map<Long, User> stored = new HashMap<>();
+            findAll(updated.keySet()).forEach(user -> stored.put(user.getId(), user));
+            for (int i : operations) {
+                User user = users.get(i);
+                if (updated.containsKey(user.getId()) && !user.equals(stored.get(user.getId()))) {
+                    updated.remove(user.getId());
+                    results[i] = stored.containsKey(user.getId())
+                            ? conflict(i, user.getId(), versions.get(user.getId()))
+                            : notFound(i, user.getId());
+                }
+            }
+        }
+        for (int i : operations) {
+            if (results[i] == null) {
+                results[i] = succeeded(i, BatchItemResult.Status.UPDATED, users.get(i));
+            }
+        }
+        cacheBatchOperations.putAll(USERS_CACHE, updated);
+        writeBehind.forget(updated.keySet());
+        userListView.upsertAll(updated.values());
+        return List.of(results);
+    }
+
+    public List<BatchItemResult> deleteAll(List<Long> ids) {
+        log.debug("Deleting {} users in batch", ids.size());
+        checkBatchSize(ids.size());
+        writeBehind.flush();
+        Set<Long> existing = findVersions(ids).keySet();
+
+        BulkOperations bulk = mongoOperations.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+        BatchItemResult[] results = new BatchItemResult[ids.size()];
+        List<Integer> operations = new ArrayList<>();
+        Set<Long> batchIds = new HashSet<>();
+        for (int i = 0; i < ids.size(); i++) {
+            Long id = ids.get(i);
+            if (id == null) {
+                results[i] = failed(i, null, "User ID is required");
+            } else if (!batchIds.add(id)) {
+                results[i] = failed(i, id, "User ID " + id + " appears more than once in the batch");
+            } else if (!existing.contains(id)) {
+                results[i] = notFound(i, id);
+            } else {
+                bulk.remove(Query.query(Criteria.where("_id").is(id)));
+                operations.add(i);
+            }
+        }
+        if (operations.isEmpty()) {
+            return List.of(results);
+        }
+
+        Map<Integer, String> errors = executeBulk(bulk).errors();
+        List<Long> deleted = new ArrayList<>();
+        for (int op = 0; op < operations.size(); op++) {
+            int i = operations.get(op);
+            if (errors.containsKey(op)) {
+                results[i] = failed(i, ids.get(i), errors.get(op));
+            } else {
+                results[i] = BatchItemResult.builder().index(i).id(ids.get(i)).status(BatchItemResult.Status.DELETED).build();
+                deleted.add(ids.get(i));
+            }
+        }
+        cacheBatchOperations.evictAll(USERS_CACHE, deleted);
+        writeBehind.forget(deleted);
+        rememberMissing(deleted);
+        userListView.removeAll(deleted);
+        return List.of(results);
+    }
+
+    private static void checkBatchSize(int size) {
+        if (size > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "at most " + MAX_PAGE_SIZE + " users per batch");
+        }
+    }
+
+    // A single findAndModify: $set of the given fields plus a version bump, returning the new document.
+    // With an expected version the write only matches that version, so a lost update is a 409, not an overwrite.
+    private User modify(Long id, User changes, boolean partial) {
+        User updated = writeBehind.isEnabled()
+                ? modifyWriteBehind(id, changes, partial)
+                : modifyInDatabase(id, changes, partial);
+        userListView.upsert(updated);
+        return updated;
+    }
+
+    private User modifyInDatabase(Long id, User changes, boolean partial) {
+        Query query = Query.query(Criteria.where("_id").is(id));
+        if (changes.getVersion() != null) {
+            query.addCriteria(Criteria.where("version").is(changes.getVersion()));
+        }
+        Update update = userUpdate(changes, partial);
+
+        User updated;
+        try {
+            updated = mongoOperations.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), User.class);
+        } catch (DuplicateKeyException e) {
+            throw duplicateUser(e);
+        }
+        if (updated == null) {
+            throw modifyFailed(id, changes.getVersion());
+        }
+        return updated;
+    }
+
+    // The same change applied to the newest copy (pending write, cache, then Mongo). Without an expected
+    // version, losing a race to another write is retried on top of it, so the last write still wins.
+    private User modifyWriteBehind(Long id, User changes, boolean partial) {
+        for (int attempt = 1; ; attempt++) {
+            User current = currentUser(id);
+            if (changes.getVersion() != null && !changes.getVersion().equals(current.getVersion())) {
+                throw concurrentModification(id, changes.getVersion());
+            }
+            User updated = applyUpdate(current, changes, partial);
+            checkUnique(updated, current);
+            if (writeBehind.save(updated, current.getVersion())) {
+                return updated;
+            }
+            if (changes.getVersion() != null || attempt == WRITE_BEHIND_ATTEMPTS) {
+                throw concurrentModification(id, changes.getVersion());
+            }
+        }
+    }
+
+    private void deleteWriteBehind(Long id) {
+        for (int attempt = 1; ; attempt++) {
+            User current = currentUser(id);
+            if (writeBehind.delete(id, current.getVersion())) {
+                return;
+            }
+            if (attempt == WRITE_BEHIND_ATTEMPTS) {
+                throw concurrentModification(id, null);
+            }
+        }
+    }
+
+    private User currentUser(Long id) {
+        UserWriteBehind.Pending pending = writeBehind.pending(id);
+        if (pending != null) {
+            if (pending.deleted()) {
+                throw userNotFound(id);
+            }
+            return pending.user();
+        }
+        Cache users = cacheManager.getCache(USERS_CACHE);
+        Cache.ValueWrapper cached = users != null ? users.get(id) : null;
+        if (cached != null && cached.get() instanceof User user) {
+            return user;
+        }
+        return repository.findById(id).orElseThrow(() -> userNotFound(id));
+    }
+
+    // Newest copy without going to Mongo: the pending write, then the users cache
+    private User cachedUser(Long id) {
+        if (writeBehind.isEnabled()) {
+            UserWriteBehind.Pending pending = writeBehind.pending(id);
+            if (pending != null) {
+                return pending.deleted() ? null : pending.user();
+            }
+        }
+        Cache users = cacheManager.getCache(USERS_CACHE);
+        Cache.ValueWrapper cached = users != null ? users.get(id) : null;
+        return cached != null && cached.get() instanceof User user ? user : null;
+    }
+
+    // $set of the request fields plus a version bump; PUT also unsets the fields the request leaves out
+    static Update userUpdate(User changes, boolean partial) {
+        Update update = new Update();
+        setField(update, "firstName", changes.getFirstName(), partial);
+        setField(update, "lastName", changes.getLastName(), partial);
+        setField(update, "maidenName", changes.getMaidenName(), partial);
+        setField(update, "gender", changes.getGender(), partial);
+        setField(update, "email", changes.getEmail(), partial);
+        setField(update, "phone", changes.getPhone(), partial);
+        setField(update, "username", changes.getUsername(), partial);
+        setField(update, "password", changes.getPassword(), partial);
+        setField(update, "birthDate", changes.getBirthDate(), partial);
+        return update.inc("version", 1);
+    }
+
+    // In-memory counterpart of userUpdate for write-behind, where there is no stored document to update
+    static User applyUpdate(User current, User changes, boolean partial) {
+        return User.builder()
+                .id(current.getId())
+                .firstName(field(current.getFirstName(), changes.getFirstName(), partial))
+                .lastName(field(current.getLastName(), changes.getLastName(), partial))
+                .maidenName(field(current.getMaidenName(), changes.getMaidenName(), partial))
+                .gender(field(current.getGender(), changes.getGender(), partial))
+                .email(field(current.getEmail(), changes.getEmail(), partial))
+                .phone(field(current.getPhone(), changes.getPhone(), partial))
+                .username(field(current.getUsername(), changes.getUsername(), partial))
+                .password(field(current.getPassword(), changes.getPassword(), partial))
+                .birthDate(field(current.getBirthDate(), changes.getBirthDate(), partial))
+                .version(current.getVersion() != null ? current.getVersion() + 1 : 1)
+                .build();
+    }
+
+    private static <T> T field(T current, T change, boolean partial) {
+        return change != null || !partial ? change : current;
+    }
+
+    private static void setField(Update update, String field, Object value, boolean partial) {
+        if (value != null) {
+            update.set(field, value);
+        } else if (!partial) {
+            update.unset(field);
+        }
+    }
+
+    // Only a failed conditional write needs the extra read to tell a conflict from a missing user
+    private ResponseStatusException modifyFailed(Long id, Long expectedVersion) {
+        if (expectedVersion != null && repository.existsById(id)) {
+            return concurrentModification(id, expectedVersion);
+        }
+        String message = "User not found with ID: " + id;
+        log.warn(message);
+        return new ResponseStatusException(HttpStatus.NOT_FOUND, message);
+    }
+
+    // Write-behind reaches the unique indexes only when it flushes, after the request has returned, so an email
+    // or username already in Mongo is rejected up front. Two pending writes racing for one value still pass;
+    // the flusher then drops the later one.
+    private void checkUnique(User user, User current) {
+        List<Criteria> keys = new ArrayList<>(2);
+        if (user.getEmail() != null && (current == null || !user.getEmail().equals(current.getEmail()))) {
+            keys.add(Criteria.where("email").is(user.getEmail()));
         }
+        if (user.getUsername() != null && (current == null || !user.getUsername().equals(current.getUsername()))) {
+            keys.add(Criteria.where("username").is(user.getUsername()));
+        }
+        if (keys.isEmpty()) {
+            return;
+        }
+        Query taken = Query.query(new Criteria().andOperator(
+                Criteria.where("_id").ne(user.getId()), new Criteria().orOperator(keys)));
+        if (mongoOperations.exists(taken, User.class)) {
+            throw duplicateUser("user " + user.getId() + " would share an email or username with another user");
+        }
+    }
+
+    // Thrown by the unique email and username indexes
+    private static ResponseStatusException duplicateUser(DuplicateKeyException e) {
+        return duplicateUser(e.getMessage());
+    }
+
+    private static ResponseStatusException duplicateUser(String detail) {
+        log.warn("Rejected a duplicate email or username: {}", detail);
+        return new ResponseStatusException(HttpStatus.CONFLICT, "A user with this email or username already exists");
+    }
+
+    private static ResponseStatusException concurrentModification(Long id, Long expectedVersion) {
+        String message = "User with ID " + id + " was modified concurrently"
+                + (expectedVersion != null ? ", expected version " + expectedVersion : "");
+        log.warn(message);
+        return new ResponseStatusException(HttpStatus.CONFLICT, message);
+    }
+
+    private boolean isKnownMissing(Long id) {
+        Cache missing = cacheManager.getCache(MISSING_USERS_CACHE);
+        return missing != null && missing.get(id) != null;
+    }
+
+    // Short-lived negative entries so repeated lookups of absent IDs stop reaching Mongo
+    private void rememberMissing(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        Map<Long, Boolean> entries = new LinkedHashMap<>();
+        ids.forEach(id -> entries.put(id, Boolean.TRUE));
+        cacheBatchOperations.putAll(MISSING_USERS_CACHE, entries);
+    }
+
+    // New IDs may have been probed before they existed
+    private void forgetMissing(Collection<Long> ids) {
+        cacheBatchOperations.evictAll(MISSING_USERS_CACHE, ids);
+        userIdFilter.addAll(ids);
+    }
+
+    private static ResponseStatusException userNotFound(Long id) {
+        log.debug("User not found with ID: {}", id);
+        return new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found with ID: " + id);
     }
 
+    // Current version of each existing user, null for documents written before versioning
+    private Map<Long, Long> findVersions(Collection<Long> ids) {
+        List<Long> candidates = ids.stream().filter(Objects::nonNull).distinct().toList();
+        if (candidates.isEmpty()) {
+            return Map.of();
+        }
+        Query query = Query.query(Criteria.where("_id").in(candidates));
+        query.fields().include("_id").include("version");
+        Map<Long, Long> versions = new HashMap<>();
+        mongoOperations.find(query, User.class).forEach(user -> versions.put(user.getId(), user.getVersion()));
+        return versions;
+    }
+
+    // Mongo reports which replacements matched nothing only as a count, so a shortfall rereads the users.
+    // A stored document equal to the one written means this batch wrote it.
+    private List<User> findAll(Collection<Long> ids) {
+        return mongoOperations.find(Query.query(Criteria.where("_id").in(ids)), User.class);
+    }
+
+    // The write errors of an unordered bulk keyed by operation index, and how many updates matched a document
+    private BulkOutcome executeBulk(BulkOperations bulk) {
+        try {
+            return new BulkOutcome(Map.of(), bulk.execute().getMatchedCount());
+        } catch (BulkOperationException e) {
+            log.warn("Bulk write completed with {} error(s)", e.getErrors().size());
+            return new BulkOutcome(e.getErrors().stream()
+                    .collect(Collectors.toMap(BulkWriteError::getIndex, BulkWriteError::getMessage, (first, second) -> first)),
+                    e.getResult().getMatchedCount());
+        }
+    }
+
+    private record BulkOutcome(Map<Integer, String> errors, int matched) {
+    }
+
+    private static BatchItemResult succeeded(int index, BatchItemResult.Status status, User user) {
+        return BatchItemResult.builder().index(index).id(user.getId()).status(status).user(user).build();
+    }
+
+    private static BatchItemResult notFound(int index, Long id) {
+        return BatchItemResult.builder().index(index).id(id).status(BatchItemResult.Status.NOT_FOUND)
+                .error("User not found with ID: " + id).build();
+    }
+
+    private static BatchItemResult conflict(int index, Long id, Long expectedVersion) {
+        return BatchItemResult.builder().index(index).id(id).status(BatchItemResult.Status.CONFLICT)
+                .error("User with ID " + id + " was modified concurrently, expected version " + expectedVersion).build();
+    }
+
+    private static BatchItemResult failed(int index, Long id, String error) {
+        return BatchItemResult.builder().index(index).id(id).status(BatchItemResult.Status.FAILED).error(error).build();
+    }
 }
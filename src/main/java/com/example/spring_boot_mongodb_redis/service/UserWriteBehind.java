@@ -0,0 +1,530 @@
+package com.example.spring_boot_mongodb_redis.service;
+
+import com.example.spring_boot_mongodb_redis.cache.CacheSerializers;
+import com.example.spring_boot_mongodb_redis.config.BackgroundThreads;
+import com.example.spring_boot_mongodb_redis.config.CacheProperties;
+import com.example.spring_boot_mongodb_redis.model.User;
+import com.mongodb.bulk.BulkWriteError;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Range;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind for single-user writes. A write replaces the user's pending copy in Redis and
+ * appends it to a stream in one script, and the request returns without waiting for Mongo. A
+ * background flusher reads the stream through a consumer group, keeps only the newest write of
+ * each user in a batch and applies the batch as one ordered bulk write.
+ * <p>
+ * Every entry carries the user's version and Mongo only takes a write over an older version,
+ * so entries replayed after a crash or a failed flush, or flushed out of order by two nodes,
+ * never overwrite newer data. Entries stay in the group's pending list until Mongo has them;
+ * ones left unacknowledged for claim-idle are claimed by a live flusher and written again.
+ * Reads that miss the cache check the pending copy before Mongo, and concurrent writes to one
+ * user use its version as a compare-and-set base.
+ */
+@Slf4j
+@Component
+public class UserWriteBehind {
+
+    private static final String USERS_CACHE = "users";
+    // Hash tag keeps the stream and the pending copies in one cluster slot, so one script writes both
+    private static final String PREFIX = "{users:write-behind}:";
+    static final String STREAM_KEY = PREFIX + "stream";
+    private static final byte[] STREAM = bytes(STREAM_KEY);
+    private static final String GROUP = "mongo-flusher";
+    private static final String UPSERT = "upsert";
+    private static final String DELETE = "delete";
+    private static final byte[] VERSION_FIELD = bytes("version");
+    private static final byte[] OP_FIELD = bytes("op");
+    private static final byte[] USER_FIELD = bytes("user");
+    private static final int DUPLICATE_KEY = 11000;
+
+    // Fails when another write replaced the pending copy after the caller read its base version
+    private static final RedisScript<Long> RECORD = RedisScript.of("""
+            local current = redis.call('HGET', KEYS[1], 'version')
+            if current and current ~= ARGV[1] then return 0 end
+            redis.call('DEL', KEYS[1])
+            redis.call('HSET', KEYS[1], 'version', ARGV[2], 'op', ARGV[4], 'user', ARGV[5])
+            redis.call('XADD', KEYS[2], '*', 'id', ARGV[3], 'version', ARGV[2], 'op', ARGV[4], 'user', ARGV[5])
+            return 1
+            """, Long.class);
+
+    // Acknowledges flushed entries; a pending copy that was not rewritten meanwhile expires after its TTL.
+    // ARGV is the group, a version and TTL per copy, then the record IDs. A TTL of 0 deletes the copy.
+    private static final RedisScript<Long> FLUSHED = RedisScript.of("""
+            local copies = #KEYS - 1
+            for i = 1, copies do
+              if redis.call('HGET', KEYS[i + 1], 'version') == ARGV[2 * i] then
+                redis.call('PEXPIRE', KEYS[i + 1], ARGV[2 * i + 1])
+              end
+            end
+            for i = 2 * copies + 2, #ARGV do
+              redis.call('XACK', KEYS[1], ARGV[1], ARGV[i])
+              redis.call('XDEL', KEYS[1], ARGV[i])
+            end
+            return #ARGV - 2 * copies - 1
+            """, Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final MongoOperations mongoOperations;
+    private final CacheManager cacheManager;
+    private final CacheProperties.WriteBehind settings;
+    private final RedisSerializer<Object> serializer;
+    private final boolean enabled;
+    private final String consumer = ManagementFactory.getRuntimeMXBean().getName();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final ScheduledExecutorService flusher;
+    private final AtomicLong backlog = new AtomicLong();
+    private final AtomicLong lagMillis = new AtomicLong();
+    private final Counter recorded;
+    private final Counter flushed;
+    private final Counter coalesced;
+    private final Counter stale;
+    private final Counter rejected;
+    private final Counter failures;
+    private final Timer flushTimer;
+    private volatile boolean groupReady;
+    private boolean failing;
+
+    public UserWriteBehind(StringRedisTemplate redisTemplate,
+                           MongoOperations mongoOperations,
+                           CacheManager cacheManager,
+                           CacheProperties cacheProperties,
+                           BackgroundThreads backgroundThreads,
+                           MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.mongoOperations = mongoOperations;
+        this.cacheManager = cacheManager;
+        this.settings = cacheProperties.getWriteBehind();
+        this.serializer = CacheSerializers.create(cacheProperties.getSerializer());
+        this.enabled = cacheProperties.isEnabled() && settings.isEnabled();
+
+        this.recorded = Counter.builder("app.write-behind.recorded")
+                .description("Writes recorded in the stream").register(meterRegistry);
+        this.flushed = Counter.builder("app.write-behind.flushed")
+                .description("Writes applied to the database after coalescing").register(meterRegistry);
+        this.coalesced = Counter.builder("app.write-behind.coalesced")
+                .description("Writes superseded by a newer write to the same user in the same batch").register(meterRegistry);
+        this.stale = Counter.builder("app.write-behind.stale")
+                .description("Writes skipped because the database already had a newer version").register(meterRegistry);
+        this.rejected = Counter.builder("app.write-behind.rejected")
+                .description("Writes the database refused for a duplicate email or username").register(meterRegistry);
+        this.failures = Counter.builder("app.write-behind.failures")
+                .description("Flush attempts that failed and were left for a retry").register(meterRegistry);
+        this.flushTimer = Timer.builder("app.write-behind.flush")
+                .description("Time to apply one coalesced batch to the database")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        Gauge.builder("app.write-behind.backlog", backlog, AtomicLong::get)
+                .description("Stream entries not yet flushed to the database").register(meterRegistry);
+        TimeGauge.builder("app.write-behind.lag", lagMillis, TimeUnit.MILLISECONDS, AtomicLong::get)
+                .description("Age of the oldest write not yet flushed to the database").register(meterRegistry);
+
+        if (!enabled) {
+            this.flusher = null;
+            return;
+        }
+        long interval = settings.getFlushInterval().toMillis();
+        this.flusher = Executors.newSingleThreadScheduledExecutor(backgroundThreads.named("write-behind-flusher"));
+        flusher.scheduleWithFixedDelay(this::flushInBackground, interval, interval, TimeUnit.MILLISECONDS);
+        log.info("Write-behind enabled: flushing user writes every {} ms as consumer {}", interval, consumer);
+    }
+
+    /**
+     * Latest write of a user that is not flushed yet, or was flushed within the retain-flushed
+     * period. A null user is a pending delete.
+     */
+    public record Pending(User user, long version) {
+
+        public boolean deleted() {
+            return user == null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getBacklog() {
+        return backlog.get();
+    }
+
+    public Duration getLag() {
+        return Duration.ofMillis(lagMillis.get());
+    }
+
+    public Pending pending(Long id) {
+        List<byte[]> fields = redisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.hashCommands().hMGet(pendingKey(id), VERSION_FIELD, OP_FIELD, USER_FIELD));
+        return parsePending(fields);
+    }
+
+    // Pending copies of the given users in one pipeline; users without one are not in the map
+    @SuppressWarnings("unchecked")
+    public Map<Long, Pending> pending(Collection<Long> ids) {
+        Map<Long, Pending> found = new HashMap<>();
+        if (ids.isEmpty()) {
+            return found;
+        }
+        List<Long> keys = List.copyOf(ids);
+        List<Object> replies = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            keys.forEach(id -> connection.hashCommands().hMGet(pendingKey(id), VERSION_FIELD, OP_FIELD, USER_FIELD));
+            return null;
+        }, RedisSerializer.byteArray());
+        for (int i = 0; i < keys.size(); i++) {
+            Pending pending = parsePending((List<byte[]>) replies.get(i));
+            if (pending != null) {
+                found.put(keys.get(i), pending);
+            }
+        }
+        return found;
+    }
+
+    // False when the user changed since baseVersion was read; the caller re-reads or reports a conflict
+    public boolean save(User user, Long baseVersion) {
+        return record(user.getId(), baseVersion, user.getVersion(), UPSERT, serializer.serialize(user));
+    }
+
+    public boolean delete(Long id, Long baseVersion) {
+        return record(id, baseVersion, (baseVersion != null ? baseVersion : 0) + 1, DELETE, new byte[0]);
+    }
+
+    // For writes that go to Mongo directly, so reads no longer prefer an older pending copy
+    public void forget(Collection<Long> ids) {
+        if (!enabled || ids.isEmpty()) {
+            return;
+        }
+        redisTemplate.delete(ids.stream().map(UserWriteBehind::userKey).toList());
+    }
+
+    // Writes everything recorded so far to Mongo, including entries claimed from other consumers
+    public long flush() {
+        if (!enabled) {
+            return 0;
+        }
+        flushLock.lock();
+        try {
+            sampleLag();
+            long count = drain(Duration.ZERO, Math.max(backlog.get(), 1));
+            sampleLag();
+            return count;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdown();
+        try {
+            long count = flush();
+            log.info("Flushed {} pending user write(s) on shutdown", count);
+        } catch (RuntimeException ex) {
+            log.warn("Could not flush pending user writes on shutdown, they stay in the stream: {}", ex.getMessage());
+        }
+    }
+
+    private boolean record(Long id, Long baseVersion, long version, String op, byte[] payload) {
+        Long result = run(RECORD, List.of(userKey(id), STREAM_KEY),
+                bytes(baseVersion != null ? String.valueOf(baseVersion) : ""), bytes(String.valueOf(version)),
+                bytes(String.valueOf(id)), bytes(op), payload);
+        boolean written = result != null && result == 1;
+        if (written) {
+            recorded.increment();
+        }
+        return written;
+    }
+
+    private void flushInBackground() {
+        flushLock.lock();
+        try {
+            drain(settings.getClaimIdle(), Long.MAX_VALUE);
+            if (failing) {
+                failing = false;
+                log.info("Flushing user writes to the database recovered");
+            }
+        } catch (RuntimeException ex) {
+            failures.increment();
+            if (ex instanceof DataAccessException dae && String.valueOf(dae.getMostSpecificCause().getMessage()).contains("NOGROUP")) {
+                groupReady = false;
+            }
+            if (!failing) {
+                failing = true;
+                log.warn("Flushing user writes to the database failed, entries are retried after {} s: {}",
+                        settings.getClaimIdle().toSeconds(), ex.getMessage());
+            } else {
+                log.debug("Flushing user writes still failing: {}", ex.getMessage());
+            }
+        } finally {
+            flushLock.unlock();
+        }
+        sampleLag();
+    }
+
+    // Entries idle for claimIdle in any consumer first, then new ones, a batch at a time
+    private long drain(Duration claimIdle, long limit) {
+        ensureGroup();
+        long total = 0;
+        List<ByteRecord> batch;
+        do {
+            batch = claim(claimIdle);
+            total += process(batch);
+        } while (batch.size() == settings.getBatchSize() && total < limit);
+        do {
+            batch = readNew();
+            total += process(batch);
+        } while (batch.size() == settings.getBatchSize() && total < limit);
+        return total;
+    }
+
+    private void ensureGroup() {
+        if (groupReady) {
+            return;
+        }
+        try {
+            redisTemplate.execute((RedisCallback<String>) connection ->
+                    connection.streamCommands().xGroupCreate(STREAM, GROUP, ReadOffset.from("0"), true));
+        } catch (DataAccessException ex) {
+            if (!String.valueOf(ex.getMostSpecificCause().getMessage()).contains("BUSYGROUP")) {
+                throw ex;
+            }
+        }
+        groupReady = true;
+    }
+
+    private List<ByteRecord> claim(Duration minIdle) {
+        PendingMessages pending = redisTemplate.execute((RedisCallback<PendingMessages>) connection ->
+                connection.streamCommands().xPending(STREAM, GROUP, Range.unbounded(), (long) settings.getBatchSize()));
+        if (pending == null || pending.isEmpty()) {
+            return List.of();
+        }
+        RecordId[] ids = pending.stream().map(PendingMessage::getId).toArray(RecordId[]::new);
+        List<ByteRecord> claimed = redisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+                connection.streamCommands().xClaim(STREAM, GROUP, consumer, minIdle, ids));
+        if (claimed == null || claimed.isEmpty()) {
+            return List.of();
+        }
+        if (!minIdle.isZero()) {
+            log.info("Claimed {} user write(s) left unflushed for at least {} s", claimed.size(), minIdle.toSeconds());
+        }
+        return claimed;
+    }
+
+    // xReadGroup takes the stream offsets as generic varargs
+    @SuppressWarnings("unchecked")
+    private List<ByteRecord> readNew() {
+        List<ByteRecord> records = redisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+                connection.streamCommands().xReadGroup(Consumer.from(GROUP, consumer),
+                        StreamReadOptions.empty().count(settings.getBatchSize()),
+                        StreamOffset.create(STREAM, ReadOffset.lastConsumed())));
+        return records != null ? records : List.of();
+    }
+
+    private int process(List<ByteRecord> records) {
+        if (records.isEmpty()) {
+            return 0;
+        }
+        Map<Long, Write> latest = new LinkedHashMap<>();
+        for (ByteRecord record : records) {
+            Write write = parseWrite(record);
+            if (write != null) {
+                latest.merge(write.id(), write, (current, next) -> next.version() > current.version() ? next : current);
+            }
+        }
+        coalesced.increment(records.size() - latest.size());
+
+        List<Write> writes = new ArrayList<>(latest.values());
+        Applied applied = flushTimer.record(() -> apply(writes));
+        acknowledge(records, writes, applied.rejectedIds());
+        flushed.increment(writes.size() - applied.staleIds().size() - applied.rejectedIds().size());
+        stale.increment(applied.staleIds().size());
+        rejected.increment(applied.rejectedIds().size());
+        // The cache may hold a copy the database does not have; the next read takes the database's one
+        Cache cache = cacheManager.getCache(USERS_CACHE);
+        if (cache != null) {
+            applied.staleIds().forEach(cache::evict);
+            applied.rejectedIds().forEach(cache::evict);
+        }
+        return records.size();
+    }
+
+    // Writes Mongo did not take: stale ones because it already had a newer version, rejected ones because
+    // they broke the unique email or username index. Both surface as a duplicate key error.
+    private Applied apply(List<Write> writes) {
+        List<Long> staleIds = new ArrayList<>();
+        List<Long> rejectedIds = new ArrayList<>();
+        int from = 0;
+        while (from < writes.size()) {
+            BulkOperations bulk = mongoOperations.bulkOps(BulkOperations.BulkMode.ORDERED, User.class);
+            for (Write write : writes.subList(from, writes.size())) {
+                Query olderVersion = Query.query(Criteria.where("_id").is(write.id())
+                        .orOperator(Criteria.where("version").lt(write.version()), Criteria.where("version").is(null)));
+                if (write.user() == null) {
+                    bulk.remove(olderVersion);
+                } else {
+                    bulk.replaceOne(olderVersion, write.user(), FindAndReplaceOptions.options().upsert());
+                }
+            }
+            try {
+                bulk.execute();
+                return new Applied(staleIds, rejectedIds);
+            } catch (BulkOperationException e) {
+                // An ordered bulk stops at its first error; an upsert that hits the existing _id means a newer version is stored
+                BulkWriteError error = e.getErrors().get(0);
+                if (error.getCode() != DUPLICATE_KEY) {
+                    throw e;
+                }
+                int index = from + error.getIndex();
+                Write write = writes.get(index);
+                if (isIdConflict(error)) {
+                    staleIds.add(write.id());
+                } else {
+                    log.warn("Dropped write-behind write of user {} version {}, the database refused it: {}",
+                            write.id(), write.version(), error.getMessage());
+                    rejectedIds.add(write.id());
+                }
+                from = index + 1;
+            }
+        }
+        return new Applied(staleIds, rejectedIds);
+    }
+
+    // Newer servers report the index's key pattern; older ones only name the index in the message
+    private static boolean isIdConflict(BulkWriteError error) {
+        BsonDocument keyPattern = error.getDetails().getDocument("keyPattern", null);
+        return keyPattern != null
+                ? keyPattern.containsKey("_id")
+                : String.valueOf(error.getMessage()).contains("index: _id_ ");
+    }
+
+    // The pending copy of a rejected write is deleted, so reads stop serving data the database refused
+    private void acknowledge(List<ByteRecord> records, List<Write> writes, List<Long> rejectedIds) {
+        List<String> keys = new ArrayList<>(writes.size() + 1);
+        List<Object> args = new ArrayList<>(2 * writes.size() + records.size() + 1);
+        keys.add(STREAM_KEY);
+        args.add(bytes(GROUP));
+        byte[] retain = bytes(String.valueOf(settings.getRetainFlushed().toMillis()));
+        for (Write write : writes) {
+            keys.add(userKey(write.id()));
+            args.add(bytes(String.valueOf(write.version())));
+            args.add(rejectedIds.contains(write.id()) ? bytes("0") : retain);
+        }
+        records.forEach(record -> args.add(bytes(record.getId().getValue())));
+        run(FLUSHED, keys, args.toArray());
+    }
+
+    private void sampleLag() {
+        try {
+            Long length = redisTemplate.execute((RedisCallback<Long>) connection -> connection.streamCommands().xLen(STREAM));
+            List<ByteRecord> oldest = redisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+                    connection.streamCommands().xRange(STREAM, Range.unbounded(), Limit.limit().count(1)));
+            backlog.set(length != null ? length : 0);
+            lagMillis.set(oldest == null || oldest.isEmpty()
+                    ? 0
+                    : Math.max(0, System.currentTimeMillis() - oldest.get(0).getId().getTimestamp()));
+        } catch (DataAccessException ex) {
+            log.debug("Sampling the write-behind backlog failed: {}", ex.getMessage());
+        }
+    }
+
+    private Pending parsePending(List<byte[]> fields) {
+        if (fields == null || fields.isEmpty() || fields.get(0) == null) {
+            return null;
+        }
+        long version = Long.parseLong(string(fields.get(0)));
+        return DELETE.equals(string(fields.get(1)))
+                ? new Pending(null, version)
+                : new Pending((User) serializer.deserialize(fields.get(2)), version);
+    }
+
+    // Unreadable entries are logged and acknowledged with their batch rather than retried forever
+    private Write parseWrite(ByteRecord record) {
+        Map<String, byte[]> fields = new HashMap<>();
+        record.getValue().forEach((field, value) -> fields.put(string(field), value));
+        try {
+            Long id = Long.valueOf(string(fields.get("id")));
+            long version = Long.parseLong(string(fields.get("version")));
+            User user = DELETE.equals(string(fields.get("op"))) ? null : (User) serializer.deserialize(fields.get("user"));
+            return new Write(id, version, user);
+        } catch (SerializationException | NumberFormatException | ClassCastException ex) {
+            log.error("Dropping unreadable write-behind entry {}: {}", record.getId(), ex.getMessage());
+            return null;
+        }
+    }
+
+    private record Write(Long id, long version, User user) {
+    }
+
+    private record Applied(List<Long> staleIds, List<Long> rejectedIds) {
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T run(RedisScript<T> script, List<String> keys, Object... args) {
+        RedisSerializer<byte[]> raw = RedisSerializer.byteArray();
+        return redisTemplate.execute(script, raw, (RedisSerializer<T>) (RedisSerializer<?>) raw, keys, args);
+    }
+
+    private static String userKey(Long id) {
+        return PREFIX + "user:" + id;
+    }
+
+    private static byte[] pendingKey(Long id) {
+        return bytes(userKey(id));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] value) {
+        return value != null ? new String(value, StandardCharsets.UTF_8) : null;
+    }
+}
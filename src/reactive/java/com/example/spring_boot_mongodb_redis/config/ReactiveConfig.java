@@ -0,0 +1,36 @@
+package com.example.spring_boot_mongodb_redis.config;
+
+import com.example.spring_boot_mongodb_redis.cache.CacheSerializers;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+@Configuration
+@Profile("reactive")
+public class ReactiveConfig {
+
+    // Tomcat is on the classpath for the servlet stack and would otherwise be picked for WebFlux too
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    // Same key layout and value encoding as the Redis cache manager, so both stacks share entries
+    @Bean
+    public ReactiveRedisTemplate<String, Object> reactiveCacheTemplate(ReactiveRedisConnectionFactory connectionFactory,
+                                                                       CacheProperties cacheProperties) {
+        RedisSerializer<Object> values = CacheSerializers.create(cacheProperties.getSerializer());
+        RedisSerializationContext<String, Object> context = RedisSerializationContext
+                .<String, Object>newSerializationContext(RedisSerializer.string())
+                .value(values)
+                .hashKey(RedisSerializer.string())
+                .hashValue(values)
+                .build();
+        return new ReactiveRedisTemplate<>(connectionFactory, context);
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.spring_boot_mongodb_redis.controller;
+
+import com.example.spring_boot_mongodb_redis.model.User;
+import com.example.spring_boot_mongodb_redis.model.UserLookupResult;
+import com.example.spring_boot_mongodb_redis.model.UserPage;
+import com.example.spring_boot_mongodb_redis.service.HotUserTracker;
+import com.example.spring_boot_mongodb_redis.service.ReactiveUserService;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+// Same paths and status codes as UserController, without the batch endpoints
+@RestController
+@Profile("reactive")
+@RequestMapping("/api/users")
+public class ReactiveUserController {
+
+    private final ReactiveUserService service;
+    private final HotUserTracker hotUsers;
+
+    public ReactiveUserController(ReactiveUserService service, HotUserTracker hotUsers) {
+        this.service = service;
+        this.hotUsers = hotUsers;
+    }
+
+    @GetMapping
+    @ResponseStatus(HttpStatus.OK)
+    public Mono<UserPage> listUsers(@RequestParam(required = false) Long after,
+                                    @RequestParam(defaultValue = "100") int limit) {
+        return service.getPage(after, limit);
+    }
+
+    @GetMapping(params = "ids")
+    @ResponseStatus(HttpStatus.OK)
+    public Mono<UserLookupResult> getUsers(@RequestParam List<Long> ids) {
+        ids.forEach(hotUsers::record);
+        return service.getByIds(ids);
+    }
+
+    @PostMapping("/lookup")
+    @ResponseStatus(HttpStatus.OK)
+    public Mono<UserLookupResult> lookupUsers(@RequestBody List<Long> ids) {
+        ids.forEach(hotUsers::record);
+        return service.getByIds(ids);
+    }
+
+    // Each user is written as one NDJSON line as the cursor delivers it
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<User> exportUsers() {
+        return service.streamAll();
+    }
+
+    @GetMapping("/{id}")
+    @ResponseStatus(HttpStatus.OK)
+    public Mono<User> getUser(@PathVariable Long id) {
+        hotUsers.record(id);
+        return service.getById(id);
+    }
+
+    @PostMapping
+    @ResponseStatus(HttpStatus.CREATED)
+    public Mono<User> createUser(@RequestBody User user) {
+        return service.create(user);
+    }
+
+    @PutMapping("/{id}")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public Mono<User> updateUser(@PathVariable Long id, @RequestBody User user) {
+        return service.update(id, user);
+    }
+
+    @PatchMapping("/{id}")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public Mono<User> patchUser(@PathVariable Long id, @RequestBody User changes) {
+        return service.patch(id, changes);
+    }
+
+    @DeleteMapping("/{id}")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public Mono<Void> deleteUser(@PathVariable Long id) {
+        return service.delete(id);
+    }
+}
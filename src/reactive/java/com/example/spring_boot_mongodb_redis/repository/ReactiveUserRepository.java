@@ -0,0 +1,7 @@
+package com.example.spring_boot_mongodb_redis.repository;
+
+import com.example.spring_boot_mongodb_redis.model.User;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+
+public interface ReactiveUserRepository extends ReactiveMongoRepository<User, Long> {
+}
@@ -0,0 +1,413 @@
+package com.example.spring_boot_mongodb_redis.service;
+
+import com.example.spring_boot_mongodb_redis.cache.CacheInvalidationBus;
+import com.example.spring_boot_mongodb_redis.cache.JitteredTtlFunction;
+import com.example.spring_boot_mongodb_redis.config.CacheProperties;
+import com.example.spring_boot_mongodb_redis.config.SequenceGeneratorService;
+import com.example.spring_boot_mongodb_redis.model.User;
+import com.example.spring_boot_mongodb_redis.model.UserLookupResult;
+import com.example.spring_boot_mongodb_redis.model.UserPage;
+import com.example.spring_boot_mongodb_redis.repository.ReactiveUserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Range;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisElementReader;
+import org.springframework.data.redis.serializer.RedisElementWriter;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Non-blocking counterpart of {@link UserService} for the reactive profile. It reads and writes
+ * the same Redis entries ({@code users::<id>}, {@code users_missing::<id>} and the list view), so
+ * both stacks can serve the same data side by side, and it tells other nodes to drop their near
+ * cache entries over the invalidation bus.
+ * <p>
+ * Concurrent misses on the same ID share one load within this node. The few blocking pieces
+ * (sequence allocation, the ID filter broadcast and bus publishes) run on the bounded elastic
+ * scheduler, never on an event loop.
+ */
+@Slf4j
+@Service
+@Profile("reactive")
+public class ReactiveUserService {
+
+    private static final String USER_SEQUENCE = "user_sequence";
+    private static final String USERS_CACHE = "users";
+    private static final String MISSING_USERS_CACHE = "users_missing";
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int STREAM_BATCH_SIZE = 500;
+
+    private final ReactiveUserRepository repository;
+    private final ReactiveMongoOperations mongoOperations;
+    private final ReactiveRedisTemplate<String, Object> cacheTemplate;
+    private final ReactiveStringRedisTemplate stringTemplate;
+    private final SequenceGeneratorService sequenceGenerator;
+    private final UserIdFilter userIdFilter;
+    private final UserListView userListView;
+    private final CacheInvalidationBus invalidationBus;
+    private final JitteredTtlFunction usersTtl;
+    private final JitteredTtlFunction missingTtl;
+    private final CacheMetrics.Handle usersMetrics;
+    private final CacheMetrics.Handle viewMetrics;
+    private final boolean cacheEnabled;
+    private final Map<Long, Mono<User>> loads = new ConcurrentHashMap<>();
+
+    public ReactiveUserService(ReactiveUserRepository repository,
+                               ReactiveMongoOperations mongoOperations,
+                               ReactiveRedisTemplate<String, Object> cacheTemplate,
+                               ReactiveStringRedisTemplate stringTemplate,
+                               SequenceGeneratorService sequenceGenerator,
+                               UserIdFilter userIdFilter,
+                               UserListView userListView,
+                               ObjectProvider<CacheInvalidationBus> invalidationBus,
+                               CacheProperties cacheProperties,
+                               CacheMetrics cacheMetrics,
+                               @Value("${cache.enabled:true}") boolean cacheEnabled) {
+        this.repository = repository;
+        this.mongoOperations = mongoOperations;
+        this.cacheTemplate = cacheTemplate;
+        this.stringTemplate = stringTemplate;
+        this.sequenceGenerator = sequenceGenerator;
+        this.userIdFilter = userIdFilter;
+        this.userListView = userListView;
+        this.invalidationBus = invalidationBus.getIfAvailable();
+        CacheProperties.Expiry expiry = cacheProperties.getExpiry();
+        this.usersTtl = new JitteredTtlFunction(expiry.ttlFor(USERS_CACHE), expiry.jitterFor(USERS_CACHE));
+        this.missingTtl = new JitteredTtlFunction(expiry.ttlFor(MISSING_USERS_CACHE), expiry.jitterFor(MISSING_USERS_CACHE));
+        this.usersMetrics = cacheMetrics.handle(USERS_CACHE);
+        this.viewMetrics = cacheMetrics.handle(UserListView.VIEW_CACHE);
+        this.cacheEnabled = cacheEnabled;
+    }
+
+    public Mono<UserPage> getPage(Long after, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_PAGE_SIZE));
+        }
+        return viewPage(after, limit)
+                .switchIfEmpty(Mono.defer(() -> {
+                    log.debug("Fetching users page after ID {} (limit {}) from database", after, limit);
+                    Query query = after != null ? Query.query(Criteria.where("_id").gt(after)) : new Query();
+                    query.with(Sort.by(Sort.Direction.ASC, "_id")).limit(limit);
+                    return mongoOperations.find(query, User.class).collectList();
+                }))
+                .map(users -> {
+                    Long nextAfter = users.size() == limit ? users.get(users.size() - 1).getId() : null;
+                    return UserPage.builder().users(users).nextAfter(nextAfter).build();
+                });
+    }
+
+    public Flux<User> streamAll() {
+        Query query = new Query().with(Sort.by(Sort.Direction.ASC, "_id")).cursorBatchSize(STREAM_BATCH_SIZE);
+        return mongoOperations.find(query, User.class);
+    }
+
+    public Mono<User> getById(Long id) {
+        if (!userIdFilter.mightContain(id)) {
+            return Mono.error(userNotFound(id));
+        }
+        if (!cacheEnabled) {
+            return load(id);
+        }
+        return cacheTemplate.opsForValue().get(usersKey(id))
+                .cast(User.class)
+                .doOnNext(user -> usersMetrics.hit())
+                .onErrorResume(DataAccessException.class, ex -> {
+                    log.warn("Reading user {} from the cache failed, loading it from the database: {}", id, ex.getMessage());
+                    return Mono.empty();
+                })
+                .switchIfEmpty(Mono.defer(() -> {
+                    usersMetrics.miss();
+                    return sharedLoad(id);
+                }));
+    }
+
+    public Mono<UserLookupResult> getByIds(List<Long> ids) {
+        List<Long> uniqueIds = ids.stream().filter(Objects::nonNull).distinct().toList();
+        if (uniqueIds.size() > MAX_PAGE_SIZE) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "at most " + MAX_PAGE_SIZE + " ids per lookup"));
+        }
+        List<Long> candidateIds = uniqueIds.stream().filter(userIdFilter::mightContain).toList();
+
+        return cachedUsers(candidateIds).flatMap(users -> {
+            List<Long> missingIds = candidateIds.stream().filter(id -> !users.containsKey(id)).toList();
+            if (missingIds.isEmpty()) {
+                return Mono.just(users);
+            }
+            log.debug("Fetching {} of {} requested users from database", missingIds.size(), uniqueIds.size());
+            return repository.findAllById(missingIds)
+                    .collectMap(User::getId)
+                    .flatMap(loaded -> Mono.when(
+                                    cacheAll(loaded.values()),
+                                    rememberMissing(missingIds.stream().filter(id -> !loaded.containsKey(id)).toList()))
+                            .then(Mono.fromSupplier(() -> {
+                                users.putAll(loaded);
+                                return users;
+                            })));
+        }).map(users -> {
+            List<User> found = new ArrayList<>(users.size());
+            List<Long> notFound = new ArrayList<>();
+            for (Long id : uniqueIds) {
+                User user = users.get(id);
+                if (user != null) {
+                    found.add(user);
+                } else {
+                    notFound.add(id);
+                }
+            }
+            return UserLookupResult.builder().users(found).notFound(notFound).build();
+        });
+    }
+
+    public Mono<User> create(User user) {
+        return Mono.fromCallable(() -> sequenceGenerator.generateSequence(USER_SEQUENCE))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(id -> {
+                    user.setId(id);
+                    user.setVersion(0L);
+                    return repository.save(user);
+                })
+                .flatMap(saved -> Mono.when(cacheAll(List.of(saved)), forgetMissing(saved.getId()), upsertView(saved))
+                        .thenReturn(saved));
+    }
+
+    public Mono<User> update(Long id, User userDetails) {
+        return modify(id, userDetails, false);
+    }
+
+    public Mono<User> patch(Long id, User changes) {
+        return modify(id, changes, true);
+    }
+
+    public Mono<Void> delete(Long id) {
+        return mongoOperations.remove(Query.query(Criteria.where("_id").is(id)), User.class)
+                .flatMap(result -> {
+                    if (result.getDeletedCount() == 0) {
+                        String message = "User not found with ID: " + id;
+                        log.warn(message);
+                        return Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, message));
+                    }
+                    return Mono.when(evict(id), rememberMissing(List.of(id)), removeFromView(id));
+                });
+    }
+
+    // Same single findAndModify as UserService, including the version check
+    private Mono<User> modify(Long id, User changes, boolean partial) {
+        Query query = Query.query(Criteria.where("_id").is(id));
+        if (changes.getVersion() != null) {
+            query.addCriteria(Criteria.where("version").is(changes.getVersion()));
+        }
+        return mongoOperations.findAndModify(query, UserService.userUpdate(changes, partial),
+                        FindAndModifyOptions.options().returnNew(true), User.class)
+                .switchIfEmpty(Mono.defer(() -> modifyFailed(id, changes.getVersion())))
+                .flatMap(updated -> Mono.when(cacheAll(List.of(updated)), upsertView(updated)).thenReturn(updated));
+    }
+
+    private Mono<User> modifyFailed(Long id, Long expectedVersion) {
+        Mono<Boolean> exists = expectedVersion != null ? repository.existsById(id) : Mono.just(false);
+        return exists.flatMap(conflict -> {
+            String message = conflict
+                    ? "User with ID " + id + " was modified concurrently, expected version " + expectedVersion
+                    : "User not found with ID: " + id;
+            log.warn(message);
+            return Mono.error(new ResponseStatusException(conflict ? HttpStatus.CONFLICT : HttpStatus.NOT_FOUND, message));
+        });
+    }
+
+    // Callers missing the same ID subscribe to one load; it leaves the map once it completes
+    private Mono<User> sharedLoad(Long id) {
+        return loads.computeIfAbsent(id, key -> isKnownMissing(key)
+                .flatMap(missing -> missing ? Mono.<User>error(userNotFound(key)) : load(key))
+                .flatMap(user -> cacheAll(List.of(user)).thenReturn(user))
+                .doFinally(signal -> loads.remove(key))
+                .cache());
+    }
+
+    private Mono<User> load(Long id) {
+        log.debug("Attempting to fetch user with ID: {}", id);
+        return repository.findById(id)
+                .switchIfEmpty(Mono.defer(() -> rememberMissing(List.of(id)).then(Mono.error(userNotFound(id)))));
+    }
+
+    // One MGET; entries that cannot be read count as misses
+    private Mono<Map<Long, User>> cachedUsers(List<Long> ids) {
+        if (!cacheEnabled || ids.isEmpty()) {
+            return Mono.just(new HashMap<>());
+        }
+        return cacheTemplate.opsForValue().multiGet(ids.stream().map(ReactiveUserService::usersKey).toList())
+                .map(values -> {
+                    Map<Long, User> users = new HashMap<>();
+                    for (int i = 0; i < ids.size(); i++) {
+                        if (i < values.size() && values.get(i) instanceof User user) {
+                            users.put(ids.get(i), user);
+                            usersMetrics.hit();
+                        } else {
+                            usersMetrics.miss();
+                        }
+                    }
+                    return users;
+                })
+                .onErrorResume(DataAccessException.class, ex -> {
+                    log.warn("Reading {} users from the cache failed: {}", ids.size(), ex.getMessage());
+                    return Mono.just(new HashMap<>());
+                });
+    }
+
+    private Mono<Void> cacheAll(Collection<User> users) {
+        if (!cacheEnabled || users.isEmpty()) {
+            return Mono.empty();
+        }
+        return quietly(Flux.fromIterable(users)
+                .flatMap(user -> cacheTemplate.opsForValue()
+                        .set(usersKey(user.getId()), user, usersTtl.getTimeToLive(user.getId(), user)))
+                .then(Mono.fromRunnable(usersMetrics::put))
+                .then(publishInvalidation(users.stream().map(User::getId).toList())), "caching users");
+    }
+
+    private Mono<Void> evict(Long id) {
+        if (!cacheEnabled) {
+            return Mono.empty();
+        }
+        return quietly(cacheTemplate.delete(usersKey(id))
+                .then(Mono.fromRunnable(usersMetrics::evict))
+                .then(publishInvalidation(List.of(id))), "evicting user " + id);
+    }
+
+    private Mono<Boolean> isKnownMissing(Long id) {
+        if (!cacheEnabled) {
+            return Mono.just(false);
+        }
+        return cacheTemplate.hasKey(missingKey(id)).onErrorReturn(false);
+    }
+
+    private Mono<Void> rememberMissing(Collection<Long> ids) {
+        if (!cacheEnabled || ids.isEmpty()) {
+            return Mono.empty();
+        }
+        return quietly(Flux.fromIterable(ids)
+                .flatMap(id -> cacheTemplate.opsForValue()
+                        .set(missingKey(id), Boolean.TRUE, missingTtl.getTimeToLive(id, Boolean.TRUE)))
+                .then(), "caching missing users");
+    }
+
+    private Mono<Void> forgetMissing(Long id) {
+        Mono<Void> evict = cacheEnabled ? quietly(cacheTemplate.delete(missingKey(id)).then(), "evicting missing user") : Mono.empty();
+        return evict.then(offload(() -> userIdFilter.add(id)));
+    }
+
+    // Near caches on other nodes are keyed by the plain ID
+    private Mono<Void> publishInvalidation(Collection<Long> ids) {
+        if (invalidationBus == null) {
+            return Mono.empty();
+        }
+        return offload(() -> invalidationBus.publish(USERS_CACHE, ids.stream().map(String::valueOf).toList()));
+    }
+
+    // ZRANGEBYSCORE over the index, then HMGET of the entries; empty when the view is not ready
+    private Mono<List<User>> viewPage(Long after, int limit) {
+        if (!userListView.isEnabled()) {
+            return Mono.empty();
+        }
+        Range<Double> range = after != null
+                ? Range.rightUnbounded(Range.Bound.exclusive(after.doubleValue()))
+                : Range.unbounded();
+        return stringTemplate.hasKey(UserListView.READY_KEY)
+                .filter(Boolean::booleanValue)
+                .flatMap(ready -> stringTemplate.opsForZSet()
+                        .rangeByScore(UserListView.INDEX_KEY, range, Limit.limit().count(limit))
+                        .collectList())
+                .flatMap(ids -> ids.isEmpty()
+                        ? Mono.just(List.<User>of())
+                        : cacheTemplate.<String, Object>opsForHash().multiGet(UserListView.DATA_KEY, ids)
+                        .map(entries -> entries.stream().filter(User.class::isInstance).map(User.class::cast).toList()))
+                .doOnNext(users -> viewMetrics.hit())
+                .switchIfEmpty(Mono.fromRunnable(viewMetrics::miss))
+                .onErrorResume(DataAccessException.class, ex -> {
+                    log.warn("Reading the user list view failed, falling back to the database: {}", ex.getMessage());
+                    viewMetrics.miss();
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<Void> upsertView(User user) {
+        if (!userListView.isEnabled()) {
+            return Mono.empty();
+        }
+        return patchView(UserListView.UPSERT, UserListView.UPSERT_KEYS,
+                Arrays.asList(userListView.entries(List.of(user))))
+                .then(Mono.fromRunnable(viewMetrics::put));
+    }
+
+    private Mono<Void> removeFromView(Long id) {
+        if (!userListView.isEnabled()) {
+            return Mono.empty();
+        }
+        return patchView(UserListView.REMOVE, UserListView.REMOVE_KEYS,
+                List.of(UserListView.bytes(String.valueOf(id))))
+                .then(Mono.fromRunnable(viewMetrics::evict));
+    }
+
+    // A failed patch drops the ready marker, so pages come from Mongo until the view is rebuilt
+    @SuppressWarnings("unchecked")
+    private Mono<Void> patchView(RedisScript<Long> script, List<String> keys, List<Object> args) {
+        RedisSerializer<byte[]> raw = RedisSerializer.byteArray();
+        return cacheTemplate.execute(script, keys, args, RedisElementWriter.from(raw),
+                        (RedisElementReader<Long>) (RedisElementReader<?>) RedisElementReader.from(raw))
+                .then()
+                .onErrorResume(DataAccessException.class, ex -> {
+                    log.warn("Patching the user list view failed, invalidating it: {}", ex.getMessage());
+                    return stringTemplate.delete(UserListView.READY_KEY).then()
+                            .onErrorResume(DataAccessException.class, ignored -> Mono.empty());
+                });
+    }
+
+    // Cache writes never fail the request; the entry simply expires or is reloaded
+    private static Mono<Void> quietly(Mono<?> operation, String action) {
+        return operation.then().onErrorResume(DataAccessException.class, ex -> {
+            log.warn("Redis failed while {}: {}", action, ex.getMessage());
+            return Mono.empty();
+        });
+    }
+
+    private static Mono<Void> offload(Runnable task) {
+        return Mono.fromRunnable(task).subscribeOn(Schedulers.boundedElastic()).then();
+    }
+
+    private static String usersKey(Long id) {
+        return USERS_CACHE + "::" + id;
+    }
+
+    private static String missingKey(Long id) {
+        return MISSING_USERS_CACHE + "::" + id;
+    }
+
+    private static ResponseStatusException userNotFound(Long id) {
+        log.debug("User not found with ID: {}", id);
+        return new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found with ID: " + id);
+    }
+}
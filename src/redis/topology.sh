@@ -0,0 +1,78 @@
+#!/bin/bash
+# Starts local redis-server processes in one of the topologies supported by cache.redis.mode, and prints the
+# application arguments that connect to it. Needs redis-server and redis-cli on the PATH; stop the Docker Compose
+# Redis first, since the standalone, replica and sentinel layouts use port 6379.
+# Usage: src/redis/topology.sh standalone|replica|sentinel|cluster|stop
+# Data and logs go to $REDIS_TOPOLOGY_DIR (default /tmp/redis-topology); the password is $REDIS_PASSWORD (password).
+
+DIR=${REDIS_TOPOLOGY_DIR:-/tmp/redis-topology}
+PASSWORD=${REDIS_PASSWORD:-password}
+
+server() {
+  local port=$1; shift
+  mkdir -p "$DIR/$port"
+  redis-server --port "$port" --dir "$DIR/$port" --daemonize yes --logfile "$DIR/$port/redis.log" \
+    --pidfile "$DIR/$port/redis.pid" --requirepass "$PASSWORD" --masterauth "$PASSWORD" --save "" "$@"
+  until redis-cli -p "$port" -a "$PASSWORD" --no-auth-warning ping > /dev/null 2>&1; do sleep 0.1; done
+}
+
+sentinel() {
+  local port=$1
+  mkdir -p "$DIR/$port"
+  cat > "$DIR/$port/sentinel.conf" <<CONF
+port $port
+daemonize yes
+logfile $DIR/$port/sentinel.log
+pidfile $DIR/$port/redis.pid
+sentinel monitor mymaster 127.0.0.1 6379 2
+sentinel auth-pass mymaster $PASSWORD
+sentinel down-after-milliseconds mymaster 5000
+sentinel failover-timeout mymaster 10000
+CONF
+  redis-server "$DIR/$port/sentinel.conf" --sentinel
+}
+
+stop() {
+  for pidfile in "$DIR"/*/redis.pid; do
+    [ -f "$pidfile" ] && kill "$(cat "$pidfile")" 2> /dev/null
+  done
+  rm -rf "$DIR"
+}
+
+case "$1" in
+  standalone)
+    server 6379
+    echo "--cache.redis.mode=standalone"
+    ;;
+  replica)
+    server 6379
+    server 6380 --replicaof 127.0.0.1 6379
+    server 6381 --replicaof 127.0.0.1 6379
+    echo "--cache.redis.mode=replica --cache.redis.nodes=127.0.0.1:6379,127.0.0.1:6380,127.0.0.1:6381 --cache.redis.read-from=replica_preferred"
+    ;;
+  sentinel)
+    server 6379
+    server 6380 --replicaof 127.0.0.1 6379
+    server 6381 --replicaof 127.0.0.1 6379
+    sentinel 26379
+    sentinel 26380
+    sentinel 26381
+    echo "--cache.redis.mode=sentinel --cache.redis.nodes=127.0.0.1:26379,127.0.0.1:26380,127.0.0.1:26381 --cache.redis.read-from=replica_preferred"
+    ;;
+  cluster)
+    for port in 7000 7001 7002 7003 7004 7005; do
+      server $port --cluster-enabled yes --cluster-config-file "$DIR/$port/nodes.conf"
+    done
+    redis-cli -a "$PASSWORD" --no-auth-warning --cluster create \
+      127.0.0.1:7000 127.0.0.1:7001 127.0.0.1:7002 127.0.0.1:7003 127.0.0.1:7004 127.0.0.1:7005 \
+      --cluster-replicas 1 --cluster-yes > "$DIR/cluster-create.log"
+    echo "--cache.redis.mode=cluster --cache.redis.nodes=127.0.0.1:7000,127.0.0.1:7001,127.0.0.1:7002 --cache.redis.read-from=replica_preferred"
+    ;;
+  stop)
+    stop
+    ;;
+  *)
+    echo "Usage: $0 standalone|replica|sentinel|cluster|stop"
+    exit 1
+    ;;
+esac
@@ -0,0 +1,25 @@
+package com.example.spring_boot_mongodb_redis;
+
+import com.example.spring_boot_mongodb_redis.cache.RedisCircuitBreaker;
+import com.example.spring_boot_mongodb_redis.cache.TieredCacheManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "cache.enabled=false")
+class CacheDisabledApplicationTests {
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Test
+    void contextLoadsWithoutTheCacheLayer() {
+        // Spring Boot's plain Redis cache manager instead of the tiered one
+        assertThat(context.getBean(CacheManager.class)).isNotInstanceOf(TieredCacheManager.class);
+        assertThat(context.getBean(RedisCircuitBreaker.class).allowRequest()).isTrue();
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.spring_boot_mongodb_redis;
+
+import com.example.spring_boot_mongodb_redis.cache.CacheInvalidationSubscription;
+import com.example.spring_boot_mongodb_redis.cache.TieredCacheManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Port 1 is never a Redis server, so this holds wherever the tests run
+@SpringBootTest(properties = {"cache.enabled=true", "spring.data.redis.host=127.0.0.1", "spring.data.redis.port=1"})
+class RedisUnavailableApplicationTests {
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Test
+    void contextLoadsWhileRedisIsUnreachable() {
+        assertThat(context.getBean(CacheManager.class)).isInstanceOf(TieredCacheManager.class);
+        CacheInvalidationSubscription subscription = context.getBean(CacheInvalidationSubscription.class);
+        assertThat(subscription.isRunning()).isTrue();
+        assertThat(subscription.isSubscribed()).isFalse();
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.spring_boot_mongodb_redis.cache;
+
+import com.example.spring_boot_mongodb_redis.config.CacheProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AsyncCacheWriterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RedisCircuitBreaker breaker = new RedisCircuitBreaker(mock(StringRedisTemplate.class),
+            new CacheProperties(), meterRegistry, Thread.ofPlatform().daemon().factory());
+    private final RedisCache cache = redisCache();
+    private AsyncCacheWriter writer;
+
+    @AfterEach
+    void tearDown() {
+        writer.shutdown();
+        breaker.shutdown();
+    }
+
+    @Test
+    void writesToOneKeyRunInOrderAndReadAsPendingMeanwhile() throws Exception {
+        writer = new AsyncCacheWriter(true, 4, 100, breaker, Thread.ofPlatform().daemon().factory(), meterRegistry);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> applied = new CopyOnWriteArrayList<>();
+
+        writer.write(cache, 1L, () -> {
+            await(release);
+            applied.add("put");
+        });
+        writer.write(cache, 1L, () -> applied.add("evict"));
+        CountDownLatch published = new CountDownLatch(1);
+        writer.afterWrites("users", List.of("1"), keys -> published.countDown());
+
+        assertThat(writer.isPending(cache, 1L)).isTrue();
+        assertThat(writer.isPending(cache, 2L)).isFalse();
+        release.countDown();
+        assertThat(published.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(applied).containsExactly("put", "evict");
+        assertThat(writer.isPending(cache, 1L)).isFalse();
+    }
+
+    @Test
+    void writeToAFullLaneIsDroppedAndItsKeyEvictedOnceTheLaneDrains() throws Exception {
+        writer = new AsyncCacheWriter(true, 1, 1, breaker, Thread.ofPlatform().daemon().factory(), meterRegistry);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Long> written = new CopyOnWriteArrayList<>();
+
+        writer.write(cache, 1L, () -> {
+            started.countDown();
+            await(release);
+            written.add(1L);
+        });
+        // The first write is running, so the second fills the one-slot queue and the third is dropped
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        writer.write(cache, 2L, () -> written.add(2L));
+        writer.write(cache, 3L, () -> written.add(3L));
+
+        assertThat(writer.isPending(cache, 3L)).isTrue();
+        verify(cache, never()).evict(3L);
+        release.countDown();
+        verify(cache, timeout(5000)).evict(3L);
+        assertThat(written).containsExactly(1L, 2L);
+        assertThat(meterRegistry.counter("app.cache.async-writes.dropped").count()).isEqualTo(1);
+    }
+
+    @Test
+    void disabledWriterRunsInline() {
+        writer = new AsyncCacheWriter(false, 4, 100, breaker, Thread.ofPlatform().daemon().factory(), meterRegistry);
+        List<Long> written = new CopyOnWriteArrayList<>();
+
+        writer.write(cache, 1L, () -> written.add(1L));
+
+        assertThat(written).containsExactly(1L);
+        assertThat(writer.isPending(cache, 1L)).isFalse();
+    }
+
+    private static RedisCache redisCache() {
+        RedisCache cache = mock(RedisCache.class);
+        when(cache.getName()).thenReturn("users");
+        return cache;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.spring_boot_mongodb_redis.cache;
+
+import com.example.spring_boot_mongodb_redis.config.CacheProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SingleFlightCacheTest {
+
+    @Test
+    void followersFailWithTheLeaderWhenRedisFails() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        ConcurrentMapCache redis = new ConcurrentMapCache("users") {
+            @Override
+            public void put(Object key, Object value) {
+                throw new QueryTimeoutException("Redis command timed out");
+            }
+        };
+        SingleFlightCache cache = new SingleFlightCache(redis, lockingTemplate(), settings(Duration.ofSeconds(30)));
+
+        CompletableFuture<Object> leader = CompletableFuture.supplyAsync(() -> cache.get(1L, () -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            release.await();
+            return "user";
+        }));
+        assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+        Thread[] follower = new Thread[1];
+        CompletableFuture<Object> followerResult = CompletableFuture.supplyAsync(() -> {
+            follower[0] = Thread.currentThread();
+            return cache.get(1L, () -> {
+                loads.incrementAndGet();
+                return "user";
+            });
+        });
+        awaitWaiting(follower);
+        release.countDown();
+
+        assertThatThrownBy(() -> leader.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class).hasCauseInstanceOf(QueryTimeoutException.class);
+        assertThatThrownBy(() -> followerResult.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class).hasCauseInstanceOf(QueryTimeoutException.class);
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void followersStopWaitingOnAStuckLeader() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        SingleFlightCache cache = new SingleFlightCache(new ConcurrentMapCache("users"), lockingTemplate(),
+                settings(Duration.ofMillis(100)));
+
+        CompletableFuture.runAsync(() -> cache.get(1L, () -> {
+            loading.countDown();
+            release.await();
+            return "stale";
+        }));
+        assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+        try {
+            Object value = CompletableFuture.supplyAsync(() -> cache.get(1L, () -> "user")).get(5, TimeUnit.SECONDS);
+            assertThat(value).isEqualTo("user");
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private static CacheProperties.SingleFlight settings(Duration lockTtl) {
+        CacheProperties.SingleFlight settings = new CacheProperties.SingleFlight();
+        settings.setLockTtl(lockTtl);
+        settings.setWaitTimeout(Duration.ZERO);
+        return settings;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static StringRedisTemplate lockingTemplate() {
+        StringRedisTemplate template = mock(StringRedisTemplate.class);
+        ValueOperations<String, String> ops = mock(ValueOperations.class);
+        when(template.opsForValue()).thenReturn(ops);
+        when(ops.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(true);
+        return template;
+    }
+
+    private static void awaitWaiting(Thread[] thread) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (thread[0] == null || thread[0].getState() != Thread.State.TIMED_WAITING) {
+            assertThat(System.nanoTime() - deadline).isNegative();
+            Thread.sleep(5);
+        }
+    }
+}
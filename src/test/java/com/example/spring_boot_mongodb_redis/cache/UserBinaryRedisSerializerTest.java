@@ -0,0 +1,98 @@
+package com.example.spring_boot_mongodb_redis.cache;
+
+import com.example.spring_boot_mongodb_redis.model.User;
+import com.example.spring_boot_mongodb_redis.model.UserPage;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserBinaryRedisSerializerTest {
+
+    private final RedisSerializer<Object> json = CacheSerializers.json();
+    private final UserBinaryRedisSerializer serializer = new UserBinaryRedisSerializer(json, 0);
+
+    @Test
+    void usersRoundTripWithEveryFieldOrNone() {
+        User full = User.builder().id(Long.MAX_VALUE).firstName("Zoë").lastName("Łukasiewicz").maidenName("山田")
+                .gender("female").email("zoë@exämple.com").phone("+49 30 1234").username("zoe 🚀").password("pässwörd")
+                .birthDate(LocalDate.of(1815, 12, 10)).version(Long.MAX_VALUE).build();
+        User sparse = User.builder().id(-42L).lastName("").birthDate(LocalDate.of(2262, 4, 11)).version(0L).build();
+
+        assertThat(roundTrip(full)).isEqualTo(full);
+        assertThat(roundTrip(sparse)).isEqualTo(sparse);
+        assertThat(roundTrip(new User())).isEqualTo(new User());
+        assertThat(roundTrip(User.builder().id(Long.MIN_VALUE).build())).isEqualTo(User.builder().id(Long.MIN_VALUE).build());
+    }
+
+    @Test
+    void listsAndPagesRoundTrip() {
+        List<User> users = List.of(user(1L), user(2L));
+
+        assertThat(roundTrip(users)).isEqualTo(users);
+        assertThat(roundTrip(List.of())).isEqualTo(List.of());
+        assertThat(roundTrip(UserPage.builder().users(users).nextAfter(2L).build()))
+                .isEqualTo(UserPage.builder().users(users).nextAfter(2L).build());
+        assertThat(roundTrip(UserPage.builder().users(users).build()))
+                .isEqualTo(UserPage.builder().users(users).build());
+    }
+
+    @Test
+    void largeValuesAreCompressedAndRoundTrip() {
+        UserBinaryRedisSerializer compressing = new UserBinaryRedisSerializer(json, 256);
+        List<User> users = new ArrayList<>();
+        for (long id = 1; id <= 200; id++) {
+            users.add(user(id));
+        }
+
+        byte[] compressed = compressing.serialize(users);
+        byte[] small = compressing.serialize(user(1L));
+
+        assertThat(compressed[2]).isEqualTo((byte) 1);
+        assertThat(compressed.length).isLessThan(serializer.serialize(users).length);
+        assertThat(compressing.deserialize(compressed)).isEqualTo(users);
+        assertThat(small[2]).isZero();
+        assertThat(compressing.deserialize(small)).isEqualTo(user(1L));
+    }
+
+    @Test
+    void versionOneEntryStillReads() {
+        // Written by a version 1 node: id 7 and first name "Ada", no version field
+        byte[] entry = {UserBinaryRedisSerializer.MAGIC, 1, 0, 1, 0b11, 14, 3, 'A', 'd', 'a'};
+
+        assertThat(serializer.deserialize(entry)).isEqualTo(User.builder().id(7L).firstName("Ada").build());
+    }
+
+    @Test
+    void entryFromANewerFormatReadsAsAMiss() {
+        byte[] entry = serializer.serialize(user(1L));
+        entry[1] = UserBinaryRedisSerializer.FORMAT_VERSION + 1;
+
+        assertThat(serializer.deserialize(entry)).isNull();
+    }
+
+    @Test
+    void otherValuesAndJsonEntriesGoThroughTheFallback() {
+        byte[] jsonUser = json.serialize(user(3L));
+        byte[] names = serializer.serialize(new ArrayList<>(List.of("a", "b")));
+
+        assertThat(serializer.deserialize(jsonUser)).isEqualTo(user(3L));
+        assertThat(new String(names, StandardCharsets.UTF_8)).startsWith("[");
+        assertThat(serializer.deserialize(names)).isEqualTo(List.of("a", "b"));
+        assertThat(serializer.deserialize(new byte[0])).isNull();
+    }
+
+    private Object roundTrip(Object value) {
+        return serializer.deserialize(serializer.serialize(value));
+    }
+
+    private static User user(Long id) {
+        return User.builder().id(id).firstName("First " + id).lastName("Last").email("user" + id + "@example.com")
+                .birthDate(LocalDate.of(1990, 1, 1).plusDays(id)).version(id).build();
+    }
+}
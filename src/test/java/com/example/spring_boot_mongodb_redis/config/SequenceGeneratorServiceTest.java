@@ -0,0 +1,123 @@
+package com.example.spring_boot_mongodb_redis.config;
+
+import com.example.spring_boot_mongodb_redis.model.DatabaseSequence;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SequenceGeneratorServiceTest {
+
+    private static final String SEQUENCE = "test_sequence";
+
+    private final MongoOperations mongoOperations = mock(MongoOperations.class);
+    // Stands in for the counter document; the first reservation starts after the initial value
+    private final AtomicLong counter = new AtomicLong(100);
+    private final AtomicInteger failingReservation = new AtomicInteger(-1);
+    private final AtomicInteger reservations = new AtomicInteger();
+    private SequenceGeneratorService service;
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void blocksRollOverWithoutGaps() {
+        service = service(3, 1);
+        counterExists();
+
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            ids.add(service.generateSequence(SEQUENCE));
+        }
+
+        assertThat(ids).containsExactly(101L, 102L, 103L, 104L, 105L, 106L, 107L);
+        // The first block is reserved on the caller, the next two are prefetched when 102 and 105 are handed out
+        assertThat(reservations.get()).isEqualTo(3);
+        verify(mongoOperations, never()).insert(any(DatabaseSequence.class));
+    }
+
+    @Test
+    void failedPrefetchFallsBackToReservingOnTheCaller() {
+        service = service(3, 1);
+        counterExists();
+        failingReservation.set(2);
+
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            ids.add(service.generateSequence(SEQUENCE));
+        }
+
+        // The prefetch started at 102 fails, so 104 reserves the next block itself
+        assertThat(ids).containsExactly(101L, 102L, 103L, 104L);
+        assertThat(reservations.get()).isEqualTo(3);
+    }
+
+    @Test
+    void rangeIsReservedApartFromTheSingleIdBlock() {
+        service = service(10, 0);
+        counterExists();
+
+        long single = service.generateSequence(SEQUENCE);
+        long range = service.generateSequenceRange(SEQUENCE, 5);
+        long nextSingle = service.generateSequence(SEQUENCE);
+
+        assertThat(single).isEqualTo(101);
+        assertThat(range).isEqualTo(111);
+        assertThat(nextSingle).isEqualTo(102);
+        assertThat(counter.get()).isEqualTo(115);
+    }
+
+    @Test
+    void missingCounterIsSeededWhenReserving() {
+        service = service(10, 0);
+        when(mongoOperations.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(DatabaseSequence.class)))
+                .thenReturn(null)
+                .thenAnswer(invocation -> reserve(invocation.getArgument(1)));
+
+        assertThat(service.generateSequence(SEQUENCE)).isEqualTo(101);
+        verify(mongoOperations, times(1)).insert(new DatabaseSequence(SEQUENCE, 100));
+    }
+
+    private SequenceGeneratorService service(int blockSize, int prefetchThreshold) {
+        AppProperties properties = new AppProperties();
+        properties.getSequence().setInitialValue(100);
+        properties.getSequence().setBlockSize(blockSize);
+        properties.getSequence().setPrefetchThreshold(prefetchThreshold);
+        return new SequenceGeneratorService(mongoOperations, properties, new BackgroundThreads(false));
+    }
+
+    private void counterExists() {
+        when(mongoOperations.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(DatabaseSequence.class)))
+                .thenAnswer(invocation -> reserve(invocation.getArgument(1)));
+    }
+
+    private DatabaseSequence reserve(Update update) {
+        if (reservations.incrementAndGet() == failingReservation.get()) {
+            throw new DataAccessResourceFailureException("Mongo unreachable");
+        }
+        int size = update.getUpdateObject().get("$inc", Document.class).getInteger("seq");
+        return new DatabaseSequence(SEQUENCE, counter.addAndGet(size));
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.spring_boot_mongodb_redis.controller;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserControllerTest {
+
+    @Test
+    void acceptsGzipHonoursQualityValues() {
+        assertThat(UserController.acceptsGzip("gzip, deflate, br")).isTrue();
+        assertThat(UserController.acceptsGzip("br;q=1.0, GZIP;q=0.5")).isTrue();
+        assertThat(UserController.acceptsGzip("*")).isTrue();
+        assertThat(UserController.acceptsGzip(null)).isFalse();
+        assertThat(UserController.acceptsGzip("identity")).isFalse();
+        assertThat(UserController.acceptsGzip("gzip;q=0")).isFalse();
+        assertThat(UserController.acceptsGzip("gzip; q=0.0, *")).isFalse();
+        assertThat(UserController.acceptsGzip("*;q=0, br")).isFalse();
+    }
+}
@@ -0,0 +1,687 @@
+package com.example.spring_boot_mongodb_redis.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Just enough Redis to run the list view scripts in a unit test, since the build has no Redis to
+ * run them against: strings, hashes, sorted sets and sets in memory, and an evaluator for the Lua
+ * the scripts are written in (locals, if/else, numeric and ipairs loops, array tables,
+ * {@code redis.call}, {@code tonumber} and {@code unpack}). Values are held as ISO-8859-1 strings,
+ * which keeps binary entries intact. Anything else fails loudly rather than guessing.
+ */
+final class FakeRedis {
+
+    private final Map<String, Object> data = new HashMap<>();
+
+    // Runs a script the way EVAL does and answers like Spring with a raw result serializer:
+    // integers as Long, bulk strings as byte[], arrays as lists of those, nil as null
+    Object eval(String script, List<String> keys, Object[] args) {
+        Map<String, Object> globals = new HashMap<>();
+        globals.put("KEYS", new Table(new ArrayList<>(keys)));
+        List<Object> argv = new ArrayList<>();
+        for (Object arg : args) {
+            argv.add(arg instanceof byte[] bytes ? new String(bytes, StandardCharsets.ISO_8859_1) : String.valueOf(arg));
+        }
+        globals.put("ARGV", new Table(argv));
+        globals.put("redis", Map.of("call", (Function<List<Object>, Object>) this::call));
+        globals.put("tonumber", (Function<List<Object>, Object>) values -> toNumber(values.get(0)));
+        globals.put("unpack", (Function<List<Object>, Object>) values -> new Multi(((Table) values.get(0)).items));
+        globals.put("ipairs", (Function<List<Object>, Object>) values -> new IPairs((Table) values.get(0)));
+
+        List<Stat> block = new Parser(script).chunk();
+        try {
+            new Env(globals).run(block);
+            return null;
+        } catch (Return result) {
+            return reply(result.value);
+        }
+    }
+
+    boolean exists(String key) {
+        return data.containsKey(key);
+    }
+
+    String get(String key) {
+        return (String) data.get(key);
+    }
+
+    void set(String key, String value) {
+        data.put(key, value);
+    }
+
+    boolean setIfAbsent(String key, String value) {
+        return data.putIfAbsent(key, value) == null;
+    }
+
+    long delete(Collection<String> keys) {
+        return keys.stream().filter(key -> data.remove(key) != null).count();
+    }
+
+    private Object call(List<Object> values) {
+        List<String> args = values.stream().map(FakeRedis::toRedisArg).toList();
+        String key = args.get(1);
+        Object result = switch (args.get(0).toUpperCase(Locale.ROOT)) {
+            case "EXISTS" -> data.containsKey(key) ? 1L : 0L;
+            case "GET" -> data.get(key);
+            case "DEL" -> delete(args.subList(1, args.size()));
+            case "HGET" -> hash(key).get(args.get(2));
+            case "HMGET" -> {
+                List<Object> fields = new ArrayList<>();
+                args.subList(2, args.size()).forEach(field -> fields.add(hash(key).get(field)));
+                yield fields;
+            }
+            case "HSET" -> write(key, new LinkedHashMap<String, String>(), hash -> hash.put(args.get(2), args.get(3)) == null ? 1L : 0L);
+            case "HSETNX" -> write(key, new LinkedHashMap<String, String>(), hash -> hash.putIfAbsent(args.get(2), args.get(3)) == null ? 1L : 0L);
+            case "HDEL" -> write(key, new LinkedHashMap<String, String>(), hash -> hash.remove(args.get(2)) != null ? 1L : 0L);
+            case "ZADD" -> write(key, new HashMap<String, Double>(), zset -> zset.put(args.get(3), Double.valueOf(args.get(2))) == null ? 1L : 0L);
+            case "ZREM" -> write(key, new HashMap<String, Double>(), zset -> zset.remove(args.get(2)) != null ? 1L : 0L);
+            case "ZRANGEBYSCORE" -> rangeByScore(key, args);
+            case "SADD" -> write(key, new HashSet<String>(), set -> set.add(args.get(2)) ? 1L : 0L);
+            case "SISMEMBER" -> members(key).contains(args.get(2)) ? 1L : 0L;
+            default -> throw new UnsupportedOperationException("Command not faked: " + args.get(0));
+        };
+        return toLua(result);
+    }
+
+    private Object rangeByScore(String key, List<String> args) {
+        double min = score(args.get(2));
+        double max = score(args.get(3));
+        boolean minExclusive = args.get(2).startsWith("(");
+        boolean maxExclusive = args.get(3).startsWith("(");
+        int offset = args.size() > 4 ? Integer.parseInt(args.get(5)) : 0;
+        int count = args.size() > 4 ? Integer.parseInt(args.get(6)) : Integer.MAX_VALUE;
+        return zset(key).entrySet().stream()
+                .filter(entry -> minExclusive ? entry.getValue() > min : entry.getValue() >= min)
+                .filter(entry -> maxExclusive ? entry.getValue() < max : entry.getValue() <= max)
+                .sorted(Map.Entry.<String, Double>comparingByValue().thenComparing(Map.Entry.comparingByKey()))
+                .skip(offset)
+                .limit(count)
+                .map(Map.Entry::getKey)
+                .map(Object.class::cast)
+                .toList();
+    }
+
+    private static double score(String bound) {
+        String value = bound.startsWith("(") ? bound.substring(1) : bound;
+        return switch (value) {
+            case "-inf" -> Double.NEGATIVE_INFINITY;
+            case "+inf", "inf" -> Double.POSITIVE_INFINITY;
+            default -> Double.parseDouble(value);
+        };
+    }
+
+    // Creates the value on first write and drops it once empty, as Redis does
+    @SuppressWarnings("unchecked")
+    private <T> long write(String key, T empty, Function<T, Long> change) {
+        T value = (T) data.computeIfAbsent(key, k -> empty);
+        long result = change.apply(value);
+        if (value instanceof Map<?, ?> map && map.isEmpty() || value instanceof Set<?> set && set.isEmpty()) {
+            data.remove(key);
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, String> hash(String key) {
+        return (Map<String, String>) data.getOrDefault(key, Map.of());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Double> zset(String key) {
+        return (Map<String, Double>) data.getOrDefault(key, Map.of());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<String> members(String key) {
+        return (Set<String>) data.getOrDefault(key, Set.of());
+    }
+
+    // Redis reply to Lua value: integers become numbers, nil becomes false, arrays become tables
+    private static Object toLua(Object value) {
+        if (value == null) {
+            return false;
+        }
+        if (value instanceof Long number) {
+            return number.doubleValue();
+        }
+        if (value instanceof List<?> list) {
+            return new Table(new ArrayList<>(list.stream().map(FakeRedis::toLua).toList()));
+        }
+        return value;
+    }
+
+    // Lua value to script reply: numbers are truncated to integers, false is nil, tables end at the first nil
+    private static Object reply(Object value) {
+        if (value == null || Boolean.FALSE.equals(value)) {
+            return null;
+        }
+        if (Boolean.TRUE.equals(value)) {
+            return 1L;
+        }
+        if (value instanceof Double number) {
+            return number.longValue();
+        }
+        if (value instanceof String string) {
+            return string.getBytes(StandardCharsets.ISO_8859_1);
+        }
+        if (value instanceof Table table) {
+            List<Object> items = new ArrayList<>();
+            for (Object item : table.items) {
+                if (item == null) {
+                    break;
+                }
+                items.add(reply(item));
+            }
+            return items;
+        }
+        throw new IllegalStateException("Cannot reply with " + value);
+    }
+
+    private static String toRedisArg(Object value) {
+        if (value instanceof Double number) {
+            return number == Math.rint(number) ? String.valueOf(number.longValue()) : String.valueOf(number);
+        }
+        if (value instanceof String string) {
+            return string;
+        }
+        throw new IllegalArgumentException("Lua redis.call arguments must be strings or numbers, got " + value);
+    }
+
+    private static Object toNumber(Object value) {
+        if (value instanceof Double) {
+            return value;
+        }
+        if (value instanceof String string) {
+            try {
+                return Double.valueOf(string.trim());
+            } catch (NumberFormatException ex) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    // Lua tables, as far as the scripts use them: arrays indexed from 1
+    private record Table(List<Object> items) {
+
+        Object get(Object index) {
+            int i = ((Double) index).intValue();
+            return i >= 1 && i <= items.size() ? items.get(i - 1) : null;
+        }
+
+        void set(Object index, Object value) {
+            int i = ((Double) index).intValue();
+            if (i == items.size() + 1) {
+                items.add(value);
+            } else if (i >= 1 && i <= items.size()) {
+                items.set(i - 1, value);
+            } else {
+                throw new UnsupportedOperationException("Sparse table index " + i);
+            }
+        }
+    }
+
+    // Several values returned by one call, such as unpack; only the last argument of a call expands them
+    private record Multi(List<Object> values) {
+    }
+
+    private record IPairs(Table table) {
+    }
+
+    private static final class Return extends RuntimeException {
+        private final transient Object value;
+
+        private Return(Object value) {
+            super(null, null, false, false);
+            this.value = value;
+        }
+    }
+
+    private interface Expr {
+        Object eval(Env env);
+    }
+
+    private interface Stat {
+        void exec(Env env);
+    }
+
+    private static final class Env {
+        private final Map<String, Object> globals;
+        private final Deque<Map<String, Object>> scopes = new ArrayDeque<>();
+
+        private Env(Map<String, Object> globals) {
+            this.globals = globals;
+        }
+
+        void run(List<Stat> block) {
+            scopes.push(new HashMap<>());
+            try {
+                block.forEach(stat -> stat.exec(this));
+            } finally {
+                scopes.pop();
+            }
+        }
+
+        void local(String name, Object value) {
+            scopes.peek().put(name, value);
+        }
+
+        void assign(String name, Object value) {
+            for (Map<String, Object> scope : scopes) {
+                if (scope.containsKey(name)) {
+                    scope.put(name, value);
+                    return;
+                }
+            }
+            globals.put(name, value);
+        }
+
+        Object lookup(String name) {
+            for (Map<String, Object> scope : scopes) {
+                if (scope.containsKey(name)) {
+                    return scope.get(name);
+                }
+            }
+            return globals.get(name);
+        }
+    }
+
+    private static final class Parser {
+
+        private static final Set<String> SYMBOLS = Set.of("==", "~=", "<=", ">=", "<", ">", "=", "+", "-", "*", "#",
+                "(", ")", "{", "}", "[", "]", ",", ".", ";");
+
+        private final List<String> tokens = new ArrayList<>();
+        private int position;
+
+        private Parser(String source) {
+            tokenize(source);
+        }
+
+        List<Stat> chunk() {
+            List<Stat> block = block();
+            if (position < tokens.size()) {
+                throw new IllegalArgumentException("Unexpected '" + tokens.get(position) + "'");
+            }
+            return block;
+        }
+
+        private List<Stat> block() {
+            List<Stat> block = new ArrayList<>();
+            while (position < tokens.size() && !peek("end") && !peek("else")) {
+                block.add(statement());
+                accept(";");
+            }
+            return block;
+        }
+
+        private Stat statement() {
+            if (accept("local")) {
+                String name = name();
+                expect("=");
+                Expr value = expression();
+                return env -> env.local(name, first(value.eval(env)));
+            }
+            if (accept("if")) {
+                Expr condition = expression();
+                expect("then");
+                List<Stat> then = block();
+                List<Stat> otherwise = accept("else") ? block() : List.of();
+                expect("end");
+                return env -> env.run(truthy(condition.eval(env)) ? then : otherwise);
+            }
+            if (accept("for")) {
+                return forLoop();
+            }
+            if (accept("return")) {
+                Expr value = expression();
+                return env -> {
+                    throw new Return(first(value.eval(env)));
+                };
+            }
+            int start = position;
+            Expr target = postfix();
+            if (!accept("=")) {
+                return target::eval;
+            }
+            Expr value = expression();
+            return assignment(start, value);
+        }
+
+        private Stat forLoop() {
+            String first = name();
+            if (accept("=")) {
+                Expr from = expression();
+                expect(",");
+                Expr to = expression();
+                Expr step = accept(",") ? expression() : env -> 1.0;
+                expect("do");
+                List<Stat> body = block();
+                expect("end");
+                return env -> {
+                    double limit = (Double) first(to.eval(env));
+                    double increment = (Double) first(step.eval(env));
+                    for (double i = (Double) first(from.eval(env)); increment > 0 ? i <= limit : i >= limit; i += increment) {
+                        double index = i;
+                        env.scopes.push(new HashMap<>(Map.of(first, index)));
+                        try {
+                            env.run(body);
+                        } finally {
+                            env.scopes.pop();
+                        }
+                    }
+                };
+            }
+            expect(",");
+            String second = name();
+            expect("in");
+            Expr pairs = expression();
+            expect("do");
+            List<Stat> body = block();
+            expect("end");
+            return env -> {
+                List<Object> items = ((IPairs) first(pairs.eval(env))).table().items;
+                for (int i = 0; i < items.size() && items.get(i) != null; i++) {
+                    Map<String, Object> scope = new HashMap<>();
+                    scope.put(first, (double) (i + 1));
+                    scope.put(second, items.get(i));
+                    env.scopes.push(scope);
+                    try {
+                        env.run(body);
+                    } finally {
+                        env.scopes.pop();
+                    }
+                }
+            };
+        }
+
+        // Re-parses the target once the value is known: a plain name, or a table index
+        private Stat assignment(int start, Expr value) {
+            int end = position;
+            position = start;
+            String name = name();
+            if (accept("=")) {
+                position = end;
+                return env -> env.assign(name, first(value.eval(env)));
+            }
+            expect("[");
+            Expr index = expression();
+            expect("]");
+            expect("=");
+            position = end;
+            return env -> ((Table) env.lookup(name)).set(first(index.eval(env)), first(value.eval(env)));
+        }
+
+        private Expr expression() {
+            Expr left = and();
+            while (accept("or")) {
+                Expr l = left;
+                Expr r = and();
+                left = env -> {
+                    Object value = first(l.eval(env));
+                    return truthy(value) ? value : first(r.eval(env));
+                };
+            }
+            return left;
+        }
+
+        private Expr and() {
+            Expr left = comparison();
+            while (accept("and")) {
+                Expr l = left;
+                Expr r = comparison();
+                left = env -> {
+                    Object value = first(l.eval(env));
+                    return truthy(value) ? first(r.eval(env)) : value;
+                };
+            }
+            return left;
+        }
+
+        private Expr comparison() {
+            Expr left = additive();
+            while (peek("==") || peek("~=") || peek("<=") || peek(">=") || peek("<") || peek(">")) {
+                String operator = tokens.get(position++);
+                Expr l = left;
+                Expr r = additive();
+                left = env -> compare(operator, first(l.eval(env)), first(r.eval(env)));
+            }
+            return left;
+        }
+
+        private Expr additive() {
+            Expr left = unary();
+            while (peek("+") || peek("-")) {
+                boolean plus = tokens.get(position++).equals("+");
+                Expr l = left;
+                Expr r = unary();
+                left = env -> {
+                    double a = number(first(l.eval(env)));
+                    double b = number(first(r.eval(env)));
+                    return plus ? a + b : a - b;
+                };
+            }
+            return left;
+        }
+
+        private Expr unary() {
+            if (accept("not")) {
+                Expr operand = unary();
+                return env -> !truthy(first(operand.eval(env)));
+            }
+            if (accept("#")) {
+                Expr operand = unary();
+                return env -> {
+                    Object value = first(operand.eval(env));
+                    return (double) (value instanceof Table table ? table.items().size() : ((String) value).length());
+                };
+            }
+            if (accept("-")) {
+                Expr operand = unary();
+                return env -> -number(first(operand.eval(env)));
+            }
+            return postfix();
+        }
+
+        @SuppressWarnings("unchecked")
+        private Expr postfix() {
+            Expr expr = primary();
+            while (true) {
+                if (accept(".")) {
+                    Expr target = expr;
+                    String field = name();
+                    expr = env -> ((Map<String, Object>) first(target.eval(env))).get(field);
+                } else if (accept("[")) {
+                    Expr target = expr;
+                    Expr index = expression();
+                    expect("]");
+                    expr = env -> ((Table) first(target.eval(env))).get(first(index.eval(env)));
+                } else if (accept("(")) {
+                    Expr function = expr;
+                    List<Expr> args = list(")");
+                    expr = env -> ((Function<List<Object>, Object>) first(function.eval(env))).apply(arguments(args, env));
+                } else {
+                    return expr;
+                }
+            }
+        }
+
+        private Expr primary() {
+            String token = tokens.get(position++);
+            if (token.equals("(")) {
+                Expr inner = expression();
+                expect(")");
+                return env -> first(inner.eval(env));
+            }
+            if (token.equals("{")) {
+                List<Expr> items = list("}");
+                return env -> new Table(arguments(items, env));
+            }
+            if (token.startsWith("'")) {
+                String value = token.substring(1);
+                return env -> value;
+            }
+            if (Character.isDigit(token.charAt(0))) {
+                double value = Double.parseDouble(token);
+                return env -> value;
+            }
+            return switch (token) {
+                case "nil" -> env -> null;
+                case "true" -> env -> true;
+                case "false" -> env -> false;
+                default -> env -> env.lookup(token);
+            };
+        }
+
+        private List<Expr> list(String close) {
+            List<Expr> items = new ArrayList<>();
+            if (!accept(close)) {
+                do {
+                    items.add(expression());
+                } while (accept(","));
+                expect(close);
+            }
+            return items;
+        }
+
+        private static List<Object> arguments(List<Expr> exprs, Env env) {
+            List<Object> values = new ArrayList<>();
+            for (int i = 0; i < exprs.size(); i++) {
+                Object value = exprs.get(i).eval(env);
+                if (value instanceof Multi multi) {
+                    if (i == exprs.size() - 1) {
+                        values.addAll(multi.values());
+                    } else {
+                        values.add(first(multi));
+                    }
+                } else {
+                    values.add(value);
+                }
+            }
+            return values;
+        }
+
+        private String name() {
+            String token = tokens.get(position++);
+            if (!Character.isJavaIdentifierStart(token.charAt(0))) {
+                throw new IllegalArgumentException("Expected a name, got '" + token + "'");
+            }
+            return token;
+        }
+
+        private boolean peek(String token) {
+            return position < tokens.size() && tokens.get(position).equals(token);
+        }
+
+        private boolean accept(String token) {
+            if (peek(token)) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(String token) {
+            if (!accept(token)) {
+                throw new IllegalArgumentException("Expected '" + token + "' at token " + position
+                        + (position < tokens.size() ? ", got '" + tokens.get(position) + "'" : ""));
+            }
+        }
+
+        // String literals are kept as one token starting with a quote, so they never clash with names
+        private void tokenize(String source) {
+            int i = 0;
+            while (i < source.length()) {
+                char c = source.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if (source.startsWith("--", i)) {
+                    while (i < source.length() && source.charAt(i) != '\n') {
+                        i++;
+                    }
+                } else if (c == '\'' || c == '"') {
+                    StringBuilder value = new StringBuilder("'");
+                    i++;
+                    while (source.charAt(i) != c) {
+                        value.append(source.charAt(i) == '\\' ? source.charAt(++i) : source.charAt(i));
+                        i++;
+                    }
+                    tokens.add(value.toString());
+                    i++;
+                } else if (Character.isDigit(c)) {
+                    int start = i;
+                    while (i < source.length() && (Character.isDigit(source.charAt(i)) || source.charAt(i) == '.')) {
+                        i++;
+                    }
+                    tokens.add(source.substring(start, i));
+                } else if (Character.isJavaIdentifierStart(c)) {
+                    int start = i;
+                    while (i < source.length() && Character.isJavaIdentifierPart(source.charAt(i))) {
+                        i++;
+                    }
+                    tokens.add(source.substring(start, i));
+                } else if (i + 1 < source.length() && SYMBOLS.contains(source.substring(i, i + 2))) {
+                    tokens.add(source.substring(i, i + 2));
+                    i += 2;
+                } else if (SYMBOLS.contains(String.valueOf(c))) {
+                    tokens.add(String.valueOf(c));
+                    i++;
+                } else {
+                    throw new IllegalArgumentException("Unexpected character '" + c + "'");
+                }
+            }
+        }
+    }
+
+    private static Object first(Object value) {
+        if (value instanceof Multi multi) {
+            return multi.values().isEmpty() ? null : multi.values().get(0);
+        }
+        return value;
+    }
+
+    private static boolean truthy(Object value) {
+        return value != null && !Boolean.FALSE.equals(value);
+    }
+
+    private static double number(Object value) {
+        Object number = toNumber(value);
+        if (number == null) {
+            throw new IllegalArgumentException("Attempt to perform arithmetic on " + value);
+        }
+        return (Double) number;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static boolean compare(String operator, Object left, Object right) {
+        return switch (operator) {
+            case "==" -> Objects.equals(left, right);
+            case "~=" -> !Objects.equals(left, right);
+            default -> {
+                if (left == null || right == null || left.getClass() != right.getClass() || !(left instanceof Comparable<?>)) {
+                    throw new IllegalArgumentException("Attempt to compare " + left + " with " + right);
+                }
+                int order = ((Comparable<Object>) left).compareTo(right);
+                yield switch (operator) {
+                    case "<" -> order < 0;
+                    case "<=" -> order <= 0;
+                    case ">" -> order > 0;
+                    default -> order >= 0;
+                };
+            }
+        };
+    }
+}
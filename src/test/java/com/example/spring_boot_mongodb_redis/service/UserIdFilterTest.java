@@ -0,0 +1,98 @@
+package com.example.spring_boot_mongodb_redis.service;
+
+import com.example.spring_boot_mongodb_redis.config.AppProperties;
+import com.example.spring_boot_mongodb_redis.model.User;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.List;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class UserIdFilterTest {
+
+    private MongoOperations mongoOperations;
+    private UserIdFilter filter;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        mongoOperations = mock(MongoOperations.class);
+        when(mongoOperations.getCollectionName(User.class)).thenReturn("user");
+        AppProperties properties = new AppProperties();
+        properties.getIdFilter().setEnabled(true);
+        properties.getIdFilter().setMinimumCapacity(1_000);
+        filter = new UserIdFilter(mongoOperations, properties, mock(ObjectProvider.class));
+    }
+
+    @Test
+    void everyIdMightExistUntilTheFirstBuild() {
+        assertThat(filter.mightContain(42L)).isTrue();
+        assertThat(filter.mightContain(null)).isTrue();
+    }
+
+    @Test
+    void scannedAndAddedIdsAreNeverReportedMissing() {
+        scan(1, 50_000);
+        filter.rebuild();
+        filter.add(60_000L);
+        filter.onInvalidate(List.of("70000"));
+
+        assertThat(LongStream.rangeClosed(1, 50_000).filter(id -> !filter.mightContain(id))).isEmpty();
+        assertThat(filter.mightContain(60_000L)).isTrue();
+        assertThat(filter.mightContain(70_000L)).isTrue();
+        // Unknown IDs are mostly answered without a lookup, so the filter is not just saying yes
+        assertThat(LongStream.rangeClosed(100_001, 110_000).filter(filter::mightContain).count()).isLessThan(300);
+    }
+
+    @Test
+    void rebuildDropsDeletedIdsAndKeepsIdsCreatedDuringTheScan() {
+        scan(1, 1_000);
+        filter.rebuild();
+
+        // Users 501..1000 were deleted; user 5000 is created while the rebuild scans
+        when(mongoOperations.stream(any(Query.class), eq(Document.class), eq("user"))).thenReturn(
+                LongStream.rangeClosed(1, 500).peek(id -> {
+                    if (id == 250) {
+                        filter.add(5_000L);
+                    }
+                }).mapToObj(id -> new Document("_id", id)));
+        filter.rebuild();
+
+        assertThat(LongStream.rangeClosed(1, 500).filter(id -> !filter.mightContain(id))).isEmpty();
+        assertThat(filter.mightContain(5_000L)).isTrue();
+        assertThat(LongStream.rangeClosed(501, 1_000).filter(filter::mightContain).count()).isLessThan(50);
+    }
+
+    @Test
+    void failedRebuildKeepsThePreviousFilter() {
+        scan(1, 1_000);
+        filter.rebuild();
+        when(mongoOperations.stream(any(Query.class), eq(Document.class), eq("user")))
+                .thenThrow(new DataAccessResourceFailureException("Mongo unreachable"));
+
+        filter.rebuild();
+        filter.add(2_000L);
+
+        assertThat(LongStream.rangeClosed(1, 1_000).filter(id -> !filter.mightContain(id))).isEmpty();
+        assertThat(filter.mightContain(2_000L)).isTrue();
+    }
+
+    // The filter is sized from the estimated count, as against a real collection
+    private void scan(long first, long last) {
+        when(mongoOperations.estimatedCount(User.class)).thenReturn(last - first + 1);
+        Stream<Document> documents = LongStream.rangeClosed(first, last).mapToObj(id -> new Document("_id", id));
+        when(mongoOperations.stream(any(Query.class), eq(Document.class), eq("user"))).thenReturn(documents);
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.spring_boot_mongodb_redis.service;
+
+import com.example.spring_boot_mongodb_redis.cache.RedisCircuitBreaker;
+import com.example.spring_boot_mongodb_redis.config.CacheProperties;
+import com.example.spring_boot_mongodb_redis.model.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_DEFAULTS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs the view's Lua scripts against {@link FakeRedis}, so the ordering rules they encode are
+ * checked without a Redis server.
+ */
+class UserListViewTest {
+
+    private final FakeRedis redis = new FakeRedis();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private MongoOperations mongoOperations;
+    private RedisCircuitBreaker breaker;
+    private UserListView view;
+
+    @BeforeEach
+    void setUp() {
+        mongoOperations = mock(MongoOperations.class);
+        CacheProperties properties = new CacheProperties();
+        // Two users per fill, so writes can land between the batches of a build
+        properties.getListView().setBatchSize(2);
+        breaker = new RedisCircuitBreaker(mock(StringRedisTemplate.class), properties, meterRegistry,
+                Thread.ofPlatform().daemon().factory());
+        view = new UserListView(mock(StringRedisTemplate.class, this::redisTemplate), mongoOperations, breaker,
+                properties, new CacheMetrics(meterRegistry));
+    }
+
+    @AfterEach
+    void tearDown() {
+        breaker.shutdown();
+    }
+
+    @Test
+    void pagesComeFromTheDatabaseUntilTheViewIsBuilt() {
+        database(LongStream.rangeClosed(1, 3).mapToObj(id -> user(id, "User", 1L)));
+
+        assertThat(view.page(null, 10)).isNull();
+        view.ensureBuilt();
+
+        assertThat(view.page(null, 10)).extracting(User::getId).containsExactly(1L, 2L, 3L);
+        assertThat(redis.exists(UserListView.BUILDING_KEY)).isFalse();
+        assertThat(redis.exists(UserListView.TOMBSTONES_KEY)).isFalse();
+    }
+
+    @Test
+    void olderPatchArrivingLateIsSkipped() {
+        database(Stream.of(user(1L, "Original", 1L)));
+        view.ensureBuilt();
+
+        view.upsert(user(1L, "Newer", 5L));
+        view.upsert(user(1L, "Older", 3L));
+        view.upsert(user(2L, "Created", 0L));
+
+        assertThat(view.page(null, 10)).containsExactly(user(1L, "Newer", 5L), user(2L, "Created", 0L));
+    }
+
+    @Test
+    void patchForARemovedUserIsSkipped() {
+        database(Stream.of(user(1L, "First", 1L), user(2L, "Second", 1L)));
+        view.ensureBuilt();
+
+        view.remove(2L);
+        view.upsert(user(2L, "Replayed", 9L));
+
+        assertThat(view.page(null, 10)).extracting(User::getId).containsExactly(1L);
+    }
+
+    @Test
+    void writesDuringARebuildAreNotUndoneByTheScan() {
+        // The scan already read users 2 and 3 when the patches land, so it carries their old copies
+        database(Stream.of(user(1L, "First", 1L), user(2L, "Second", 1L), user(3L, "Third", 1L), user(4L, "Fourth", 1L))
+                .peek(user -> {
+                    if (user.getId() == 1L) {
+                        view.remove(3L);
+                        view.upsert(user(2L, "Patched", 2L));
+                    }
+                }));
+
+        view.ensureBuilt();
+
+        assertThat(view.page(null, 10)).containsExactly(user(1L, "First", 1L), user(2L, "Patched", 2L),
+                user(4L, "Fourth", 1L));
+    }
+
+    @Test
+    void keysetPagingSkipsUsersRemovedBetweenPages() {
+        database(LongStream.rangeClosed(1, 7).mapToObj(id -> user(id, "User", 1L)));
+        view.ensureBuilt();
+
+        assertThat(view.page(null, 3)).extracting(User::getId).containsExactly(1L, 2L, 3L);
+        view.removeAll(List.of(2L, 4L));
+        assertThat(view.page(3L, 3)).extracting(User::getId).containsExactly(5L, 6L, 7L);
+        view.remove(7L);
+        assertThat(view.page(6L, 3)).isEmpty();
+        assertThat(view.page(null, 10)).extracting(User::getId).containsExactly(1L, 3L, 5L, 6L);
+    }
+
+    private void database(Stream<User> users) {
+        when(mongoOperations.stream(any(Query.class), eq(User.class))).thenReturn(users);
+    }
+
+    // The template calls the view makes, served by the fake
+    @SuppressWarnings("unchecked")
+    private Object redisTemplate(InvocationOnMock invocation) throws Throwable {
+        Object[] args = invocation.getRawArguments();
+        return switch (invocation.getMethod().getName()) {
+            case "execute" -> args.length == 5
+                    ? redis.eval(((RedisScript<?>) args[0]).getScriptAsString(), (List<String>) args[3], (Object[]) args[4])
+                    : redis.eval(((RedisScript<?>) args[0]).getScriptAsString(), (List<String>) args[1], (Object[]) args[2]);
+            case "hasKey" -> redis.exists((String) args[0]);
+            case "opsForValue" -> mock(ValueOperations.class, this::valueOperations);
+            case "unlink" -> args[0] instanceof Collection<?> keys
+                    ? redis.delete((Collection<String>) keys)
+                    : redis.delete(List.of((String) args[0])) > 0;
+            case "delete" -> redis.delete(List.of((String) args[0])) > 0;
+            case "expire" -> true;
+            default -> RETURNS_DEFAULTS.answer(invocation);
+        };
+    }
+
+    private Object valueOperations(InvocationOnMock invocation) throws Throwable {
+        Object[] args = invocation.getRawArguments();
+        return switch (invocation.getMethod().getName()) {
+            case "setIfAbsent" -> redis.setIfAbsent((String) args[0], (String) args[1]);
+            case "set" -> {
+                redis.set((String) args[0], (String) args[1]);
+                yield null;
+            }
+            default -> RETURNS_DEFAULTS.answer(invocation);
+        };
+    }
+
+    private static User user(Long id, String firstName, Long version) {
+        return User.builder().id(id).firstName(firstName).version(version).build();
+    }
+}
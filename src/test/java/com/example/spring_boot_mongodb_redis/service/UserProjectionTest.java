@@ -0,0 +1,45 @@
+package com.example.spring_boot_mongodb_redis.service;
+
+import com.example.spring_boot_mongodb_redis.cache.CacheSerializers;
+import com.example.spring_boot_mongodb_redis.config.CacheProperties;
+import com.example.spring_boot_mongodb_redis.model.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.web.server.ResponseStatusException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UserProjectionTest {
+
+    // Configured like the MVC mapper
+    private final ObjectMapper mapper = new ObjectMapper().addMixIn(User.class, UserProjection.Representation.class);
+    private final UserProjection projection = new UserProjection(mapper);
+    private final User user = User.builder().id(1L).firstName("Ada").email("ada@example.com").password("secret").build();
+
+    @Test
+    void passwordIsNotProjectable() {
+        assertThat(projection.parse("id, firstName")).containsExactly("firstName", "id");
+        assertThatThrownBy(() -> projection.parse("id,password"))
+                .isInstanceOf(ResponseStatusException.class)
+                .hasMessageContaining("Unknown field 'password'");
+    }
+
+    @Test
+    void responsesLeaveThePasswordOutButRequestsMaySetIt() throws Exception {
+        String full = mapper.writeValueAsString(user);
+        String projected = projection.writer(User.class, projection.parse("id,email")).writeValueAsString(user);
+
+        assertThat(full).contains("\"firstName\":\"Ada\"").doesNotContain("password").doesNotContain("secret");
+        assertThat(projected).isEqualTo("{\"id\":1,\"email\":\"ada@example.com\"}");
+        assertThat(mapper.readValue("{\"id\":2,\"password\":\"chosen\"}", User.class).getPassword()).isEqualTo("chosen");
+    }
+
+    @Test
+    void cachedUsersKeepThePassword() {
+        RedisSerializer<Object> serializer = CacheSerializers.create(new CacheProperties().getSerializer());
+
+        assertThat(serializer.deserialize(serializer.serialize(user))).isEqualTo(user);
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.spring_boot_mongodb_redis.service;
+
+import com.example.spring_boot_mongodb_redis.cache.RedisCacheBatchOperations;
+import com.example.spring_boot_mongodb_redis.config.SequenceGeneratorService;
+import com.example.spring_boot_mongodb_redis.model.BatchItemResult;
+import com.example.spring_boot_mongodb_redis.model.User;
+import com.example.spring_boot_mongodb_redis.repository.UserRepository;
+import com.mongodb.bulk.BulkWriteResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserServiceBatchUpdateTest {
+
+    private MongoOperations mongoOperations;
+    private BulkOperations bulk;
+    private RedisCacheBatchOperations cacheBatchOperations;
+    private UserService userService;
+
+    @BeforeEach
+    void setUp() {
+        mongoOperations = mock(MongoOperations.class);
+        bulk = mock(BulkOperations.class);
+        cacheBatchOperations = mock(RedisCacheBatchOperations.class);
+        when(mongoOperations.bulkOps(any(BulkOperations.BulkMode.class), eq(User.class))).thenReturn(bulk);
+        userService = new UserService(mock(UserRepository.class), mock(SequenceGeneratorService.class), mongoOperations,
+                cacheBatchOperations, mock(CacheManager.class), mock(UserIdFilter.class), mock(UserListView.class),
+                mock(UserWriteBehind.class));
+    }
+
+    @Test
+    void batchUpdateLosingToASingleUpdateIsAConflict() {
+        User concurrent = user(1L, "Concurrent", 4L);
+        // The version read before the bulk, then the user as the single update left it
+        when(mongoOperations.find(any(Query.class), eq(User.class)))
+                .thenReturn(List.of(user(1L, "Original", 3L), user(2L, "Other", 7L)))
+                .thenReturn(List.of(concurrent, user(2L, "Second", 8L)));
+        when(bulk.execute()).thenReturn(BulkWriteResult.acknowledged(0, 1, 0, 1, List.of(), List.of()));
+
+        List<BatchItemResult> results = userService.updateAll(List.of(user(1L, "Batch", null), user(2L, "Second", null)));
+
+        assertThat(results).extracting(BatchItemResult::getStatus)
+                .containsExactly(BatchItemResult.Status.CONFLICT, BatchItemResult.Status.UPDATED);
+        ArgumentCaptor<Query> filters = ArgumentCaptor.forClass(Query.class);
+        verify(bulk, times(2)).replaceOne(filters.capture(), any(User.class));
+        assertThat(filters.getAllValues().get(0).getQueryObject()).containsEntry("version", 3L);
+        verify(cacheBatchOperations).putAll(eq("users"), eq(Map.of(2L, user(2L, "Second", 8L))));
+    }
+
+    @Test
+    void repeatedIdsInABatchAreRejected() {
+        when(mongoOperations.find(any(Query.class), eq(User.class))).thenReturn(List.of(user(1L, "Original", 3L)));
+        when(bulk.execute()).thenReturn(BulkWriteResult.acknowledged(0, 1, 0, 1, List.of(), List.of()));
+
+        List<BatchItemResult> results = userService.updateAll(List.of(user(1L, "First", null), user(1L, "Second", null)));
+
+        assertThat(results).extracting(BatchItemResult::getStatus)
+                .containsExactly(BatchItemResult.Status.UPDATED, BatchItemResult.Status.FAILED);
+        assertThat(results.get(0).getUser().getVersion()).isEqualTo(4L);
+        verify(bulk, times(1)).replaceOne(any(Query.class), any(User.class));
+        verify(cacheBatchOperations).putAll(eq("users"), anyMap());
+    }
+
+    @Test
+    void repeatedIdsInADeleteBatchAreRejected() {
+        when(mongoOperations.find(any(Query.class), eq(User.class))).thenReturn(List.of(user(1L, "Original", 3L)));
+        when(bulk.execute()).thenReturn(BulkWriteResult.acknowledged(0, 0, 1, 0, List.of(), List.of()));
+
+        List<BatchItemResult> results = userService.deleteAll(List.of(1L, 1L));
+
+        assertThat(results).extracting(BatchItemResult::getStatus)
+                .containsExactly(BatchItemResult.Status.DELETED, BatchItemResult.Status.FAILED);
+        assertThat(results.get(1).getError()).isEqualTo("User ID 1 appears more than once in the batch");
+        verify(bulk, times(1)).remove(any(Query.class));
+    }
+
+    @Test
+    void batchesOverThePageSizeAreRejected() {
+        List<Long> ids = Collections.nCopies(1001, 1L);
+        List<User> users = Collections.nCopies(1001, user(1L, "Batch", null));
+
+        assertThatThrownBy(() -> userService.deleteAll(ids)).isInstanceOf(ResponseStatusException.class)
+                .hasMessageContaining("at most 1000 users per batch");
+        assertThatThrownBy(() -> userService.updateAll(users)).isInstanceOf(ResponseStatusException.class);
+        assertThatThrownBy(() -> userService.createAll(users)).isInstanceOf(ResponseStatusException.class);
+        verify(mongoOperations, never()).bulkOps(any(BulkOperations.BulkMode.class), eq(User.class));
+    }
+
+    private static User user(Long id, String firstName, Long version) {
+        return User.builder().id(id).firstName(firstName).version(version).build();
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.spring_boot_mongodb_redis.service;
+
+import com.example.spring_boot_mongodb_redis.cache.CacheSerializers;
+import com.example.spring_boot_mongodb_redis.config.BackgroundThreads;
+import com.example.spring_boot_mongodb_redis.config.CacheProperties;
+import com.example.spring_boot_mongodb_redis.model.User;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.Invocation;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserWriteBehindTest {
+
+    private final RedisSerializer<Object> serializer = CacheSerializers.create(new CacheProperties().getSerializer());
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private StringRedisTemplate redisTemplate;
+    private RedisStreamCommands streamCommands;
+    private MongoOperations mongoOperations;
+    private BulkOperations bulk;
+    private Cache cache;
+    private UserWriteBehind writeBehind;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisTemplate = mock(StringRedisTemplate.class);
+        RedisConnection connection = mock(RedisConnection.class);
+        streamCommands = mock(RedisStreamCommands.class);
+        when(connection.streamCommands()).thenReturn(streamCommands);
+        when(redisTemplate.execute(any(RedisCallback.class)))
+                .thenAnswer(invocation -> invocation.<RedisCallback<?>>getArgument(0).doInRedis(connection));
+
+        mongoOperations = mock(MongoOperations.class);
+        bulk = mock(BulkOperations.class);
+        when(mongoOperations.bulkOps(BulkOperations.BulkMode.ORDERED, User.class)).thenReturn(bulk);
+        cache = mock(Cache.class);
+        CacheManager cacheManager = mock(CacheManager.class);
+        when(cacheManager.getCache("users")).thenReturn(cache);
+
+        CacheProperties properties = new CacheProperties();
+        properties.getWriteBehind().setEnabled(true);
+        properties.getWriteBehind().setFlushInterval(Duration.ofHours(1));
+        writeBehind = new UserWriteBehind(redisTemplate, mongoOperations, cacheManager, properties,
+                new BackgroundThreads(false), meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        writeBehind.shutdown();
+    }
+
+    @Test
+    void replayedOlderVersionDoesNotOverwriteTheDatabase() {
+        // Version 3 comes back from the stream after version 5 already reached Mongo: the filter misses and the upsert collides
+        stream(record("1-0", user(1L, "Old", 3L)));
+        when(bulk.execute()).thenThrow(duplicateKeyAt(0, "E11000 duplicate key error collection: test.user index: _id_ dup key: { _id: 1 }"));
+
+        writeBehind.flush();
+
+        ArgumentCaptor<Query> filter = ArgumentCaptor.forClass(Query.class);
+        verify(bulk).replaceOne(filter.capture(), eq(user(1L, "Old", 3L)), any(FindAndReplaceOptions.class));
+        assertThat(filter.getValue().getQueryObject().toJson()).contains("\"$lt\": 3");
+        verify(cache).evict(1L);
+        verify(cache, never()).put(any(), any());
+        assertThat(meterRegistry.counter("app.write-behind.stale").count()).isEqualTo(1);
+        assertThat(meterRegistry.counter("app.write-behind.flushed").count()).isZero();
+    }
+
+    @Test
+    void writeRefusedByAUniqueIndexIsRejectedNotStale() {
+        stream(record("1-0", user(1L, "Taken", 2L)), record("2-0", user(2L, "Other", 1L)));
+        // Index 0 of the first bulk; the retry from the next write then succeeds
+        when(bulk.execute())
+                .thenThrow(duplicateKeyAt(0, "E11000 duplicate key error collection: test.user index: email_1 dup key: { email: \"a@b.c\" }"))
+                .thenReturn(BulkWriteResult.acknowledged(0, 1, 0, 1, List.of(), List.of()));
+
+        writeBehind.flush();
+
+        verify(cache).evict(1L);
+        verify(cache, never()).evict(2L);
+        assertThat(meterRegistry.counter("app.write-behind.rejected").count()).isEqualTo(1);
+        assertThat(meterRegistry.counter("app.write-behind.stale").count()).isZero();
+        assertThat(meterRegistry.counter("app.write-behind.flushed").count()).isEqualTo(1);
+        // The rejected user's pending copy gets a TTL of 0, the flushed one the retain-flushed period
+        List<String> acknowledged = flushedScriptArgs();
+        assertThat(acknowledged.subList(1, 5)).containsExactly("2", "0", "1", "60000");
+    }
+
+    @Test
+    void olderVersionLaterInTheBatchIsCoalescedAway() {
+        stream(record("1-0", user(1L, "New", 5L)), record("2-0", user(1L, "Old", 3L)));
+        when(bulk.execute()).thenReturn(BulkWriteResult.acknowledged(0, 1, 0, 1, List.of(), List.of()));
+
+        writeBehind.flush();
+
+        ArgumentCaptor<User> written = ArgumentCaptor.forClass(User.class);
+        verify(bulk).replaceOne(any(Query.class), written.capture(), any(FindAndReplaceOptions.class));
+        assertThat(written.getAllValues()).containsExactly(user(1L, "New", 5L));
+        assertThat(meterRegistry.counter("app.write-behind.coalesced").count()).isEqualTo(1);
+        assertThat(meterRegistry.counter("app.write-behind.flushed").count()).isEqualTo(1);
+    }
+
+    private void stream(ByteRecord... records) {
+        when(streamCommands.xReadGroup(any(), any(), any())).thenReturn(List.of(records)).thenReturn(List.of());
+    }
+
+    private ByteRecord record(String id, User user) {
+        return StreamRecords.rawBytes(Map.of(
+                        bytes("id"), bytes(String.valueOf(user.getId())),
+                        bytes("version"), bytes(String.valueOf(user.getVersion())),
+                        bytes("op"), bytes("upsert"),
+                        bytes("user"), serializer.serialize(user)))
+                .withId(RecordId.of(id));
+    }
+
+    // Arguments of the script that acknowledged the batch, as strings
+    private List<String> flushedScriptArgs() {
+        Invocation invocation = mockingDetails(redisTemplate).getInvocations().stream()
+                .filter(call -> call.getMethod().getName().equals("execute") && call.getRawArguments()[0] instanceof RedisScript)
+                .reduce((first, second) -> second)
+                .orElseThrow();
+        Object[] args = (Object[]) invocation.getRawArguments()[4];
+        return Arrays.stream(args).map(arg -> new String((byte[]) arg, StandardCharsets.UTF_8)).toList();
+    }
+
+    private static BulkOperationException duplicateKeyAt(int index, String message) {
+        BulkWriteError error = new BulkWriteError(11000, message, new BsonDocument(), index);
+        return new BulkOperationException("Bulk write failed", new MongoBulkWriteException(
+                BulkWriteResult.acknowledged(0, 0, 0, 0, List.of(), List.of()), List.of(error), null, new ServerAddress(), Set.of()));
+    }
+
+    private static User user(Long id, String firstName, Long version) {
+        return User.builder().id(id).firstName(firstName).version(version).build();
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -20,7 +20,7 @@ RESPONSE=$(curl -s -w "\n%{http_code}" -X GET "$BASE_URL")
 BODY=$(echo "$RESPONSE" | sed '$d')
 STATUS=$(echo "$RESPONSE" | tail -n1)
 fail_if_not "200" "$STATUS" "GET all users"
-echo "Users count: $(echo "$BODY" | jq 'length')"
+echo "Users count: $(echo "$BODY" | jq '.users | length')"
 echo "-------------------------------"
 
 echo "=== 2. CREATE new user ==="